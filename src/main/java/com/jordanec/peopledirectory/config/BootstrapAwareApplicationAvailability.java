@@ -0,0 +1,60 @@
+package com.jordanec.peopledirectory.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ApplicationAvailabilityBean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.AvailabilityState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link ApplicationAvailability} injected everywhere (readiness probes included): Boot's own, except that
+ * the readiness is {@code REFUSING_TRAFFIC} for as long as {@link BootstrapReadiness} is not accepting traffic.
+ * Boot records {@code ACCEPTING_TRAFFIC} right after {@code ApplicationReadyEvent} whatever the bootstrap is doing,
+ * so the bootstrap is checked on every read instead of being raced with events.
+ */
+@Primary
+@Component
+public class BootstrapAwareApplicationAvailability implements ApplicationAvailability
+{
+    @Autowired
+    ApplicationAvailabilityBean applicationAvailabilityBean;
+    @Autowired
+    BootstrapReadiness bootstrapReadiness;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends AvailabilityState> S getState(Class<S> stateType, S defaultState)
+    {
+        if (isBootstrapping(stateType))
+        {
+            return (S) ReadinessState.REFUSING_TRAFFIC;
+        }
+        return applicationAvailabilityBean.getState(stateType, defaultState);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends AvailabilityState> S getState(Class<S> stateType)
+    {
+        if (isBootstrapping(stateType))
+        {
+            return (S) ReadinessState.REFUSING_TRAFFIC;
+        }
+        return applicationAvailabilityBean.getState(stateType);
+    }
+
+    // the event recorded by Boot, which may say ACCEPTING_TRAFFIC while the bootstrap runs
+    @Override
+    public <S extends AvailabilityState> AvailabilityChangeEvent<S> getLastChangeEvent(Class<S> stateType)
+    {
+        return applicationAvailabilityBean.getLastChangeEvent(stateType);
+    }
+
+    private boolean isBootstrapping(Class<? extends AvailabilityState> stateType)
+    {
+        return stateType == ReadinessState.class && !bootstrapReadiness.isAcceptingTraffic();
+    }
+}
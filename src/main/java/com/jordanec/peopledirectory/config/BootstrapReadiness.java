@@ -0,0 +1,86 @@
+package com.jordanec.peopledirectory.config;
+
+import com.jordanec.peopledirectory.dto.BootstrapStatusDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of the database bootstrap run by {@link MongoDBDataInitializerConfig}. Requests under {@code /api} are
+ * answered with 503 until it is over (see {@link BootstrapReadinessInterceptor}), and Spring Boot's
+ * {@link ReadinessState} reads {@code REFUSING_TRAFFIC} meanwhile (see {@link BootstrapAwareApplicationAvailability}). A failed bootstrap is logged and reported
+ * here but admits traffic, as the application did before the bootstrap ran in the background.
+ */
+@Component
+public class BootstrapReadiness
+{
+    private final Logger logger = LoggerFactory.getLogger(BootstrapReadiness.class);
+
+    @Autowired
+    ApplicationEventPublisher applicationEventPublisher;
+
+    private volatile BootstrapStatusDTO.State state = BootstrapStatusDTO.State.STARTING;
+    private final Map<String, Long> stepsMs = new LinkedHashMap<>();
+    private long startedAt;
+    private Long bootstrapMs;
+    private Long timeToReadyMs;
+    private String error;
+
+    public boolean isAcceptingTraffic()
+    {
+        return state != BootstrapStatusDTO.State.STARTING;
+    }
+
+    public synchronized void starting()
+    {
+        state = BootstrapStatusDTO.State.STARTING;
+        startedAt = System.nanoTime();
+        AvailabilityChangeEvent.publish(applicationEventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+    }
+
+    public synchronized void stepCompleted(String step, long millis)
+    {
+        stepsMs.put(step, millis);
+        logger.debug("stepCompleted(): {} in {} ms", step, millis);
+    }
+
+    public synchronized void ready()
+    {
+        finish(BootstrapStatusDTO.State.READY);
+        logger.info("ready(): bootstrap completed in {} ms, ready {} ms after JVM start", bootstrapMs, timeToReadyMs);
+    }
+
+    public synchronized void failed(Throwable throwable)
+    {
+        error = throwable.toString();
+        finish(BootstrapStatusDTO.State.FAILED);
+    }
+
+    public synchronized BootstrapStatusDTO getStatus()
+    {
+        BootstrapStatusDTO status = new BootstrapStatusDTO();
+        status.setState(state);
+        status.setBootstrapMs(bootstrapMs);
+        status.setTimeToReadyMs(timeToReadyMs);
+        status.getStepsMs().putAll(stepsMs);
+        status.setError(error);
+        return status;
+    }
+
+    private void finish(BootstrapStatusDTO.State finalState)
+    {
+        bootstrapMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        timeToReadyMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        state = finalState;
+        AvailabilityChangeEvent.publish(applicationEventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+}
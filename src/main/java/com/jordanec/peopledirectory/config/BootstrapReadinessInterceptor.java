@@ -0,0 +1,35 @@
+package com.jordanec.peopledirectory.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Answers 503 with a {@code Retry-After} header while the database bootstrap is still running.
+ */
+public class BootstrapReadinessInterceptor implements HandlerInterceptor
+{
+    private static final String RETRY_AFTER_SECONDS = "5";
+
+    private final BootstrapReadiness bootstrapReadiness;
+
+    public BootstrapReadinessInterceptor(BootstrapReadiness bootstrapReadiness)
+    {
+        this.bootstrapReadiness = bootstrapReadiness;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+    {
+        if (bootstrapReadiness.isAcceptingTraffic())
+        {
+            return true;
+        }
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        return false;
+    }
+}
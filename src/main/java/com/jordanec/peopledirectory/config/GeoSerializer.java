@@ -3,87 +3,123 @@ package com.jordanec.peopledirectory.config;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
-import org.springframework.data.geo.Point;
-import org.springframework.data.mongodb.core.geo.GeoJsonLineString;
+import com.jordanec.peopledirectory.geo.GeometryDetail;
+import com.jordanec.peopledirectory.geo.GeometryRenderOptions;
+import com.jordanec.peopledirectory.geo.GeometrySimplifier;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
+import com.jordanec.peopledirectory.geo.PackedPolygon;
+import com.jordanec.peopledirectory.geo.SimplifiedGeometryCache;
+import com.jordanec.peopledirectory.model.Country;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
 import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
 
 import java.io.IOException;
-import java.util.List;
 
+/**
+ * Writes GeoJSON geometries honoring the {@link GeometryRenderOptions} of the current request: polygons are left
+ * out ({@code lod=none}) or simplified on the fly ({@code lod=high|medium|low}), and coordinates are rounded to
+ * {@code precision} decimals. Simplified country borders are kept in {@link SimplifiedGeometryCache}.
+ */
 public class GeoSerializer extends JsonSerializer<Object>
 {
+    // injected when created by Spring's HandlerInstantiator, the plain ObjectMapper simplifies without caching
+    @Autowired(required = false)
+    SimplifiedGeometryCache simplifiedGeometryCache;
+
     @Override
     public void serialize(Object geometryObject, JsonGenerator jsonGenerator,
             SerializerProvider serializerProvider) throws IOException
     {
-        String type;
+        GeometryRenderOptions options = GeometryRenderOptions.current();
         if (geometryObject instanceof GeoJsonPolygon)
         {
-            GeoJsonPolygon polygon = (GeoJsonPolygon) geometryObject;
-            type = "Polygon";
-            jsonGenerator.writeStartObject();
-            jsonGenerator.writeStringField("type", type);
-            jsonGenerator.writeFieldName("coordinates");
-            //Polygon
-            writePolygonCoordinates(jsonGenerator, polygon.getCoordinates());
-            //End Polygon
-            jsonGenerator.writeEndObject();
-        } else if (geometryObject instanceof GeoJsonMultiPolygon)
+            geometryObject = PackedGeometry.of((GeoJsonPolygon) geometryObject);
+        }
+        else if (geometryObject instanceof GeoJsonMultiPolygon)
         {
-            GeoJsonMultiPolygon multiPolygon = (GeoJsonMultiPolygon) geometryObject;
-            type = "MultiPolygon";
+            geometryObject = PackedGeometry.of((GeoJsonMultiPolygon) geometryObject);
+        }
+        if (geometryObject instanceof PackedGeometry)
+        {
+            PackedGeometry geometry = (PackedGeometry) geometryObject;
+            if (options.getDetail() == GeometryDetail.NONE)
+            {
+                jsonGenerator.writeNull();
+                return;
+            }
+            if (options.getDetail().isSimplified())
+            {
+                geometry = simplify(geometry, options.getDetail(), jsonGenerator);
+            }
             jsonGenerator.writeStartObject();
-            jsonGenerator.writeStringField("type", type);
+            jsonGenerator.writeStringField("type", geometry.getType());
             jsonGenerator.writeFieldName("coordinates");
-            //MultiPolygon
-            jsonGenerator.writeStartArray();
-            for (GeoJsonPolygon polygon : multiPolygon.getCoordinates())
+            if (geometry.isMultiPolygon())
             {
-                writePolygonCoordinates(jsonGenerator, polygon.getCoordinates());
+                //MultiPolygon
+                jsonGenerator.writeStartArray();
+                for (PackedPolygon polygon : geometry.getPolygons())
+                {
+                    writePolygonCoordinates(jsonGenerator, polygon, options);
+                }
+                jsonGenerator.writeEndArray();
+                //End MultiPolygon
+            }
+            else
+            {
+                //Polygon
+                writePolygonCoordinates(jsonGenerator, geometry.getPolygons().get(0), options);
+                //End Polygon
             }
-            jsonGenerator.writeEndArray();
-            //End MultiPolygon
             jsonGenerator.writeEndObject();
         } else if (geometryObject instanceof GeoJsonPoint)
         {
             GeoJsonPoint point = (GeoJsonPoint) geometryObject;
-            type = "Point";
             jsonGenerator.writeStartObject();
-            jsonGenerator.writeStringField("type", type);
+            jsonGenerator.writeStringField("type", "Point");
             jsonGenerator.writeFieldName("coordinates");
             //Point
-            writePoint(jsonGenerator, point);
+            writePoint(jsonGenerator, point.getX(), point.getY(), options);
             //End Point
             jsonGenerator.writeEndObject();
         }
     }
 
-    private void writePolygonCoordinates(JsonGenerator jsonGenerator, List<GeoJsonLineString> polygonCoordinates)
-            throws IOException
+    private PackedGeometry simplify(PackedGeometry geometry, GeometryDetail detail, JsonGenerator jsonGenerator)
+    {
+        // only borders of a stored country can be cached, the owner is the bean being serialized
+        Object owner = jsonGenerator.getCurrentValue();
+        if (simplifiedGeometryCache == null || !(owner instanceof Country) || ((Country) owner).getId() == null)
+        {
+            return GeometrySimplifier.simplify(geometry, detail.getTolerance());
+        }
+        return simplifiedGeometryCache.get(((Country) owner).getId(), jsonGenerator.getOutputContext().getCurrentName(),
+                detail, () -> GeometrySimplifier.simplify(geometry, detail.getTolerance()));
+    }
+
+    private void writePolygonCoordinates(JsonGenerator jsonGenerator, PackedPolygon polygon,
+            GeometryRenderOptions options) throws IOException
     {
         jsonGenerator.writeStartArray();
-        for (GeoJsonLineString lineString : polygonCoordinates)
+        for (double[] ring : polygon.getRings())
         {
             jsonGenerator.writeStartArray();
-            for (Point point : lineString.getCoordinates())
+            for (int i = 0; i < ring.length; i += 2)
             {
-//                jsonGenerator.writeStartArray();
-//                jsonGenerator.writeNumber(point.getX());
-//                jsonGenerator.writeNumber(point.getY());
-//                jsonGenerator.writeEndArray();
-                writePoint(jsonGenerator, point);
+                writePoint(jsonGenerator, ring[i], ring[i + 1], options);
             }
             jsonGenerator.writeEndArray();
         }
         jsonGenerator.writeEndArray();
     }
-    private void writePoint(JsonGenerator jsonGenerator, Point point) throws IOException
+    private void writePoint(JsonGenerator jsonGenerator, double x, double y, GeometryRenderOptions options)
+            throws IOException
     {
         jsonGenerator.writeStartArray();
-        jsonGenerator.writeNumber(point.getX());
-        jsonGenerator.writeNumber(point.getY());
+        jsonGenerator.writeNumber(options.round(x));
+        jsonGenerator.writeNumber(options.round(y));
         jsonGenerator.writeEndArray();
     }
 }
@@ -0,0 +1,34 @@
+package com.jordanec.peopledirectory.config;
+
+import com.jordanec.peopledirectory.geo.GeometryRenderOptions;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Binds the {@code lod} and {@code precision} request parameters to the request thread for
+ * {@link GeoSerializer}. An invalid value ends up in the {@code IllegalArgumentException} handler of the controller.
+ */
+public class GeometryRenderInterceptor implements AsyncHandlerInterceptor
+{
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+    {
+        GeometryRenderOptions.set(GeometryRenderOptions.of(request.getParameter("lod"), request.getParameter("precision")));
+        return true;
+    }
+
+    // streamed responses are written on another thread, see JsonStreamingResponseBody
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler)
+    {
+        GeometryRenderOptions.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+    {
+        GeometryRenderOptions.clear();
+    }
+}
@@ -0,0 +1,262 @@
+package com.jordanec.peopledirectory.config;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jordanec.peopledirectory.dto.IndexReportDTO;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Reconciles the indexes declared for an entity, by its annotations and by {@code indexes.json}, with the ones
+ * {@code listIndexes} returns. Missing indexes are built with the background option so the collection stays
+ * available meanwhile. Indexes are never dropped: drifted, undeclared and unused ($indexStats) ones are only
+ * reported.
+ */
+@Component
+public class IndexManager
+{
+    private static final String ID_INDEX = "_id_";
+    // options compared to detect drift, together with the keys
+    private static final List<String> COMPARED_OPTIONS = Arrays.asList("unique", "sparse", "expireAfterSeconds",
+            "collation");
+
+    private final Logger logger = LoggerFactory.getLogger(IndexManager.class);
+
+    @Value("${people-directory.mongodb.indexes.config:indexes.json}")
+    private String INDEXES_CONFIG;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+    @Autowired
+    MongoMappingContext mongoMappingContext;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private volatile Map<String, List<IndexDefinition>> configuredIndexes;
+
+    /**
+     * Builds the declared indexes the collection of {@code entityClass} lacks and reports the rest.
+     */
+    public IndexReportDTO reconcile(Class<?> entityClass)
+    {
+        return compare(entityClass, true);
+    }
+
+    /**
+     * Same comparison as {@link #reconcile(Class)} without building anything.
+     */
+    public IndexReportDTO inspect(Class<?> entityClass)
+    {
+        return compare(entityClass, false);
+    }
+
+    public List<IndexDefinition> getDeclaredIndexes(Class<?> entityClass)
+    {
+        List<IndexDefinition> declared = new ArrayList<>();
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoMappingContext);
+        resolver.resolveIndexFor(entityClass).forEach(declared::add);
+        declared.addAll(getConfiguredIndexes().getOrDefault(mongoTemplate.getCollectionName(entityClass),
+                Collections.emptyList()));
+        return declared;
+    }
+
+    private IndexReportDTO compare(Class<?> entityClass, boolean build)
+    {
+        String collectionName = mongoTemplate.getCollectionName(entityClass);
+        IndexReportDTO report = new IndexReportDTO();
+        report.setCollection(collectionName);
+        Map<String, Document> existingByKeys = new HashMap<>();
+        Map<String, Document> existingByName = new HashMap<>();
+        for (Document index : mongoTemplate.getCollection(collectionName).listIndexes())
+        {
+            existingByKeys.put(keySpec(index.get("key", Document.class)), index);
+            existingByName.put(index.getString("name"), index);
+        }
+        List<String> matched = new ArrayList<>();
+        matched.add(ID_INDEX);
+        for (IndexDefinition declared : getDeclaredIndexes(entityClass))
+        {
+            String keySpec = keySpec(declared.getIndexKeys());
+            String name = declared.getIndexOptions().getString("name");
+            Document existing = existingByKeys.get(keySpec);
+            if (existing == null && name != null && existingByName.containsKey(name))
+            {
+                existing = existingByName.get(name);
+                report.getDrifted().add(name + ": declared keys " + keySpec + ", found "
+                        + keySpec(existing.get("key", Document.class)));
+            }
+            else if (existing == null)
+            {
+                String label = name != null ? name : keySpec;
+                if (build)
+                {
+                    mongoTemplate.indexOps(entityClass).ensureIndex(background(declared));
+                    report.getCreated().add(label);
+                }
+                else
+                {
+                    report.getMissing().add(label);
+                }
+                continue;
+            }
+            else
+            {
+                for (String option : COMPARED_OPTIONS)
+                {
+                    if (!sameOption(declared.getIndexOptions().get(option), existing.get(option)))
+                    {
+                        report.getDrifted().add(existing.getString("name") + ": declared " + option + "="
+                                + declared.getIndexOptions().get(option) + ", found " + existing.get(option));
+                    }
+                }
+            }
+            matched.add(existing.getString("name"));
+        }
+        existingByName.keySet().stream().filter(existingName -> !matched.contains(existingName)).sorted()
+                .forEach(report.getUndeclared()::add);
+        report.setUnused(unusedIndexes(collectionName));
+        logger.info("compare(): {}", report);
+        return report;
+    }
+
+    private List<String> unusedIndexes(String collectionName)
+    {
+        List<String> unused = new ArrayList<>();
+        try
+        {
+            for (Document stats : mongoTemplate.getCollection(collectionName)
+                    .aggregate(Collections.singletonList(new Document("$indexStats", new Document()))))
+            {
+                Document accesses = stats.get("accesses", Document.class);
+                Number ops = accesses == null ? null : accesses.get("ops", Number.class);
+                if (!ID_INDEX.equals(stats.getString("name")) && ops != null && ops.longValue() == 0)
+                {
+                    unused.add(stats.getString("name"));
+                }
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            logger.debug("unusedIndexes(): $indexStats not available on {}", collectionName, ex);
+        }
+        Collections.sort(unused);
+        return unused;
+    }
+
+    private Map<String, List<IndexDefinition>> getConfiguredIndexes()
+    {
+        if (configuredIndexes == null)
+        {
+            configuredIndexes = loadConfiguredIndexes();
+        }
+        return configuredIndexes;
+    }
+
+    private Map<String, List<IndexDefinition>> loadConfiguredIndexes()
+    {
+        Resource resource = new ClassPathResource(INDEXES_CONFIG);
+        if (!resource.exists())
+        {
+            return Collections.emptyMap();
+        }
+        try (InputStream inputStream = resource.getInputStream())
+        {
+            Map<String, List<Map<String, Object>>> config = objectMapper.readValue(inputStream,
+                    new TypeReference<Map<String, List<Map<String, Object>>>>() {});
+            Map<String, List<IndexDefinition>> indexes = new HashMap<>();
+            config.forEach((collection, definitions) -> indexes.put(collection,
+                    definitions.stream().map(IndexManager::toIndexDefinition).collect(Collectors.toList())));
+            return indexes;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException("Invalid index configuration " + INDEXES_CONFIG, ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IndexDefinition toIndexDefinition(Map<String, Object> definition)
+    {
+        Document keys = new Document((Map<String, Object>) definition.get("keys"));
+        Document options = new Document();
+        definition.forEach((option, value) -> {
+            if (!"keys".equals(option))
+            {
+                // nested options such as the collation are expected as documents
+                options.put(option, value instanceof Map ? new Document((Map<String, Object>) value) : value);
+            }
+        });
+        return definition(keys, options);
+    }
+
+    private static IndexDefinition background(IndexDefinition declared)
+    {
+        return definition(declared.getIndexKeys(), new Document(declared.getIndexOptions()).append("background", true));
+    }
+
+    private static IndexDefinition definition(Document keys, Document options)
+    {
+        return new IndexDefinition()
+        {
+            @Override
+            public Document getIndexKeys()
+            {
+                return keys;
+            }
+
+            @Override
+            public Document getIndexOptions()
+            {
+                return options;
+            }
+        };
+    }
+
+    // {"a": 1, "b": -1.0} -> "a:1,b:-1", so numeric types of the server and the declaration do not matter
+    static String keySpec(Document keys)
+    {
+        return keys.entrySet().stream()
+                .map(key -> key.getKey() + ":" + (key.getValue() instanceof Number
+                        ? String.valueOf(((Number) key.getValue()).intValue()) : key.getValue()))
+                .collect(Collectors.joining(","));
+    }
+
+    private static boolean sameOption(Object declared, Object existing)
+    {
+        // the server completes a collation with the defaults of its locale, only the declared fields are compared
+        if (declared instanceof Document && existing instanceof Document)
+        {
+            return ((Document) declared).entrySet().stream()
+                    .allMatch(entry -> sameOption(entry.getValue(), ((Document) existing).get(entry.getKey())));
+        }
+        if (declared instanceof Number && existing instanceof Number)
+        {
+            return ((Number) declared).longValue() == ((Number) existing).longValue();
+        }
+        // absent and false are the same for flags
+        return Objects.equals(declared == null ? Boolean.FALSE : declared, existing == null ? Boolean.FALSE : existing);
+    }
+}
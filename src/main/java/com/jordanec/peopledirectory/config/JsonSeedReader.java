@@ -0,0 +1,112 @@
+package com.jordanec.peopledirectory.config;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads a JSON array of documents from a stream with the Jackson token API and hands them over in batches of a
+ * fixed size, so only one batch is ever held in memory whatever the size of the seed file.
+ */
+public final class JsonSeedReader<T>
+{
+    private final ObjectMapper objectMapper;
+    private final ObjectReader objectReader;
+    private final int batchSize;
+
+    public JsonSeedReader(ObjectMapper objectMapper, Class<T> type, int batchSize)
+    {
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("batchSize must be greater than zero");
+        }
+        this.objectMapper = objectMapper;
+        this.objectReader = objectMapper.readerFor(type);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Hands over, in batches, the documents whose hash differs from the one in {@code recordHashes} under the value
+     * of {@code keyField}; the others are never bound. The map is updated with the hash of every document read and
+     * loses the keys no longer in the seed, so afterwards it describes exactly this version of the seed.
+     *
+     * @return number of documents handed over
+     */
+    public long forEachChangedBatch(InputStream inputStream, String keyField, Map<String, String> recordHashes,
+            Consumer<List<T>> consumer) throws IOException
+    {
+        long changed = 0;
+        Set<String> keys = new HashSet<>(recordHashes.size() * 2);
+        try (JsonParser parser = objectReader.getFactory().createParser(inputStream))
+        {
+            expectArray(parser);
+            List<T> batch = new ArrayList<>(batchSize);
+            while (parser.nextToken() == JsonToken.START_OBJECT)
+            {
+                JsonNode record = objectReader.readTree(parser);
+                JsonNode key = record.get(keyField);
+                if (key == null || key.isNull())
+                {
+                    throw new IOException("Seed record without " + keyField + ": " + record);
+                }
+                String hash = DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(record));
+                keys.add(key.asText());
+                if (hash.equals(recordHashes.put(key.asText(), hash)))
+                {
+                    continue;
+                }
+                batch.add(objectReader.readValue(record));
+                changed++;
+                if (batch.size() == batchSize)
+                {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            expectEndArray(parser);
+            if (!batch.isEmpty())
+            {
+                consumer.accept(batch);
+            }
+        }
+        // records removed from the seed
+        recordHashes.keySet().retainAll(keys);
+        return changed;
+    }
+
+    /**
+     * Hash of the raw bytes of the seed, computed without parsing it.
+     */
+    public static String hash(InputStream inputStream) throws IOException
+    {
+        return DigestUtils.md5DigestAsHex(inputStream);
+    }
+
+    private static void expectArray(JsonParser parser) throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_ARRAY)
+        {
+            throw new IOException("Seed data must be a JSON array, found " + parser.currentToken());
+        }
+    }
+
+    private static void expectEndArray(JsonParser parser) throws IOException
+    {
+        if (parser.currentToken() != JsonToken.END_ARRAY)
+        {
+            throw new IOException("Seed data must be an array of objects, found " + parser.currentToken());
+        }
+    }
+}
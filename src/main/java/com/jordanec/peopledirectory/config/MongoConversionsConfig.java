@@ -0,0 +1,16 @@
+package com.jordanec.peopledirectory.config;
+
+import com.jordanec.peopledirectory.geo.PackedGeometryConverters;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+@Configuration
+public class MongoConversionsConfig
+{
+    @Bean
+    public MongoCustomConversions mongoCustomConversions()
+    {
+        return new MongoCustomConversions(PackedGeometryConverters.getConvertersToRegister());
+    }
+}
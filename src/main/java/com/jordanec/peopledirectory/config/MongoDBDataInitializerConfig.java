@@ -1,10 +1,13 @@
 package com.jordanec.peopledirectory.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.jordanec.peopledirectory.dto.IndexReportDTO;
 import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.model.Lease;
 import com.jordanec.peopledirectory.model.Person;
+import com.jordanec.peopledirectory.model.SeedMetadata;
 import com.jordanec.peopledirectory.repository.CountryRepository;
+import com.jordanec.peopledirectory.service.CountryCatalogChangedEvent;
 import com.jordanec.peopledirectory.service.PersonService;
 import com.mongodb.client.MongoDatabase;
 import org.slf4j.Logger;
@@ -12,27 +15,41 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
 import org.springframework.data.mongodb.core.CollectionOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.index.IndexOperations;
-import org.springframework.data.mongodb.core.index.IndexResolver;
-import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
-import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.mongodb.core.schema.JsonSchemaProperty;
 import org.springframework.data.mongodb.core.schema.MongoJsonSchema;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.StopWatch;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
 @Configuration
 public class MongoDBDataInitializerConfig
 {
+    static final String PERSON_SEED = "data/Person.json";
+    static final String COUNTRY_SEED = "data/Country_WithGeometry.json";
+    static final String BOOTSTRAP_LOCK = "bootstrap";
+    private static final String BOOTSTRAP_LOCK_MODE_SKIP = "skip";
+
     private final Logger logger = LoggerFactory.getLogger(MongoDBDataInitializerConfig.class);
 
     @Value("${people-directory.mongodb.insert-initial-data.person:true}")
@@ -49,54 +66,255 @@ public class MongoDBDataInitializerConfig
     private boolean CUSTOM_SCHEMA_VALIDATION_PERSON;
     @Value("${people-directory.mongodb.custom-schema-validation.country:false}")
     private boolean CUSTOM_SCHEMA_VALIDATION_COUNTRY;
+    @Value("${people-directory.bootstrap.async:true}")
+    private boolean BOOTSTRAP_ASYNC;
+    @Value("${people-directory.bootstrap.lock.enabled:true}")
+    private boolean BOOTSTRAP_LOCK_ENABLED;
+    // wait or skip
+    @Value("${people-directory.bootstrap.lock.mode:wait}")
+    private String BOOTSTRAP_LOCK_MODE;
+    @Value("${people-directory.bootstrap.lock.ttl-seconds:30}")
+    private int BOOTSTRAP_LOCK_TTL_SECONDS;
+    @Value("${people-directory.bootstrap.lock.wait-seconds:600}")
+    private int BOOTSTRAP_LOCK_WAIT_SECONDS;
+    @Value("${people-directory.mongodb.seed.batch-size:100}")
+    private int SEED_BATCH_SIZE;
 
     @Autowired
     MongoTemplate mongoTemplate;
     @Autowired
-    MongoMappingContext mongoMappingContext;
-    @Autowired
     PersonService personService;
     @Autowired
     CountryRepository countryRepository;
     @Autowired
     ObjectMapper objectMapper;
+    @Autowired
+    ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    BootstrapReadiness bootstrapReadiness;
+    @Autowired
+    MongoLeaseLock mongoLeaseLock;
+    @Autowired
+    IndexManager indexManager;
 
+    /**
+     * Starts the bootstrap: schemas and indexes of both collections in parallel, then country seeding, then person
+     * seeding, which resolves country ids through the registry loaded after the countries. With
+     * {@code people-directory.bootstrap.async} the pipeline runs in the background so the application is listening
+     * right away, and {@link BootstrapReadiness} holds traffic back until it is over.
+     */
     @EventListener(ApplicationReadyEvent.class)
     public void mongoDBInitializer()
     { // https://docs.spring.io/spring-data/mongodb/docs/current/reference/html/#reference
-        try
+        bootstrapReadiness.starting();
+        if (BOOTSTRAP_ASYNC)
         {
-            if (DROP_BEFORE)
+            ExecutorService executor = Executors.newFixedThreadPool(2, bootstrapThreadFactory());
+            bootstrap(executor).whenComplete((result, ex) -> executor.shutdown());
+        }
+        else
+        {
+            bootstrap(Runnable::run);
+        }
+    }
+
+    /**
+     * With {@code people-directory.bootstrap.lock.enabled} only the instance holding the bootstrap lease runs the
+     * pipeline. The others either skip it, waiting for the holder to finish before loading the catalog, or wait for
+     * the lease and then run it, which is cheap once the holder has created the schemas and synced the seeds.
+     */
+    protected CompletableFuture<Void> bootstrap(Executor executor)
+    {
+        return CompletableFuture.supplyAsync(this::acquireBootstrapLease, executor)
+                .thenCompose(lease -> {
+                    if (!lease.isPresent())
+                    {
+                        logger.info("mongoDBInitializer(): another instance is bootstrapping the database, skipped");
+                        return CompletableFuture.runAsync(this::awaitBootstrapByAnotherInstance, executor);
+                    }
+                    return bootstrapPipeline(executor, lease.get()).whenComplete((result, ex) -> lease.get().release());
+                })
+                .handle((result, ex) -> {
+                    if (ex == null)
+                    {
+                        bootstrapReadiness.ready();
+                    }
+                    else
+                    {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        logger.error("mongoDBInitializer():", cause);
+                        bootstrapReadiness.failed(cause);
+                    }
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> bootstrapPipeline(Executor executor, BootstrapLease lease)
+    {
+        CompletableFuture<Void> dropped = CompletableFuture.runAsync(() -> {
+            // an instance that waited for the lease must not drop what the previous holder seeded
+            if (DROP_BEFORE && !lease.waited)
             {
                 logger.info("mongoDBInitializer(): drop-db-before property is enabled hence dropping the DB...");
-                dropDB();
+                timed("dropDB", lease, this::dropDB);
             }
-            //Countries collection
-            createCountrySchema();
+        }, executor);
+        CompletableFuture<Void> countrySchema =
+                dropped.thenRunAsync(() -> timed("createCountrySchema", lease, this::createCountrySchema), executor);
+        CompletableFuture<Void> personSchema =
+                dropped.thenRunAsync(() -> timed("createPersonSchema", lease, this::createPersonSchema), executor);
+        CompletableFuture<Void> countries = countrySchema.thenRunAsync(() -> timed("seedCountryData", lease, () -> {
             seedCountryData();
+            // countries are written through the repository, in-memory views of the catalog are loaded here
+            applicationEventPublisher.publishEvent(new CountryCatalogChangedEvent(this));
+        }), executor);
+        return CompletableFuture.allOf(countries, personSchema)
+                .thenRunAsync(() -> timed("seedPersonData", lease, this::seedPersonData), executor);
+    }
+
+    /**
+     * Empty when another instance holds the lease and the lock mode is {@code skip}.
+     */
+    private Optional<BootstrapLease> acquireBootstrapLease()
+    {
+        if (!BOOTSTRAP_LOCK_ENABLED)
+        {
+            return Optional.of(new BootstrapLease(null, false));
+        }
+        Duration ttl = Duration.ofSeconds(BOOTSTRAP_LOCK_TTL_SECONDS);
+        Optional<MongoLeaseLock.Handle> handle = mongoLeaseLock.tryAcquire(BOOTSTRAP_LOCK, ttl);
+        if (handle.isPresent())
+        {
+            return Optional.of(new BootstrapLease(handle.get(), false));
+        }
+        if (BOOTSTRAP_LOCK_MODE_SKIP.equalsIgnoreCase(BOOTSTRAP_LOCK_MODE))
+        {
+            return Optional.empty();
+        }
+        logger.info("mongoDBInitializer(): waiting for another instance to bootstrap the database...");
+        try
+        {
+            handle = mongoLeaseLock.acquire(BOOTSTRAP_LOCK, ttl, Duration.ofSeconds(BOOTSTRAP_LOCK_WAIT_SECONDS));
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the bootstrap lock", ex);
+        }
+        return Optional.of(handle.map(acquired -> new BootstrapLease(acquired, true)).orElseThrow(() ->
+                new IllegalStateException("Timed out waiting for the bootstrap lock after "
+                        + BOOTSTRAP_LOCK_WAIT_SECONDS + " s")));
+    }
+
+    /**
+     * Skip mode: the pipeline is left to the holder of the lease, but the in-memory views of the catalog are only
+     * loaded by {@link CountryCatalogChangedEvent}, so they are loaded here once the holder is done.
+     */
+    private void awaitBootstrapByAnotherInstance()
+    {
+        boolean released;
+        try
+        {
+            released = mongoLeaseLock.awaitRelease(BOOTSTRAP_LOCK, Duration.ofSeconds(BOOTSTRAP_LOCK_TTL_SECONDS),
+                    Duration.ofSeconds(BOOTSTRAP_LOCK_WAIT_SECONDS));
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the bootstrap lock", ex);
+        }
+        if (!released)
+        {
+            throw new IllegalStateException("Timed out waiting for the bootstrap lock after "
+                    + BOOTSTRAP_LOCK_WAIT_SECONDS + " s");
+        }
+        applicationEventPublisher.publishEvent(new CountryCatalogChangedEvent(this));
+    }
 
-            //Persons collection
-            createPersonSchema();
-            seedPersonData();
+    /*
+     * A step never starts once the lease is lost: another instance may be running the same pipeline by then, and
+     * both seeding the same collections would fail on duplicate keys.
+     */
+    private void timed(String step, BootstrapLease lease, BootstrapStep bootstrapStep)
+    {
+        if (lease.isLost())
+        {
+            throw new IllegalStateException("Bootstrap lease lost, aborted before " + step);
+        }
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        try
+        {
+            bootstrapStep.run();
         }
-        catch (Exception ex)
+        catch (IOException ex)
         {
-            logger.error("mongoDBInitializer():", ex);
+            throw new UncheckedIOException(ex);
         }
+        stopWatch.stop();
+        bootstrapReadiness.stepCompleted(step, stopWatch.getTotalTimeMillis());
     }
 
+    private static ThreadFactory bootstrapThreadFactory()
+    {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("bootstrap-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    private static final class BootstrapLease
+    {
+        // null when locking is disabled
+        private final MongoLeaseLock.Handle handle;
+        private final boolean waited;
+
+        private BootstrapLease(MongoLeaseLock.Handle handle, boolean waited)
+        {
+            this.handle = handle;
+            this.waited = waited;
+        }
+
+        private boolean isLost()
+        {
+            return handle != null && handle.isLost();
+        }
+
+        private void release()
+        {
+            if (handle != null)
+            {
+                handle.close();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface BootstrapStep
+    {
+        void run() throws IOException;
+    }
+
+    /**
+     * Drops every collection but {@code locks}, which holds the bootstrap lease of this instance: dropping it would
+     * free the lease (and its TTL index) for an instance waiting to bootstrap the same database.
+     */
     protected void dropDB()
     {
         MongoDatabase mongoDatabase = mongoTemplate.getDb();
         logger.debug("dropDB(): Database name: {}", mongoDatabase.getName());
-        mongoDatabase.drop();
+        String locks = mongoTemplate.getCollectionName(Lease.class);
+        for (String collection : mongoTemplate.getCollectionNames())
+        {
+            if (!collection.equals(locks) && !collection.startsWith("system."))
+            {
+                mongoTemplate.dropCollection(collection);
+            }
+        }
     }
 
     protected void seedPersonData() throws IOException
     {
-        Resource sourceData = new ClassPathResource("data/Person.json");
-        List<Person> persons = objectMapper.readValue(sourceData.getFile(),
-                objectMapper.getTypeFactory().constructCollectionType(ArrayList.class, Person.class));
+        JsonSeedReader<Person> seedReader = new JsonSeedReader<>(objectMapper, Person.class, SEED_BATCH_SIZE);
         long totalPersons = personService.count();
 
         if (totalPersons == 0 && INSERT_INITIAL_DATA_PERSON)
@@ -104,15 +322,24 @@ public class MongoDBDataInitializerConfig
             logger.debug("seedPersonData(): Inserting initial data...");
             StopWatch stopWatch = new StopWatch();
             stopWatch.start();
-            personService.insert(persons);
+            long inserted = syncSeed(PERSON_SEED, "dni", seedReader, new HashMap<>(), personService::insert);
             stopWatch.stop();
-            logger.debug("seedPersonData(): {} person documents inserted in {} ms", persons.size(),
+            logger.debug("seedPersonData(): {} person documents inserted in {} ms", inserted,
                     stopWatch.getTotalTimeMillis());
         }
-        else if ( (totalPersons != 0 && totalPersons < persons.size()) || UPDATE_INITIAL_DATA_PERSON)
+        else if (UPDATE_INITIAL_DATA_PERSON)
         {
-            logger.debug("seedPersonData(): Updating initial data...");
-            personService.save(persons);
+            Optional<Map<String, String>> recordHashes = changedSeedRecordHashes(PERSON_SEED);
+            if (recordHashes.isPresent())
+            {
+                logger.debug("seedPersonData(): Updating initial data...");
+                long upserted = syncSeed(PERSON_SEED, "dni", seedReader, recordHashes.get(), personService::bulkSave);
+                logger.debug("seedPersonData(): {} changed person documents upserted", upserted);
+            }
+            else
+            {
+                logger.debug("seedPersonData(): Seed unchanged, data initialization skipped...");
+            }
         } else
         {
             logger.debug("seedPersonData(): Data initialization skipped...");
@@ -121,9 +348,7 @@ public class MongoDBDataInitializerConfig
 
     protected void seedCountryData() throws IOException
     {
-        Resource sourceData = new ClassPathResource("data/Country_withGeometry.json");
-        List<Country> countries = objectMapper.readValue(sourceData.getFile(),
-                TypeFactory.defaultInstance().constructCollectionType(ArrayList.class, Country.class));
+        JsonSeedReader<Country> seedReader = new JsonSeedReader<>(objectMapper, Country.class, SEED_BATCH_SIZE);
         long totalCountries = countryRepository.count();
 
         if (totalCountries == 0 && INSERT_INITIAL_DATA_COUNTRY)
@@ -131,21 +356,83 @@ public class MongoDBDataInitializerConfig
             logger.debug("seedCountryData(): Inserting initial data...");
             StopWatch stopWatch = new StopWatch();
             stopWatch.start();
-            countryRepository.insert(countries);
+            long inserted = syncSeed(COUNTRY_SEED, "name", seedReader, new HashMap<>(), countryRepository::insert);
             stopWatch.stop();
-            logger.debug("seedCountryData(): {} country documents inserted in {} ms", countries.size(),
+            logger.debug("seedCountryData(): {} country documents inserted in {} ms", inserted,
                     stopWatch.getTotalTimeMillis());
         }
-        else if ( (totalCountries != 0 && totalCountries < countries.size()) || UPDATE_INITIAL_DATA_COUNTRY)
+        else if (UPDATE_INITIAL_DATA_COUNTRY)
         {
-            logger.debug("seedCountryData(): Updating initial data...");
-            countryRepository.saveAll(countries);
+            Optional<Map<String, String>> recordHashes = changedSeedRecordHashes(COUNTRY_SEED);
+            if (recordHashes.isPresent())
+            {
+                logger.debug("seedCountryData(): Updating initial data...");
+                long upserted = syncSeed(COUNTRY_SEED, "name", seedReader, recordHashes.get(),
+                        countries -> countries.forEach(countryRepository::upsertByName));
+                logger.debug("seedCountryData(): {} changed country documents upserted", upserted);
+            }
+            else
+            {
+                logger.debug("seedCountryData(): Seed unchanged, data initialization skipped...");
+            }
         } else
         {
             logger.debug("seedCountryData(): Data initialization skipped...");
         }
     }
 
+    /**
+     * Seed files are read as classpath streams, which also works from inside a packaged jar.
+     */
+    protected InputStream openSeed(String path) throws IOException
+    {
+        return new ClassPathResource(path).getInputStream();
+    }
+
+    /**
+     * Record hashes of the version of the seed last written, empty when the file has not changed since then and
+     * can be skipped without parsing it.
+     */
+    private Optional<Map<String, String>> changedSeedRecordHashes(String path) throws IOException
+    {
+        SeedMetadata seedMetadata = mongoTemplate.findById(path, SeedMetadata.class);
+        if (seedMetadata == null)
+        {
+            // written before seeds were versioned, every record is compared once
+            return Optional.of(new HashMap<>());
+        }
+        if (seedMetadata.getHash().equals(hashSeed(path)))
+        {
+            return Optional.empty();
+        }
+        return Optional.of(seedMetadata.getRecordHashes());
+    }
+
+    /**
+     * Writes the records of the seed that are not in {@code recordHashes} with the same hash and then stores the
+     * new version of the seed.
+     */
+    private <T> long syncSeed(String path, String keyField, JsonSeedReader<T> seedReader,
+            Map<String, String> recordHashes, Consumer<List<T>> writer) throws IOException
+    {
+        String hash = hashSeed(path);
+        long written;
+        try (InputStream inputStream = openSeed(path))
+        {
+            written = seedReader.forEachChangedBatch(inputStream, keyField, recordHashes, writer);
+        }
+        mongoTemplate.save(SeedMetadata.of(path, hash, recordHashes));
+        return written;
+    }
+
+    private String hashSeed(String path) throws IOException
+    {
+        try (InputStream inputStream = openSeed(path))
+        {
+            return JsonSeedReader.hash(inputStream);
+        }
+    }
+
     protected void createCountrySchema()
     {
         if (!mongoTemplate.collectionExists(Country.class))
@@ -161,9 +448,9 @@ public class MongoDBDataInitializerConfig
                 //MongoCollection<Document> countriesCollection =
                 mongoTemplate.createCollection(Country.class, CollectionOptions.empty());
             }
-
-            checkIndexForCollection(Country.class);
         }
+        // indexes added to the model after the collection was created are built here as well
+        checkIndexForCollection(Country.class);
     }
 
     protected void createPersonSchema()
@@ -190,18 +477,18 @@ public class MongoDBDataInitializerConfig
             {
                 mongoTemplate.createCollection(Person.class, CollectionOptions.empty());
             }
-            checkIndexForCollection(Person.class);
         }
+        checkIndexForCollection(Person.class);
     }
 
     protected <T> void checkIndexForCollection(Class<T> tClass)
     {
         logger.info("checkIndexForCollection(): class: {}",tClass.getSimpleName());
-        IndexOperations indexOps = mongoTemplate.indexOps(tClass);
-        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoMappingContext);
-        resolver.resolveIndexFor(tClass).forEach(i -> {
-            indexOps.ensureIndex(i);
-            logger.info("checkIndexForCollection(): indices: {}", i.getIndexKeys());
-        });
+        IndexReportDTO report = indexManager.reconcile(tClass);
+        if (!report.getDrifted().isEmpty() || !report.getUnused().isEmpty())
+        {
+            logger.warn("checkIndexForCollection(): {} drifted: {}, unused: {}", report.getCollection(),
+                    report.getDrifted(), report.getUnused());
+        }
     }
 }
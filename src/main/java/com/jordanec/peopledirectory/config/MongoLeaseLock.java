@@ -0,0 +1,192 @@
+package com.jordanec.peopledirectory.config;
+
+import com.jordanec.peopledirectory.model.Lease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mongo-backed lease lock across application instances. A lease is a document in {@code locks} with the owner and
+ * an expiry: it is taken with one atomic upsert that only matches a free or expired lease (a held one makes the
+ * upsert fail on the unique _id), kept alive by a heartbeat and removed on release. If the holder dies, the lease
+ * expires and another instance can take it.
+ */
+@Component
+public class MongoLeaseLock
+{
+    private final Logger logger = LoggerFactory.getLogger(MongoLeaseLock.class);
+
+    // one per application instance
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID();
+
+    @Autowired
+    MongoOperations mongoOperations;
+
+    private volatile boolean ttlIndexEnsured;
+
+    /**
+     * Takes the lease if it is free, expired or already held by this instance. The returned handle renews it every
+     * third of {@code ttl} until it is closed.
+     */
+    public Optional<Handle> tryAcquire(String name, Duration ttl)
+    {
+        ensureTtlIndex();
+        Date now = new Date();
+        Query query = new Query(Criteria.where("_id").is(name)
+                .orOperator(Criteria.where("expiresAt").lt(now), Criteria.where("owner").is(owner)));
+        Update update = new Update().set("owner", owner).set("acquiredAt", now)
+                .set("expiresAt", new Date(now.getTime() + ttl.toMillis()));
+        try
+        {
+            mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Lease.class);
+        }
+        catch (DuplicateKeyException ex)
+        {
+            logger.debug("tryAcquire(): {} is held by another instance", name);
+            return Optional.empty();
+        }
+        logger.debug("tryAcquire(): {} acquired by {}", name, owner);
+        return Optional.of(new Handle(name, ttl));
+    }
+
+    /**
+     * Polls {@link #tryAcquire(String, Duration)} until the lease is taken or {@code timeout} elapses.
+     */
+    public Optional<Handle> acquire(String name, Duration ttl, Duration timeout) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true)
+        {
+            Optional<Handle> handle = tryAcquire(name, ttl);
+            if (handle.isPresent() || System.nanoTime() >= deadline)
+            {
+                return handle;
+            }
+            Thread.sleep(pollMillis(ttl));
+        }
+    }
+
+    /**
+     * Polls until nobody holds the lease (released or expired) without taking it. False if it is still held after
+     * {@code timeout}.
+     */
+    public boolean awaitRelease(String name, Duration ttl, Duration timeout) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (mongoOperations.exists(new Query(Criteria.where("_id").is(name).and("expiresAt").gte(new Date())),
+                Lease.class))
+        {
+            if (System.nanoTime() >= deadline)
+            {
+                return false;
+            }
+            Thread.sleep(pollMillis(ttl));
+        }
+        return true;
+    }
+
+    public String getOwner()
+    {
+        return owner;
+    }
+
+    private static long pollMillis(Duration ttl)
+    {
+        return Math.max(100, Math.min(1000, ttl.toMillis() / 4));
+    }
+
+    private void ensureTtlIndex()
+    {
+        if (!ttlIndexEnsured)
+        {
+            mongoOperations.indexOps(Lease.class)
+                    .ensureIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(0));
+            ttlIndexEnsured = true;
+        }
+    }
+
+    public final class Handle implements AutoCloseable
+    {
+        private final String name;
+        private final Duration ttl;
+        private final ScheduledExecutorService heartbeat;
+        private volatile boolean lost;
+        // as far as this instance knows, the last expiry written
+        private volatile long expiresAt;
+
+        private Handle(String name, Duration ttl)
+        {
+            this.name = name;
+            this.ttl = ttl;
+            this.expiresAt = System.currentTimeMillis() + ttl.toMillis();
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lease-" + name + "-");
+            threadFactory.setDaemon(true);
+            this.heartbeat = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            long period = Math.max(1, ttl.toMillis() / 3);
+            heartbeat.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Pushes the expiry forward, recreating the lease if it was removed (e.g. swept by the TTL index) unless
+         * another instance took it meanwhile.
+         */
+        public void renew()
+        {
+            Query query = new Query(Criteria.where("_id").is(name).and("owner").is(owner));
+            long renewedExpiresAt = System.currentTimeMillis() + ttl.toMillis();
+            Update update = new Update().set("expiresAt", new Date(renewedExpiresAt))
+                    .setOnInsert("acquiredAt", new Date());
+            try
+            {
+                mongoOperations.upsert(query, update, Lease.class);
+                expiresAt = renewedExpiresAt;
+            }
+            catch (DuplicateKeyException ex)
+            {
+                lost = true;
+                logger.warn("renew(): lease {} was taken over by another instance", name);
+            }
+            catch (RuntimeException ex)
+            {
+                logger.warn("renew(): lease {} could not be renewed", name, ex);
+            }
+        }
+
+        /**
+         * Whether another instance took the lease over, or the renewals kept failing until it expired, after which
+         * another instance may take it at any time.
+         */
+        public boolean isLost()
+        {
+            return lost || System.currentTimeMillis() >= expiresAt;
+        }
+
+        @Override
+        public void close()
+        {
+            heartbeat.shutdownNow();
+            mongoOperations.remove(new Query(Criteria.where("_id").is(name).and("owner").is(owner)), Lease.class);
+            logger.debug("close(): {} released by {}", name, owner);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.jordanec.peopledirectory.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+
+/**
+ * Multi-document transactions need a replica set (or sharded cluster), so the transaction manager is only
+ * registered when people-directory.mongodb.transactions.enabled is set.
+ */
+@Configuration
+@ConditionalOnProperty(value = "people-directory.mongodb.transactions.enabled", havingValue = "true")
+public class MongoTransactionConfig
+{
+    @Bean
+    public MongoTransactionManager transactionManager(MongoDatabaseFactory mongoDatabaseFactory)
+    {
+        return new MongoTransactionManager(mongoDatabaseFactory);
+    }
+}
@@ -0,0 +1,118 @@
+package com.jordanec.peopledirectory.config;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
+import com.jordanec.peopledirectory.geo.PackedPolygon;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a GeoJSON Polygon or MultiPolygon straight from the token stream into {@link PackedGeometry}, the
+ * coordinates go into primitive arrays without an intermediate tree.
+ */
+public class PackedGeometryDeserializer extends JsonDeserializer<PackedGeometry>
+{
+    @Override
+    public PackedGeometry deserialize(JsonParser jsonParser, DeserializationContext deserializationContext)
+            throws IOException
+    {
+        String type = null;
+        PackedGeometry geometry = null;
+        TokenBuffer bufferedCoordinates = null;
+        for (JsonToken token = jsonParser.nextToken(); token == JsonToken.FIELD_NAME; token = jsonParser.nextToken())
+        {
+            String field = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+            if ("type".equals(field))
+            {
+                type = jsonParser.getText();
+            }
+            else if ("coordinates".equals(field) && type != null)
+            {
+                geometry = readCoordinates(type, jsonParser, deserializationContext);
+            }
+            else if ("coordinates".equals(field))
+            {
+                // type comes after the coordinates, keep them until it is known
+                bufferedCoordinates = new TokenBuffer(jsonParser, deserializationContext);
+                bufferedCoordinates.copyCurrentStructure(jsonParser);
+            }
+            else
+            {
+                jsonParser.skipChildren();
+            }
+        }
+        if (geometry == null && bufferedCoordinates != null && type != null)
+        {
+            JsonParser bufferedParser = bufferedCoordinates.asParser(jsonParser.getCodec());
+            bufferedParser.nextToken();
+            geometry = readCoordinates(type, bufferedParser, deserializationContext);
+        }
+        if (geometry == null)
+        {
+            return (PackedGeometry) deserializationContext.handleUnexpectedToken(PackedGeometry.class, jsonParser);
+        }
+        return geometry;
+    }
+
+    private PackedGeometry readCoordinates(String type, JsonParser jsonParser,
+            DeserializationContext deserializationContext) throws IOException
+    {
+        if (PackedGeometry.MULTI_POLYGON.equals(type))
+        {
+            List<PackedPolygon> polygons = new ArrayList<>();
+            while (jsonParser.nextToken() == JsonToken.START_ARRAY)
+            {
+                polygons.add(readPolygon(jsonParser));
+            }
+            return PackedGeometry.multiPolygon(polygons);
+        }
+        if (PackedGeometry.POLYGON.equals(type))
+        {
+            return PackedGeometry.polygon(readPolygon(jsonParser));
+        }
+        return (PackedGeometry) deserializationContext.handleWeirdStringValue(PackedGeometry.class, type,
+                "Unsupported geometry type");
+    }
+
+    // at the START_ARRAY of the polygon, ends at its END_ARRAY
+    private PackedPolygon readPolygon(JsonParser jsonParser) throws IOException
+    {
+        List<double[]> rings = new ArrayList<>();
+        while (jsonParser.nextToken() == JsonToken.START_ARRAY)
+        {
+            rings.add(readRing(jsonParser));
+        }
+        return new PackedPolygon(rings.toArray(new double[0][]));
+    }
+
+    private double[] readRing(JsonParser jsonParser) throws IOException
+    {
+        double[] ring = new double[64];
+        int size = 0;
+        while (jsonParser.nextToken() == JsonToken.START_ARRAY)
+        {
+            if (size + 2 > ring.length)
+            {
+                ring = Arrays.copyOf(ring, ring.length * 2);
+            }
+            jsonParser.nextToken();
+            ring[size++] = jsonParser.getDoubleValue();
+            jsonParser.nextToken();
+            ring[size++] = jsonParser.getDoubleValue();
+            // altitude, if any, is dropped
+            while (jsonParser.nextToken() != JsonToken.END_ARRAY)
+            {
+                jsonParser.skipChildren();
+            }
+        }
+        return Arrays.copyOf(ring, size);
+    }
+}
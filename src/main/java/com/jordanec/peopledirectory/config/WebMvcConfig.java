@@ -0,0 +1,23 @@
+package com.jordanec.peopledirectory.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer
+{
+    @Autowired
+    BootstrapReadiness bootstrapReadiness;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry)
+    {
+        registry.addInterceptor(new BootstrapReadinessInterceptor(bootstrapReadiness)).addPathPatterns("/api/**")
+                .excludePathPatterns("/api/bootstrap/**");
+        // only these controllers map the IllegalArgumentException of an invalid lod or precision to 400
+        registry.addInterceptor(new GeometryRenderInterceptor())
+                .addPathPatterns("/api/country/**", "/api/countryDocument", "/api/person/**");
+    }
+}
@@ -0,0 +1,44 @@
+package com.jordanec.peopledirectory.controller;
+
+import com.jordanec.peopledirectory.config.BootstrapReadiness;
+import com.jordanec.peopledirectory.config.IndexManager;
+import com.jordanec.peopledirectory.dto.BootstrapStatusDTO;
+import com.jordanec.peopledirectory.dto.IndexReportDTO;
+import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.model.Person;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api")
+public class BootstrapController
+{
+    @Autowired
+    BootstrapReadiness bootstrapReadiness;
+    @Autowired
+    IndexManager indexManager;
+
+    // api/bootstrap/status   (503 while the database bootstrap is running)
+    @RequestMapping(method = RequestMethod.GET, value = "/bootstrap/status")
+    public @ResponseBody ResponseEntity<BootstrapStatusDTO> status()
+    {
+        BootstrapStatusDTO status = bootstrapReadiness.getStatus();
+        return new ResponseEntity<>(status,
+                bootstrapReadiness.isAcceptingTraffic() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // api/bootstrap/indexes   (declared vs existing indexes, nothing is built)
+    @RequestMapping(method = RequestMethod.GET, value = "/bootstrap/indexes")
+    public @ResponseBody ResponseEntity<List<IndexReportDTO>> indexes()
+    {
+        return ResponseEntity.ok(Arrays.asList(indexManager.inspect(Country.class), indexManager.inspect(Person.class)));
+    }
+}
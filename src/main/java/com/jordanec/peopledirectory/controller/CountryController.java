@@ -1,27 +1,50 @@
 package com.jordanec.peopledirectory.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jordanec.peopledirectory.dto.CacheStatsDTO;
+import com.jordanec.peopledirectory.geo.GeometryDetail;
+import com.jordanec.peopledirectory.geo.GeometryRenderOptions;
+import com.jordanec.peopledirectory.geo.SimplifiedGeometryCache;
 import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.service.CountryRegistry;
 import com.jordanec.peopledirectory.service.CountryService;
 import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
 @RequestMapping("/api")
 public class CountryController
 {
+    private final Logger logger = LoggerFactory.getLogger(CountryController.class);
     @Autowired
     CountryService countryService;
+    @Autowired
+    CountryRegistry countryRegistry;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    CountryResponseCache countryResponseCache;
+    @Autowired
+    SimplifiedGeometryCache simplifiedGeometryCache;
     
     /**
      * WRITE APIs
@@ -51,15 +74,46 @@ public class CountryController
         return new ResponseEntity<>(countryService.save(country), HttpStatus.OK);
     }
 
+    // api/country
+    // api/country?lod=low   (full, high, medium, low, none)
+    // api/country?lod=medium&precision=3
+    // answered from CountryResponseCache, supports If-None-Match and Accept-Encoding: gzip
     @RequestMapping(method = RequestMethod.GET, value = "/country")
-    public @ResponseBody ResponseEntity<List<Country>> findAll() {
-        List<Country> countries = countryService.findAll();
-        return ResponseEntity.ok(countries);
+    public @ResponseBody ResponseEntity<byte[]> findAll(@RequestParam(value = "lod", required = false) String lod,
+            @RequestParam(value = "precision", required = false) String precision,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws Exception {
+        GeometryDetail detail = GeometryDetail.of(lod);
+        return countryResponseCache.get("findAll:" + detail + ":" + precision, ifNoneMatch, acceptEncoding, () -> {
+            List<Country> countries = countryService.findAll(detail);
+            geometryAlreadyAt(detail);
+            return objectMapper.writeValueAsBytes(countries);
+        });
+    }
+    // api/country/stream
+    // api/country/stream?format=ndjson
+    @RequestMapping(method = RequestMethod.GET, value = "/country/stream")
+    public ResponseEntity<StreamingResponseBody> stream(@RequestParam(value = "format", required = false) String format)
+    {
+        JsonStreamingResponseBody<Country> body = new JsonStreamingResponseBody<>(countryService::streamAll,
+                objectMapper, JsonStreamingResponseBody.isNdjson(format));
+        return ResponseEntity.ok().contentType(body.getContentType()).body(body);
     }
+
     @RequestMapping(method = RequestMethod.GET, value = "/country/findByName")
-    public @ResponseBody ResponseEntity<Country> findByName(@RequestParam(value = "name") String name)
+    public @ResponseBody ResponseEntity<byte[]> findByName(@RequestParam(value = "name") String name,
+            @RequestParam(value = "lod", required = false) String lod,
+            @RequestParam(value = "precision", required = false) String precision,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws Exception
     {
-        return countryService.findByName(name).map(ResponseEntity::ok).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        GeometryDetail detail = GeometryDetail.of(lod);
+        return countryResponseCache.get("findByName:" + name + ":" + detail + ":" + precision, ifNoneMatch,
+                acceptEncoding, () -> {
+                    Optional<Country> optionalCountry = countryService.findByName(name, detail);
+                    geometryAlreadyAt(detail);
+                    return optionalCountry.isPresent() ? objectMapper.writeValueAsBytes(optionalCountry.get()) : null;
+                });
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/country/getCountryOfCurrentLocation")
@@ -68,4 +122,41 @@ public class CountryController
         Optional<Country> optionalCountry = countryService.getCountryOfCurrentLocation(dni);
         return optionalCountry.map(ResponseEntity::ok).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
+
+    // api/country/getCountryOfCurrentLocation/batch   body: [1001, 1002, ...]
+    @RequestMapping(method = RequestMethod.POST, value = "/country/getCountryOfCurrentLocation/batch")
+    public @ResponseBody ResponseEntity<Map<Long, Country>> getCountriesOfCurrentLocation(@RequestBody List<Long> dnis)
+    {
+        return ResponseEntity.ok(countryService.getCountriesOfCurrentLocation(dnis));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/country/registry/stats")
+    public @ResponseBody ResponseEntity<CacheStatsDTO> registryStats()
+    {
+        return ResponseEntity.ok(countryRegistry.getStats());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/country/cache/stats")
+    public @ResponseBody ResponseEntity<List<CacheStatsDTO>> cacheStats()
+    {
+        return ResponseEntity.ok(Arrays.asList(countryRegistry.getStats(), simplifiedGeometryCache.getStats(),
+                countryResponseCache.getStats()));
+    }
+
+    // the precomputed level was read from Mongo, GeoSerializer must not simplify it again (precision still applies)
+    private void geometryAlreadyAt(GeometryDetail detail)
+    {
+        if (detail.isSimplified())
+        {
+            GeometryRenderOptions.set(GeometryRenderOptions.current().withDetail(GeometryDetail.FULL));
+        }
+    }
+
+    // invalid lod or precision, oversized batch
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> handleIllegalArgument(IllegalArgumentException ex)
+    {
+        logger.debug("handleIllegalArgument()", ex);
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
 }
@@ -0,0 +1,192 @@
+package com.jordanec.peopledirectory.controller;
+
+import com.jordanec.peopledirectory.dto.CacheStatsDTO;
+import com.jordanec.peopledirectory.service.CountryCatalogChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized country responses, kept as JSON bytes plus a gzip copy and served with a strong ETag, so a repeated
+ * request is a byte copy (or a 304) instead of a Mongo read plus Jackson. Entries are keyed by endpoint and
+ * parameters, evicted least recently used beyond {@code max-entries} or {@code max-bytes} (JSON plus gzip bytes of
+ * all the entries) and all dropped when the country catalog changes.
+ */
+@Component
+public class CountryResponseCache
+{
+    private final Logger logger = LoggerFactory.getLogger(CountryResponseCache.class);
+
+    @Value("${people-directory.country.response-cache.enabled:true}")
+    private boolean RESPONSE_CACHE_ENABLED;
+    @Value("${people-directory.country.response-cache.max-entries:64}")
+    private int RESPONSE_CACHE_MAX_ENTRIES;
+    @Value("${people-directory.country.response-cache.max-bytes:134217728}")
+    private long RESPONSE_CACHE_MAX_BYTES;
+
+    private final Map<String, CachedResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+    // bumped on every invalidation, a response rendered before it is not stored
+    private final AtomicLong generation = new AtomicLong();
+    // guarded by responses
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param renderer JSON body of the response, null when there is nothing to return (404, not cached)
+     */
+    public ResponseEntity<byte[]> get(String key, String ifNoneMatch, String acceptEncoding, Callable<byte[]> renderer)
+            throws Exception
+    {
+        CachedResponse response = RESPONSE_CACHE_ENABLED ? lookup(key) : null;
+        if (response == null)
+        {
+            misses.increment();
+            long renderedAt = generation.get();
+            byte[] json = renderer.call();
+            if (json == null)
+            {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            response = new CachedResponse(json);
+            if (RESPONSE_CACHE_ENABLED)
+            {
+                store(key, response, renderedAt);
+            }
+        }
+        else
+        {
+            hits.increment();
+        }
+        return response.toResponseEntity(ifNoneMatch, acceptEncoding);
+    }
+
+    public CacheStatsDTO getStats()
+    {
+        synchronized (responses)
+        {
+            return CacheStatsDTO.of("countryResponseCache", responses.size(), hits.sum(), misses.sum());
+        }
+    }
+
+    @EventListener
+    public void onCountryCatalogChanged(CountryCatalogChangedEvent event)
+    {
+        synchronized (responses)
+        {
+            generation.incrementAndGet();
+            responses.clear();
+            bytes = 0;
+        }
+    }
+
+    private CachedResponse lookup(String key)
+    {
+        synchronized (responses)
+        {
+            return responses.get(key);
+        }
+    }
+
+    private void store(String key, CachedResponse response, long renderedAt)
+    {
+        synchronized (responses)
+        {
+            if (generation.get() != renderedAt)
+            {
+                return;
+            }
+            if (response.bytes() > RESPONSE_CACHE_MAX_BYTES)
+            {
+                // would evict every other entry and still not fit
+                logger.debug("store(): {} not cached, {} bytes", key, response.bytes());
+                return;
+            }
+            CachedResponse previous = responses.put(key, response);
+            bytes += response.bytes() - (previous == null ? 0 : previous.bytes());
+            while (responses.size() > RESPONSE_CACHE_MAX_ENTRIES || bytes > RESPONSE_CACHE_MAX_BYTES)
+            {
+                String eldest = responses.keySet().iterator().next();
+                bytes -= responses.remove(eldest).bytes();
+                logger.debug("store(): evicted {}", eldest);
+            }
+        }
+    }
+
+    static final class CachedResponse
+    {
+        private final byte[] json;
+        private final byte[] gzip;
+        private final String etag;
+        private final String gzipEtag;
+
+        CachedResponse(byte[] json)
+        {
+            this.json = json;
+            this.gzip = gzip(json);
+            String hash = DigestUtils.md5DigestAsHex(json);
+            // strong validators, one per representation
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + "-gzip\"";
+        }
+
+        long bytes()
+        {
+            return json.length + gzip.length;
+        }
+
+        ResponseEntity<byte[]> toResponseEntity(String ifNoneMatch, String acceptEncoding)
+        {
+            boolean gzipped = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+            String currentEtag = gzipped ? gzipEtag : etag;
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(currentEtag);
+            headers.setVary(Collections.singletonList(HttpHeaders.ACCEPT_ENCODING));
+            if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(currentEtag)))
+            {
+                return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+            }
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            if (gzipped)
+            {
+                headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            byte[] body = gzipped ? gzip : json;
+            headers.setContentLength(body.length);
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+        }
+
+        private static byte[] gzip(byte[] json)
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(json.length / 4);
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream))
+            {
+                gzipOutputStream.write(json);
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+}
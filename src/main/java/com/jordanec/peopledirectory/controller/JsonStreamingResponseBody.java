@@ -0,0 +1,91 @@
+package com.jordanec.peopledirectory.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jordanec.peopledirectory.geo.GeometryRenderOptions;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+
+/**
+ * Writes the documents of a Mongo cursor one by one to the response, either as a JSON array or as NDJSON
+ * (one document per line). The cursor is opened inside {@link #writeTo(OutputStream)} so it lives exactly as long
+ * as the response does, and only the document currently being serialized is held in memory.
+ */
+public class JsonStreamingResponseBody<T> implements StreamingResponseBody
+{
+    public static final String NDJSON_FORMAT = "ndjson";
+    public static final MediaType APPLICATION_NDJSON = MediaType.valueOf("application/x-ndjson");
+    private static final int FLUSH_INTERVAL = 100;
+
+    private final Supplier<CloseableIterator<T>> cursorSupplier;
+    private final ObjectWriter objectWriter;
+    private final boolean ndjson;
+    private final GeometryRenderOptions geometryRenderOptions;
+
+    public JsonStreamingResponseBody(Supplier<CloseableIterator<T>> cursorSupplier, ObjectMapper objectMapper,
+            boolean ndjson)
+    {
+        this.cursorSupplier = cursorSupplier;
+        this.objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.ndjson = ndjson;
+        // captured on the request thread, the body is written on an async one
+        this.geometryRenderOptions = GeometryRenderOptions.current();
+    }
+
+    public static boolean isNdjson(String format)
+    {
+        return NDJSON_FORMAT.equalsIgnoreCase(format);
+    }
+
+    public MediaType getContentType()
+    {
+        return ndjson ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException
+    {
+        GeometryRenderOptions.set(geometryRenderOptions);
+        try (CloseableIterator<T> cursor = cursorSupplier.get();
+                JsonGenerator jsonGenerator = objectWriter.getFactory().createGenerator(outputStream))
+        {
+            jsonGenerator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // NDJSON lines are terminated explicitly below, no extra separator between root values
+            jsonGenerator.setRootValueSeparator(null);
+            if (!ndjson)
+            {
+                jsonGenerator.writeStartArray();
+            }
+            long written = 0;
+            while (cursor.hasNext())
+            {
+                objectWriter.writeValue(jsonGenerator, cursor.next());
+                if (ndjson)
+                {
+                    jsonGenerator.writeRaw('\n');
+                }
+                // first document goes out right away, the rest in small groups
+                if (++written == 1 || written % FLUSH_INTERVAL == 0)
+                {
+                    jsonGenerator.flush();
+                }
+            }
+            if (!ndjson)
+            {
+                jsonGenerator.writeEndArray();
+            }
+            jsonGenerator.flush();
+        }
+        finally
+        {
+            GeometryRenderOptions.clear();
+        }
+    }
+}
@@ -6,12 +6,14 @@ import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.client.result.UpdateResult;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,9 +21,17 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jordanec.peopledirectory.dto.BulkWriteReportDTO;
+import com.jordanec.peopledirectory.dto.CacheStatsDTO;
+import com.jordanec.peopledirectory.dto.FacetQueryDTO;
+import com.jordanec.peopledirectory.dto.FacetResultDTO;
+import com.jordanec.peopledirectory.dto.KeysetPageRequestDTO;
+import com.jordanec.peopledirectory.dto.PersonDashboardDTO;
+import com.jordanec.peopledirectory.dto.TypeaheadHitDTO;
 import com.jordanec.peopledirectory.model.Person;
 import com.jordanec.peopledirectory.service.PersonService;
 
@@ -31,23 +41,28 @@ public class PersonController {
 	
 	@Autowired
 	PersonService personService;
+	@Autowired
+	ObjectMapper objectMapper;
 	
 	private final Logger logger = LoggerFactory.getLogger(PersonController.class);
     
 	private static final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
+	private static final int MAX_TYPEAHEAD_LIMIT = 50;
 
     /**
      * WRITE APIs
      */
 
+    // returns one result (inserted, duplicate or failed) per person, a duplicated dni doesn't fail the rest
     @RequestMapping(value = "/person/bulkInsert",method = RequestMethod.POST)
-    public ResponseEntity<List<Person>> bulkCreate(@RequestBody List<Person> persons) {
-        return new ResponseEntity<>(personService.insert(persons), HttpStatus.OK);
+    public ResponseEntity<BulkWriteReportDTO> bulkCreate(@RequestBody List<Person> persons) {
+        return new ResponseEntity<>(personService.bulkInsert(persons), HttpStatus.OK);
     }
 
+    // upserts by dni, returns one result (inserted, updated, duplicate or failed) per person
     @RequestMapping(value = "/person/bulkSave",method = RequestMethod.POST)
-    public ResponseEntity<List<Person>> bulkSave(@RequestBody List<Person> persons) {
-        return new ResponseEntity<>(personService.save(persons), HttpStatus.OK);
+    public ResponseEntity<BulkWriteReportDTO> bulkSave(@RequestBody List<Person> persons) {
+        return new ResponseEntity<>(personService.bulkSave(persons), HttpStatus.OK);
     }
 
     @RequestMapping(value = "/person",method = RequestMethod.POST)
@@ -65,9 +80,11 @@ public class PersonController {
         personService.delete(id);
         return ResponseEntity.ok().build();
     }
+    // returns the persons that were actually deleted
     @RequestMapping(value = "/person/bulkDelete",method = RequestMethod.DELETE)
-    public ResponseEntity<List<Person>> bulkDelete(@RequestBody List<Person> persons) {
-        return new ResponseEntity<>(personService.delete(persons), HttpStatus.OK);
+    public ResponseEntity<List<Person>> bulkDelete(@RequestBody List<Person> persons,
+            @RequestParam(value = "transactional", required = false, defaultValue = "false") boolean transactional) {
+        return new ResponseEntity<>(personService.delete(persons, transactional), HttpStatus.OK);
     }
 
     // replaces hobbies (All)
@@ -119,15 +136,34 @@ public class PersonController {
     @RequestMapping(method = RequestMethod.GET, value="/person/count")
     public @ResponseBody ResponseEntity<?> count()
     {
-        return ResponseEntity.ok(personService.count());
+        return ResponseEntity.ok(personService.countFromCounters());
     }
 
+    /*
+     * List endpoints are keyset paginated when size and/or continuationToken are sent:
+     *  /api/person?size=100
+     *  /api/person?size=100&seekBy=dni&continuationToken=<continuationToken of the previous slice>
+     */
     @RequestMapping(method = RequestMethod.GET, value = "/person")
-    public @ResponseBody ResponseEntity<List<Person>> findAll() {
+    public @ResponseBody ResponseEntity<?> findAll(KeysetPageRequestDTO pageRequest) {
+        if (pageRequest.isPaged())
+        {
+            return ResponseEntity.ok(personService.findAll(pageRequest));
+        }
         List<Person> persons = personService.findAll();
         return ResponseEntity.ok(persons);
     }
 
+    // api/person/stream
+    // api/person/stream?format=ndjson
+    @RequestMapping(method = RequestMethod.GET, value = "/person/stream")
+    public ResponseEntity<StreamingResponseBody> stream(@RequestParam(value = "format", required = false) String format)
+    {
+        JsonStreamingResponseBody<Person> body = new JsonStreamingResponseBody<>(personService::streamAll,
+                objectMapper, JsonStreamingResponseBody.isNdjson(format));
+        return ResponseEntity.ok().contentType(body.getContentType()).body(body);
+    }
+
     @RequestMapping(method = RequestMethod.GET, value = "/person/findByDni/{dni}")
     public @ResponseBody ResponseEntity<Person> findByDni(@PathVariable Long dni)
     {
@@ -150,13 +186,17 @@ public class PersonController {
      * 	/api/person/findBornBetween?start=01/01/1980&end=01/02/1980
      * */
     @RequestMapping(method = RequestMethod.GET, value="/person/findBornBetween")
-    public @ResponseBody ResponseEntity<List<Person>> findBornBetween(@RequestParam("start")
+    public @ResponseBody ResponseEntity<?> findBornBetween(@RequestParam("start")
     @DateTimeFormat(pattern = "dd/MM/yyyy") LocalDate start,
-            @RequestParam("end") @DateTimeFormat(pattern = "dd/MM/yyyy") LocalDate end)
+            @RequestParam("end") @DateTimeFormat(pattern = "dd/MM/yyyy") LocalDate end, KeysetPageRequestDTO pageRequest)
     {
         try
         {
     	    logger.debug("findBornBetween(start, end): start={} end={}", start, end);
+            if (pageRequest.isPaged())
+            {
+                return ResponseEntity.ok(personService.findBornBetween(start, end, pageRequest));
+            }
             List<Person> persons = personService.findBornBetween(start, end);
             return ResponseEntity.ok(persons);
         }
@@ -171,13 +211,18 @@ public class PersonController {
         /api/person/findByFirstNameLike?firstName=aso
      */
     @RequestMapping(value="/person/findByDateOfBirthBetweenOrderById",params= "firstName",method=RequestMethod.GET)
-    public ResponseEntity<List<Person>> findByDateOfBirthBetweenOrderById(@RequestParam("start") String start,
-            @RequestParam("end") String end){
+    public ResponseEntity<?> findByDateOfBirthBetweenOrderById(@RequestParam("start") String start,
+            @RequestParam("end") String end, KeysetPageRequestDTO pageRequest){
         try
         {
             logger.debug("findByDateOfBirthBetweenOrderById(start, end): start={} end={}", start, end);
             Date startParsed = dateFormat.parse(start);
             Date endParsed = dateFormat.parse(end);
+            if (pageRequest.isPaged())
+            {
+                return ResponseEntity.ok(
+                        personService.findByDateOfBirthBetweenOrderById(startParsed, endParsed, pageRequest));
+            }
             List<Person> persons = personService.findByDateOfBirthBetweenOrderById(startParsed, endParsed);
             return new ResponseEntity<>(persons, HttpStatus.OK);
         }
@@ -192,54 +237,120 @@ public class PersonController {
 
      */
     @RequestMapping(value = "/person/findDistinctPeopleByCountry", method = RequestMethod.GET)
-    public ResponseEntity<List<Person>> findDistinctPeopleByCountry(@RequestParam("country") String country)
+    public ResponseEntity<?> findDistinctPeopleByCountry(@RequestParam("country") String country,
+            KeysetPageRequestDTO pageRequest)
     {
+        if (pageRequest.isPaged())
+        {
+            return ResponseEntity.ok(personService.findDistinctPeopleByCountryIgnoreCase(country, pageRequest));
+        }
         List<Person> persons = personService.findDistinctPeopleByCountryIgnoreCase(country);
         return new ResponseEntity<>(persons, HttpStatus.OK);
     }
 
     ///api/person/findByFirstNameLike?firstName=the
     @RequestMapping(value="/person/findByFirstNameLike", method=RequestMethod.GET)
-    public ResponseEntity<List<Person>> findByFirstNameLike(@RequestParam("firstName") String firstName){
+    public ResponseEntity<?> findByFirstNameLike(@RequestParam("firstName") String firstName,
+            KeysetPageRequestDTO pageRequest){
+        if (pageRequest.isPaged())
+        {
+            return ResponseEntity.ok(personService.findByFirstNameLike(firstName, pageRequest));
+        }
         List<Person> persons = personService.findByFirstNameLike(firstName);
         return new ResponseEntity<>(persons, HttpStatus.OK);
     }
 
+    ///api/person/typeahead?q=kat&limit=10
+    @RequestMapping(value="/person/typeahead", method=RequestMethod.GET)
+    public ResponseEntity<List<TypeaheadHitDTO>> typeahead(@RequestParam("q") String q,
+            @RequestParam(value = "limit", defaultValue = "10") int limit){
+        if (limit < 1 || limit > MAX_TYPEAHEAD_LIMIT)
+        {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(personService.typeahead(q, limit), HttpStatus.OK);
+    }
+
+    /*
+        POST /api/person/facets
+        {"filter": {"and": [{"field": "gender", "values": ["Female"]},
+                            {"not": {"field": "shirtSize", "values": ["XS", "S"]}}]},
+         "facets": ["color", "country"]}
+     */
+    @RequestMapping(value="/person/facets", method=RequestMethod.POST)
+    public ResponseEntity<FacetResultDTO> facets(@RequestBody FacetQueryDTO facetQuery){
+        return new ResponseEntity<>(personService.facets(facetQuery), HttpStatus.OK);
+    }
+
+    // counts by country, gender, language, shirt size, age bucket and hobby, see PersonDashboardCache
+    ///api/person/dashboard
+    @RequestMapping(value="/person/dashboard", method=RequestMethod.GET)
+    public ResponseEntity<PersonDashboardDTO> dashboard(){
+        return new ResponseEntity<>(personService.dashboard(), HttpStatus.OK);
+    }
+
+    ///api/person/dashboard/cache/stats
+    @RequestMapping(value="/person/dashboard/cache/stats", method=RequestMethod.GET)
+    public ResponseEntity<CacheStatsDTO> dashboardCacheStats(){
+        return new ResponseEntity<>(personService.getDashboardCacheStats(), HttpStatus.OK);
+    }
+
     ///api/person/findByGender?gender=Female
     @RequestMapping(value="/person/findByGender", method=RequestMethod.GET)
-    public ResponseEntity<List<Person>> findByGender(@RequestParam("gender") String gender){
+    public ResponseEntity<?> findByGender(@RequestParam("gender") String gender, KeysetPageRequestDTO pageRequest){
+        if (pageRequest.isPaged())
+        {
+            return ResponseEntity.ok(personService.findByGender(gender, pageRequest));
+        }
         List<Person> persons = personService.findByGender(gender);
         return new ResponseEntity<>(persons, HttpStatus.OK);
     }
 
     ///api/person/findByLastNameAndFirstName?lastName=Jenkins&firstName=Katherine
     @RequestMapping(value="/person/findByLastNameAndFirstName", method=RequestMethod.GET)
-    public ResponseEntity<List<Person>> findByLastNameAndFirstName(@RequestParam("lastName") String lastName,
-            @RequestParam("firstName") String firstName)
+    public ResponseEntity<?> findByLastNameAndFirstName(@RequestParam("lastName") String lastName,
+            @RequestParam("firstName") String firstName, KeysetPageRequestDTO pageRequest)
     {
+        if (pageRequest.isPaged())
+        {
+            return ResponseEntity.ok(
+                    personService.findByLastNameAndFirstNameAllIgnoreCase(lastName, firstName, pageRequest));
+        }
         List<Person> persons = personService.findByLastNameAndFirstNameAllIgnoreCase(lastName, firstName);
         return new ResponseEntity<>(persons, HttpStatus.OK);
     }
 
     ///api/person/findByLastNameOrFirstName?lastName=Jenkins&firstName=Katherine
     @RequestMapping(value="/person/findByLastNameOrFirstName", method=RequestMethod.GET)
-    public ResponseEntity<List<Person>> findByLastNameOrFirstName(@RequestParam("lastName") String lastName,
-            @RequestParam("firstName") String firstName) {
+    public ResponseEntity<?> findByLastNameOrFirstName(@RequestParam("lastName") String lastName,
+            @RequestParam("firstName") String firstName, KeysetPageRequestDTO pageRequest) {
+        if (pageRequest.isPaged())
+        {
+            return ResponseEntity.ok(
+                    personService.findByLastNameOrFirstNameAllIgnoreCase(lastName, firstName, pageRequest));
+        }
         List<Person> persons = personService.findByLastNameOrFirstNameAllIgnoreCase(lastName, firstName);
         return new ResponseEntity<>(persons, HttpStatus.OK);
     }
 
     ///api/person/findByMobileBetween?start=96414376&end=96436478
     @RequestMapping(value="/person/findByMobileBetween", method=RequestMethod.GET)
-    public ResponseEntity<List<Person>> findByMobileBetween(@RequestParam("start") long start,
-            @RequestParam("end") long end) {
+    public ResponseEntity<?> findByMobileBetween(@RequestParam("start") long start,
+            @RequestParam("end") long end, KeysetPageRequestDTO pageRequest) {
+        if (pageRequest.isPaged())
+        {
+            return ResponseEntity.ok(personService.findByMobileBetween(start, end, pageRequest));
+        }
         List<Person> persons = personService.findByMobileBetween(start, end);
         return new ResponseEntity<>(persons, HttpStatus.OK);
     }
 
+    // api/person/findCurrentLocationInCountry?name=Indonesia
+    // api/person/findCurrentLocationInCountry?name=Indonesia&parallel=true
     @RequestMapping(value="/person/findCurrentLocationInCountry", method=RequestMethod.GET)
-    public ResponseEntity<List<Person>> findCurrentLocationInCountry(@RequestParam("name") String name) {
-        List<Person> persons = personService.findByCurrentLocationWithinCountry(name);
+    public ResponseEntity<List<Person>> findCurrentLocationInCountry(@RequestParam("name") String name,
+            @RequestParam(value = "parallel", required = false) Boolean parallel) {
+        List<Person> persons = personService.findByCurrentLocationWithinCountry(name, parallel);
         return new ResponseEntity<>(persons, HttpStatus.OK);
     }
 
@@ -270,10 +381,17 @@ public class PersonController {
     }
     // api/person/lookupCountry?dni=290978673
     // api/person/lookupCountry
+    // api/person/lookupCountry?countryFields=name,code,region
     @RequestMapping(value = "/person/lookupCountry", method = RequestMethod.GET)
-    public ResponseEntity<List<Person>> lookupCountry(@RequestParam(value = "dni", required = false) Long dni)
+    public ResponseEntity<?> lookupCountry(@RequestParam(value = "dni", required = false) Long dni,
+            @RequestParam(value = "countryFields", required = false) List<String> countryFields,
+            KeysetPageRequestDTO pageRequest)
     {
-        return ResponseEntity.ok(personService.lookupCountry(dni));
+        if (pageRequest.isPaged())
+        {
+            return ResponseEntity.ok(personService.lookupCountry(dni, countryFields, pageRequest));
+        }
+        return ResponseEntity.ok(personService.lookupCountry(dni, countryFields));
     }
 
     // api/person/isOlderThan/dni/290978673/age/40
@@ -283,6 +401,14 @@ public class PersonController {
         return ResponseEntity.ok(personService.isOlderThan(dni, age));
     }
 
+    // invalid seekBy or continuationToken
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> handleIllegalArgument(IllegalArgumentException ex)
+    {
+        logger.debug("handleIllegalArgument()", ex);
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
     //Test
     @RequestMapping(value = "/person/test", method = RequestMethod.GET)
     public ResponseEntity<Document> test()
@@ -0,0 +1,25 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+public class BootstrapStatusDTO
+{
+    public enum State
+    {
+        STARTING,
+        READY,
+        FAILED
+    }
+
+    private State state;
+    // since JVM start, null until the bootstrap is over
+    private Long timeToReadyMs;
+    private Long bootstrapMs;
+    // duration of every bootstrap step, in completion order
+    private Map<String, Long> stepsMs = new LinkedHashMap<>();
+    private String error;
+}
@@ -0,0 +1,12 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+@Data
+public class BoundingBoxDTO
+{
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+}
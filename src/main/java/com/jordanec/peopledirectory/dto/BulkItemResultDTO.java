@@ -0,0 +1,17 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+@Data
+public class BulkItemResultDTO
+{
+    public enum Status
+    {
+        INSERTED, UPDATED, DUPLICATE, FAILED
+    }
+
+    private int index;
+    private long dni;
+    private Status status;
+    private String message;
+}
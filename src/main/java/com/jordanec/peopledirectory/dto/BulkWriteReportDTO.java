@@ -0,0 +1,43 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk write, one item per input element in input order.
+ */
+@Data
+public class BulkWriteReportDTO
+{
+    private int inserted;
+    private int updated;
+    private int duplicates;
+    private int failed;
+    private List<BulkItemResultDTO> items = new ArrayList<>();
+
+    public void add(int index, long dni, BulkItemResultDTO.Status status, String message)
+    {
+        BulkItemResultDTO item = new BulkItemResultDTO();
+        item.setIndex(index);
+        item.setDni(dni);
+        item.setStatus(status);
+        item.setMessage(message);
+        items.add(item);
+        switch (status)
+        {
+            case INSERTED:
+                inserted++;
+                break;
+            case UPDATED:
+                updated++;
+                break;
+            case DUPLICATE:
+                duplicates++;
+                break;
+            default:
+                failed++;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+@Data
+public class CacheStatsDTO
+{
+    private String name;
+    private long size;
+    private long hits;
+    private long misses;
+
+    public static CacheStatsDTO of(String name, long size, long hits, long misses)
+    {
+        CacheStatsDTO cacheStats = new CacheStatsDTO();
+        cacheStats.setName(name);
+        cacheStats.setSize(size);
+        cacheStats.setHits(hits);
+        cacheStats.setMisses(misses);
+        return cacheStats;
+    }
+
+    public double getHitRatio()
+    {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
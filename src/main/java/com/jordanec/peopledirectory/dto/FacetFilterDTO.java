@@ -0,0 +1,19 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Filter of a facet query, exactly one of: {@code field} with the {@code values} it may take (any of them),
+ * {@code and}, {@code or} or {@code not}.
+ */
+@Data
+public class FacetFilterDTO
+{
+    private String field;
+    private List<String> values;
+    private List<FacetFilterDTO> and;
+    private List<FacetFilterDTO> or;
+    private FacetFilterDTO not;
+}
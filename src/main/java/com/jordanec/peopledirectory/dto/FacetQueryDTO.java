@@ -0,0 +1,14 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class FacetQueryDTO
+{
+    // every person when missing
+    private FacetFilterDTO filter;
+    private List<String> facets = new ArrayList<>();
+}
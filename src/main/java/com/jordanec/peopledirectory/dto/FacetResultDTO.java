@@ -0,0 +1,17 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Number of persons matching the filter and, per requested facet field, how many of them take every value,
+ * highest count first.
+ */
+@Data
+public class FacetResultDTO
+{
+    private int count;
+    private Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+}
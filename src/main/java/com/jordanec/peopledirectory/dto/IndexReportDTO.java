@@ -0,0 +1,25 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Declared indexes of a collection compared with the ones it has.
+ */
+@Data
+public class IndexReportDTO
+{
+    private String collection;
+    // declared and missing, built during this reconciliation
+    private List<String> created = new ArrayList<>();
+    // declared and missing, not built (report only)
+    private List<String> missing = new ArrayList<>();
+    // same name or keys as a declared index but different definition
+    private List<String> drifted = new ArrayList<>();
+    // present but not declared anywhere
+    private List<String> undeclared = new ArrayList<>();
+    // no access since the server started or the index was built, from $indexStats
+    private List<String> unused = new ArrayList<>();
+}
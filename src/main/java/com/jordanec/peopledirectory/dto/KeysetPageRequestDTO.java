@@ -0,0 +1,33 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+/**
+ * Paging parameters of the list endpoints. Bound from the query string:
+ * {@code ?size=100&seekBy=dni&continuationToken=...}. A request without {@code size} and without
+ * {@code continuationToken} is unpaged.
+ */
+@Data
+public class KeysetPageRequestDTO
+{
+    public static final int DEFAULT_SIZE = 100;
+    public static final int MAX_SIZE = 1000;
+
+    private Integer size;
+    private String seekBy;
+    private String continuationToken;
+
+    public boolean isPaged()
+    {
+        return size != null || continuationToken != null;
+    }
+
+    public int getLimit()
+    {
+        if (size == null)
+        {
+            return DEFAULT_SIZE;
+        }
+        return Math.max(1, Math.min(size, MAX_SIZE));
+    }
+}
@@ -0,0 +1,28 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One slice of a keyset paginated result. {@code continuationToken} is opaque for clients, it has to be sent
+ * back as is to get the next slice and is {@code null} on the last one.
+ */
+@Data
+public class KeysetSliceDTO<T>
+{
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    private String continuationToken;
+
+    public static <T> KeysetSliceDTO<T> of(List<T> content, String continuationToken)
+    {
+        KeysetSliceDTO<T> slice = new KeysetSliceDTO<>();
+        slice.setContent(content);
+        slice.setSize(content.size());
+        slice.setHasNext(continuationToken != null);
+        slice.setContinuationToken(continuationToken);
+        return slice;
+    }
+}
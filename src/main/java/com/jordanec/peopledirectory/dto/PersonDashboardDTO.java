@@ -0,0 +1,26 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Person counts by country id (the name for persons whose country is not in the catalog), gender, language,
+ * shirt size, age bucket and hobby, highest count first except the age buckets, which are in age order.
+ */
+@Data
+public class PersonDashboardDTO
+{
+    public static final String UNKNOWN = "unknown";
+
+    private long total;
+    private Map<String, Long> countries = new LinkedHashMap<>();
+    private Map<String, Long> genders = new LinkedHashMap<>();
+    private Map<String, Long> languages = new LinkedHashMap<>();
+    private Map<String, Long> shirtSizes = new LinkedHashMap<>();
+    private Map<String, Long> ageBuckets = new LinkedHashMap<>();
+    private Map<String, Long> hobbies = new LinkedHashMap<>();
+    private Date generatedAt;
+}
@@ -0,0 +1,14 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeedRecordHashDTO
+{
+    private String key;
+    private String hash;
+}
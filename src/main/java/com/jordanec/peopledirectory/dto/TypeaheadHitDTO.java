@@ -0,0 +1,14 @@
+package com.jordanec.peopledirectory.dto;
+
+import lombok.Data;
+
+@Data
+public class TypeaheadHitDTO
+{
+    private String id;
+    private long dni;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private int score;
+}
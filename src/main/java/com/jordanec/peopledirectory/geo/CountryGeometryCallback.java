@@ -0,0 +1,68 @@
+package com.jordanec.peopledirectory.geo;
+
+import com.jordanec.peopledirectory.dto.BoundingBoxDTO;
+import com.jordanec.peopledirectory.model.Country;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills the derived geometry fields of a country (bounding box and the simplified levels of
+ * {@link GeometryDetail}) right before it is written, so every insert, save, upsert and bulk write through
+ * {@link org.springframework.data.mongodb.core.MongoOperations} keeps them in sync with the full borders.
+ */
+@Component
+public class CountryGeometryCallback implements BeforeConvertCallback<Country>
+{
+    @Override
+    public Country onBeforeConvert(Country country, String collection)
+    {
+        List<PackedPolygon> polygons = new ArrayList<>();
+        if (country.getGeometry() != null)
+        {
+            polygons.addAll(country.getGeometry().getPolygons());
+        }
+        if (country.getGeometryMulti() != null)
+        {
+            polygons.addAll(country.getGeometryMulti().getPolygons());
+        }
+        if (polygons.isEmpty())
+        {
+            country.setBbox(null);
+            country.setGeometryHigh(null);
+            country.setGeometryMedium(null);
+            country.setGeometryLow(null);
+            return country;
+        }
+        country.setBbox(boundingBox(polygons));
+        country.setGeometryHigh(simplify(country, GeometryDetail.HIGH));
+        country.setGeometryMedium(simplify(country, GeometryDetail.MEDIUM));
+        country.setGeometryLow(simplify(country, GeometryDetail.LOW));
+        return country;
+    }
+
+    private static PackedGeometry simplify(Country country, GeometryDetail detail)
+    {
+        return GeometrySimplifier.simplify(country.getGeometry() != null ? country.getGeometry()
+                : country.getGeometryMulti(), detail.getTolerance());
+    }
+
+    private static BoundingBoxDTO boundingBox(List<PackedPolygon> polygons)
+    {
+        BoundingBoxDTO bbox = new BoundingBoxDTO();
+        bbox.setMinX(Double.POSITIVE_INFINITY);
+        bbox.setMinY(Double.POSITIVE_INFINITY);
+        bbox.setMaxX(Double.NEGATIVE_INFINITY);
+        bbox.setMaxY(Double.NEGATIVE_INFINITY);
+        for (PackedPolygon polygon : polygons)
+        {
+            bbox.setMinX(Math.min(bbox.getMinX(), polygon.getMinX()));
+            bbox.setMinY(Math.min(bbox.getMinY(), polygon.getMinY()));
+            bbox.setMaxX(Math.max(bbox.getMaxX(), polygon.getMaxX()));
+            bbox.setMaxY(Math.max(bbox.getMaxY(), polygon.getMaxY()));
+        }
+        return bbox;
+    }
+}
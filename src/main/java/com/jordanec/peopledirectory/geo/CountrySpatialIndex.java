@@ -0,0 +1,208 @@
+package com.jordanec.peopledirectory.geo;
+
+import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.service.CountryCatalogChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory reverse geocoder over the country borders: an STR packed R-tree over the bounding box of every
+ * polygon, and an exact ray-cast test on the primitive rings of the candidates. Built from the countries
+ * collection after seeding and rebuilt whenever the catalog changes; lookups read an immutable snapshot and never
+ * touch Mongo, so they can run in parallel from any thread. Rebuilds for single country writes are debounced: the
+ * writes of one rebuild delay share a single rebuild, and lookups keep the previous snapshot until it is done.
+ */
+@Component
+public class CountrySpatialIndex
+{
+    /**
+     * What a located country carries, kept by the index and projected by the Mongo fallback alike: everything but
+     * the borders.
+     */
+    public static final String[] COUNTRY_FIELDS =
+            {"name", "code", "capital", "region", "demonym", "currency", "language", "flag", "population"};
+
+    private final Logger logger = LoggerFactory.getLogger(CountrySpatialIndex.class);
+
+    @Value("${people-directory.geo.spatial-index.enabled:true}")
+    private boolean SPATIAL_INDEX_ENABLED;
+    @Value("${people-directory.geo.spatial-index.rebuild-delay-millis:500}")
+    private long REBUILD_DELAY_MILLIS;
+
+    @Autowired
+    MongoOperations mongoOperations;
+
+    private ScheduledExecutorService rebuildExecutor = Executors.newSingleThreadScheduledExecutor(rebuildThreadFactory());
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+
+    public boolean isReady()
+    {
+        return snapshot != null;
+    }
+
+    /**
+     * Country (without geometry) whose borders contain the point, empty when the point is in no country.
+     */
+    public Optional<Country> findCountryAt(double x, double y)
+    {
+        Snapshot current = snapshot;
+        if (current == null)
+        {
+            return Optional.empty();
+        }
+        int[] match = {-1};
+        current.tree.search(x, y, item -> {
+            if (match[0] < 0 && current.polygons[item].contains(x, y))
+            {
+                match[0] = item;
+            }
+        });
+        return match[0] < 0 ? Optional.empty() : Optional.of(current.countries[current.countryOfPolygon[match[0]]]);
+    }
+
+    @EventListener
+    public void onCountryCatalogChanged(CountryCatalogChangedEvent event)
+    {
+        if (!SPATIAL_INDEX_ENABLED)
+        {
+            return;
+        }
+        if (event.isFullReload() || snapshot == null)
+        {
+            rebuild();
+        }
+        else
+        {
+            scheduleRebuild();
+        }
+    }
+
+    private void scheduleRebuild()
+    {
+        if (!rebuildPending.compareAndSet(false, true))
+        {
+            // the pending rebuild has not started yet, so it reads this write too
+            return;
+        }
+        rebuildExecutor.schedule(() -> {
+            rebuildPending.set(false);
+            try
+            {
+                rebuild();
+            }
+            catch (RuntimeException ex)
+            {
+                // lookups keep the previous snapshot until the next catalog change
+                logger.warn("scheduleRebuild(): spatial index rebuild failed", ex);
+            }
+        }, REBUILD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void rebuild()
+    {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        List<Country> countries = new ArrayList<>();
+        List<PackedPolygon> polygons = new ArrayList<>();
+        List<Integer> countryOfPolygon = new ArrayList<>();
+        Query query = new Query();
+        for (String field : COUNTRY_FIELDS)
+        {
+            query.fields().include(field);
+        }
+        query.fields().include("geometry").include("geometryMulti");
+        try (CloseableIterator<Country> cursor = mongoOperations.stream(query, Country.class))
+        {
+            while (cursor.hasNext())
+            {
+                Country country = cursor.next();
+                List<PackedPolygon> countryPolygons = new ArrayList<>();
+                if (country.getGeometry() != null)
+                {
+                    countryPolygons.addAll(country.getGeometry().getPolygons());
+                }
+                if (country.getGeometryMulti() != null)
+                {
+                    countryPolygons.addAll(country.getGeometryMulti().getPolygons());
+                }
+                if (countryPolygons.isEmpty())
+                {
+                    continue;
+                }
+                for (PackedPolygon polygon : countryPolygons)
+                {
+                    polygons.add(polygon);
+                    countryOfPolygon.add(countries.size());
+                }
+                countries.add(withoutGeometry(country));
+            }
+        }
+        snapshot = new Snapshot(countries, polygons, countryOfPolygon);
+        stopWatch.stop();
+        logger.debug("rebuild(): {} countries, {} polygons indexed in {} ms", countries.size(), polygons.size(),
+                stopWatch.getTotalTimeMillis());
+    }
+
+    private static CustomizableThreadFactory rebuildThreadFactory()
+    {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("spatial-index-rebuild-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    private static Country withoutGeometry(Country country)
+    {
+        Country copy = new Country();
+        copy.setId(country.getId());
+        copy.setName(country.getName());
+        copy.setCode(country.getCode());
+        copy.setCapital(country.getCapital());
+        copy.setRegion(country.getRegion());
+        copy.setDemonym(country.getDemonym());
+        copy.setCurrency(country.getCurrency());
+        copy.setLanguage(country.getLanguage());
+        copy.setFlag(country.getFlag());
+        copy.setPopulation(country.getPopulation());
+        return copy;
+    }
+
+    private static final class Snapshot
+    {
+        private final Country[] countries;
+        private final PackedPolygon[] polygons;
+        private final int[] countryOfPolygon;
+        private final StrTree tree;
+
+        private Snapshot(List<Country> countries, List<PackedPolygon> polygons, List<Integer> countryOfPolygon)
+        {
+            this.countries = countries.toArray(new Country[0]);
+            this.polygons = polygons.toArray(new PackedPolygon[0]);
+            this.countryOfPolygon = countryOfPolygon.stream().mapToInt(Integer::intValue).toArray();
+            double[][] boxes = new double[this.polygons.length][];
+            for (int i = 0; i < boxes.length; i++)
+            {
+                PackedPolygon polygon = this.polygons[i];
+                boxes[i] = new double[] {polygon.getMinX(), polygon.getMinY(), polygon.getMaxX(), polygon.getMaxY()};
+            }
+            this.tree = StrTree.build(boxes);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.jordanec.peopledirectory.geo;
+
+import java.util.Locale;
+
+/**
+ * Level of detail of the country borders. Every level below {@link #FULL} is a Douglas-Peucker simplification
+ * precomputed when the country is saved, the tolerance is in degrees (0.01 is roughly 1 km at the equator).
+ * {@link #NONE} leaves the borders out.
+ */
+public enum GeometryDetail
+{
+    FULL(0, null),
+    HIGH(0.01, "geometryHigh"),
+    MEDIUM(0.05, "geometryMedium"),
+    LOW(0.25, "geometryLow"),
+    NONE(0, null);
+
+    private final double tolerance;
+    private final String field;
+
+    GeometryDetail(double tolerance, String field)
+    {
+        this.tolerance = tolerance;
+        this.field = field;
+    }
+
+    public double getTolerance()
+    {
+        return tolerance;
+    }
+
+    /**
+     * Country field holding the precomputed geometry of this level, null for {@link #FULL} and {@link #NONE}.
+     */
+    public String getField()
+    {
+        return field;
+    }
+
+    public boolean isSimplified()
+    {
+        return field != null;
+    }
+
+    public static GeometryDetail of(String lod)
+    {
+        if (lod == null || lod.isEmpty())
+        {
+            return FULL;
+        }
+        try
+        {
+            return valueOf(lod.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new IllegalArgumentException("Unsupported lod value: " + lod);
+        }
+    }
+}
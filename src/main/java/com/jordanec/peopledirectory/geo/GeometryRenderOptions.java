@@ -0,0 +1,87 @@
+package com.jordanec.peopledirectory.geo;
+
+/**
+ * How {@link com.jordanec.peopledirectory.config.GeoSerializer} writes geometries for the current request: level of
+ * detail of polygons and number of decimals of every coordinate. Bound to the request thread by
+ * {@link com.jordanec.peopledirectory.config.GeometryRenderInterceptor} from the {@code lod} and {@code precision}
+ * parameters.
+ */
+public final class GeometryRenderOptions
+{
+    public static final GeometryRenderOptions DEFAULT = new GeometryRenderOptions(GeometryDetail.FULL, null);
+    private static final int MAX_PRECISION = 15;
+    private static final ThreadLocal<GeometryRenderOptions> CURRENT = new ThreadLocal<>();
+
+    private final GeometryDetail detail;
+    private final Integer precision;
+    private final double scale;
+
+    private GeometryRenderOptions(GeometryDetail detail, Integer precision)
+    {
+        this.detail = detail;
+        this.precision = precision;
+        this.scale = precision == null ? 0 : Math.pow(10, precision);
+    }
+
+    public static GeometryRenderOptions of(String lod, String precision)
+    {
+        Integer decimals = null;
+        if (precision != null && !precision.isEmpty())
+        {
+            try
+            {
+                decimals = Integer.valueOf(precision);
+            }
+            catch (NumberFormatException ex)
+            {
+                throw new IllegalArgumentException("Invalid precision value: " + precision);
+            }
+            if (decimals < 0 || decimals > MAX_PRECISION)
+            {
+                throw new IllegalArgumentException("precision must be between 0 and " + MAX_PRECISION);
+            }
+        }
+        GeometryDetail detail = GeometryDetail.of(lod);
+        return detail == GeometryDetail.FULL && decimals == null ? DEFAULT : new GeometryRenderOptions(detail, decimals);
+    }
+
+    public static GeometryRenderOptions current()
+    {
+        GeometryRenderOptions options = CURRENT.get();
+        return options == null ? DEFAULT : options;
+    }
+
+    public static void set(GeometryRenderOptions options)
+    {
+        CURRENT.set(options);
+    }
+
+    public static void clear()
+    {
+        CURRENT.remove();
+    }
+
+    /**
+     * Same options with another level, e.g. {@link GeometryDetail#FULL} once the geometry was already read at the
+     * requested level and must not be simplified again.
+     */
+    public GeometryRenderOptions withDetail(GeometryDetail detail)
+    {
+        return new GeometryRenderOptions(detail, precision);
+    }
+
+    public GeometryDetail getDetail()
+    {
+        return detail;
+    }
+
+    public Integer getPrecision()
+    {
+        return precision;
+    }
+
+    public double round(double coordinate)
+    {
+        return precision == null ? coordinate : Math.round(coordinate * scale) / scale;
+    }
+}
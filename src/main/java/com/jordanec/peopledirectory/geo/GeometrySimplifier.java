@@ -0,0 +1,129 @@
+package com.jordanec.peopledirectory.geo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Douglas-Peucker simplification of polygon rings. Rings that collapse below a closed triangle are dropped: a hole
+ * disappears, and a polygon whose exterior collapses is left out of the result unless it is the only one, in which
+ * case its bounding box is kept so the country still has a shape.
+ */
+public final class GeometrySimplifier
+{
+    private static final int MIN_RING_POINTS = 4;
+
+    private GeometrySimplifier()
+    {
+    }
+
+    /**
+     * Simplified copy of the geometry, of the same type (a Polygon always keeps exactly one polygon).
+     */
+    public static PackedGeometry simplify(PackedGeometry geometry, double tolerance)
+    {
+        List<PackedPolygon> simplified = new ArrayList<>(geometry.getPolygons().size());
+        PackedPolygon largest = null;
+        for (PackedPolygon polygon : geometry.getPolygons())
+        {
+            double[][] rings = polygon.getRings();
+            double[] exterior = simplify(rings[0], tolerance);
+            if (exterior.length / 2 < MIN_RING_POINTS)
+            {
+                if (largest == null || area(polygon) > area(largest))
+                {
+                    largest = polygon;
+                }
+                continue;
+            }
+            List<double[]> simplifiedRings = new ArrayList<>(rings.length);
+            simplifiedRings.add(exterior);
+            for (int r = 1; r < rings.length; r++)
+            {
+                double[] hole = simplify(rings[r], tolerance);
+                if (hole.length / 2 >= MIN_RING_POINTS)
+                {
+                    simplifiedRings.add(hole);
+                }
+            }
+            simplified.add(new PackedPolygon(simplifiedRings.toArray(new double[0][])));
+        }
+        if (simplified.isEmpty() && largest != null)
+        {
+            simplified.add(new PackedPolygon(new double[][] {{largest.getMinX(), largest.getMinY(),
+                    largest.getMaxX(), largest.getMinY(), largest.getMaxX(), largest.getMaxY(),
+                    largest.getMinX(), largest.getMaxY(), largest.getMinX(), largest.getMinY()}}));
+        }
+        return geometry.isMultiPolygon() ? PackedGeometry.multiPolygon(simplified)
+                : PackedGeometry.polygon(simplified.get(0));
+    }
+
+    /**
+     * Simplifies one ring in the packed {@code [x0, y0, x1, y1, ...]} layout, the first and last points are kept.
+     */
+    public static double[] simplify(double[] ring, double tolerance)
+    {
+        int n = ring.length / 2;
+        if (n <= 2 || tolerance <= 0)
+        {
+            return ring;
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, n - 1});
+        double toleranceSquared = tolerance * tolerance;
+        while (!ranges.isEmpty())
+        {
+            int[] range = ranges.pop();
+            int farthest = -1;
+            double farthestDistance = toleranceSquared;
+            for (int i = range[0] + 1; i < range[1]; i++)
+            {
+                double distance = segmentDistanceSquared(ring, i, range[0], range[1]);
+                if (distance > farthestDistance)
+                {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest >= 0)
+            {
+                keep[farthest] = true;
+                ranges.push(new int[] {range[0], farthest});
+                ranges.push(new int[] {farthest, range[1]});
+            }
+        }
+        double[] simplified = new double[ring.length];
+        int size = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (keep[i])
+            {
+                simplified[size++] = ring[2 * i];
+                simplified[size++] = ring[2 * i + 1];
+            }
+        }
+        return Arrays.copyOf(simplified, size);
+    }
+
+    // squared distance from point p to the segment a-b (to a itself when the segment is a closed ring's endpoints)
+    private static double segmentDistanceSquared(double[] ring, int p, int a, int b)
+    {
+        double px = ring[2 * p], py = ring[2 * p + 1];
+        double ax = ring[2 * a], ay = ring[2 * a + 1];
+        double dx = ring[2 * b] - ax, dy = ring[2 * b + 1] - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        double ex = px - (ax + t * dx), ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+
+    private static double area(PackedPolygon polygon)
+    {
+        return (polygon.getMaxX() - polygon.getMinX()) * (polygon.getMaxY() - polygon.getMinY());
+    }
+}
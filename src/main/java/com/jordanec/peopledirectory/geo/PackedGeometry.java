@@ -0,0 +1,117 @@
+package com.jordanec.peopledirectory.geo;
+
+import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * GeoJSON Polygon or MultiPolygon kept as {@link PackedPolygon}s, i.e. one {@code double[]} per ring instead of one
+ * {@code Point} per vertex. Stored in Mongo as regular GeoJSON (see {@link PackedGeometryConverters}), so the
+ * 2dsphere indexes and geo queries keep working on the same documents.
+ */
+public final class PackedGeometry implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    public static final String POLYGON = "Polygon";
+    public static final String MULTI_POLYGON = "MultiPolygon";
+
+    private final String type;
+    private final List<PackedPolygon> polygons;
+
+    private PackedGeometry(String type, List<PackedPolygon> polygons)
+    {
+        this.type = type;
+        this.polygons = Collections.unmodifiableList(polygons);
+    }
+
+    public static PackedGeometry polygon(PackedPolygon polygon)
+    {
+        return new PackedGeometry(POLYGON, Collections.singletonList(polygon));
+    }
+
+    public static PackedGeometry multiPolygon(List<PackedPolygon> polygons)
+    {
+        return new PackedGeometry(MULTI_POLYGON, new ArrayList<>(polygons));
+    }
+
+    public static PackedGeometry of(GeoJsonPolygon polygon)
+    {
+        return polygon(PackedPolygon.of(polygon));
+    }
+
+    public static PackedGeometry of(GeoJsonMultiPolygon multiPolygon)
+    {
+        return multiPolygon(PackedPolygon.of(multiPolygon));
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    public boolean isMultiPolygon()
+    {
+        return MULTI_POLYGON.equals(type);
+    }
+
+    public List<PackedPolygon> getPolygons()
+    {
+        return polygons;
+    }
+
+    public int getPointCount()
+    {
+        int points = 0;
+        for (PackedPolygon polygon : polygons)
+        {
+            for (double[] ring : polygon.getRings())
+            {
+                points += ring.length / 2;
+            }
+        }
+        return points;
+    }
+
+    public boolean contains(double x, double y)
+    {
+        for (PackedPolygon polygon : polygons)
+        {
+            if (polygon.contains(x, y))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof PackedGeometry))
+        {
+            return false;
+        }
+        PackedGeometry that = (PackedGeometry) o;
+        return type.equals(that.type) && polygons.equals(that.polygons);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * type.hashCode() + polygons.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return type + "(" + polygons.size() + " polygons, " + getPointCount() + " points)";
+    }
+}
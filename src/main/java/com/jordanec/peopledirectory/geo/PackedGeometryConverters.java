@@ -0,0 +1,114 @@
+package com.jordanec.peopledirectory.geo;
+
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mongo converters between {@link PackedGeometry} and GeoJSON documents. Reading walks the decoded coordinate lists
+ * once and keeps only the primitive rings, so a country holds a few arrays instead of one object per vertex.
+ */
+public final class PackedGeometryConverters
+{
+    private PackedGeometryConverters()
+    {
+    }
+
+    public static List<Converter<?, ?>> getConvertersToRegister()
+    {
+        return Arrays.asList(PackedGeometryToDocumentConverter.INSTANCE, DocumentToPackedGeometryConverter.INSTANCE);
+    }
+
+    @WritingConverter
+    public enum PackedGeometryToDocumentConverter implements Converter<PackedGeometry, Document>
+    {
+        INSTANCE;
+
+        @Override
+        public Document convert(PackedGeometry geometry)
+        {
+            Object coordinates;
+            if (geometry.isMultiPolygon())
+            {
+                List<Object> polygons = new ArrayList<>(geometry.getPolygons().size());
+                for (PackedPolygon polygon : geometry.getPolygons())
+                {
+                    polygons.add(toCoordinates(polygon));
+                }
+                coordinates = polygons;
+            }
+            else
+            {
+                coordinates = toCoordinates(geometry.getPolygons().get(0));
+            }
+            return new Document("type", geometry.getType()).append("coordinates", coordinates);
+        }
+
+        private static List<Object> toCoordinates(PackedPolygon polygon)
+        {
+            List<Object> rings = new ArrayList<>(polygon.getRings().length);
+            for (double[] ring : polygon.getRings())
+            {
+                List<Object> positions = new ArrayList<>(ring.length / 2);
+                for (int i = 0; i < ring.length; i += 2)
+                {
+                    positions.add(Arrays.asList(ring[i], ring[i + 1]));
+                }
+                rings.add(positions);
+            }
+            return rings;
+        }
+    }
+
+    @ReadingConverter
+    public enum DocumentToPackedGeometryConverter implements Converter<Document, PackedGeometry>
+    {
+        INSTANCE;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public PackedGeometry convert(Document document)
+        {
+            String type = document.getString("type");
+            List<Object> coordinates = (List<Object>) document.get("coordinates");
+            if (PackedGeometry.MULTI_POLYGON.equals(type))
+            {
+                List<PackedPolygon> polygons = new ArrayList<>(coordinates.size());
+                for (Object polygon : coordinates)
+                {
+                    polygons.add(toPolygon((List<Object>) polygon));
+                }
+                return PackedGeometry.multiPolygon(polygons);
+            }
+            if (PackedGeometry.POLYGON.equals(type))
+            {
+                return PackedGeometry.polygon(toPolygon(coordinates));
+            }
+            throw new IllegalArgumentException("Unsupported geometry type: " + type);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static PackedPolygon toPolygon(List<Object> rings)
+        {
+            double[][] packed = new double[rings.size()][];
+            for (int r = 0; r < packed.length; r++)
+            {
+                List<Object> positions = (List<Object>) rings.get(r);
+                double[] ring = new double[positions.size() * 2];
+                for (int i = 0; i < positions.size(); i++)
+                {
+                    List<Number> position = (List<Number>) positions.get(i);
+                    ring[2 * i] = position.get(0).doubleValue();
+                    ring[2 * i + 1] = position.get(1).doubleValue();
+                }
+                packed[r] = ring;
+            }
+            return new PackedPolygon(packed);
+        }
+    }
+}
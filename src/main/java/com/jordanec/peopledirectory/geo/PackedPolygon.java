@@ -0,0 +1,162 @@
+package com.jordanec.peopledirectory.geo;
+
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonLineString;
+import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Polygon stored as primitive rings, every ring is one {@code double[]} of interleaved x,y coordinates
+ * ({@code [x0, y0, x1, y1, ...]}). The first ring is the exterior, the rest are holes.
+ */
+public final class PackedPolygon implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final double[][] rings;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    public PackedPolygon(double[][] rings)
+    {
+        this.rings = rings;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (double[] ring : rings)
+        {
+            for (int i = 0; i < ring.length; i += 2)
+            {
+                minX = Math.min(minX, ring[i]);
+                maxX = Math.max(maxX, ring[i]);
+                minY = Math.min(minY, ring[i + 1]);
+                maxY = Math.max(maxY, ring[i + 1]);
+            }
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    public static PackedPolygon of(GeoJsonPolygon polygon)
+    {
+        List<GeoJsonLineString> lineStrings = polygon.getCoordinates();
+        double[][] rings = new double[lineStrings.size()][];
+        for (int r = 0; r < rings.length; r++)
+        {
+            rings[r] = pack(lineStrings.get(r).getCoordinates());
+        }
+        return new PackedPolygon(rings);
+    }
+
+    public static List<PackedPolygon> of(GeoJsonMultiPolygon multiPolygon)
+    {
+        List<PackedPolygon> polygons = new ArrayList<>(multiPolygon.getCoordinates().size());
+        for (GeoJsonPolygon polygon : multiPolygon.getCoordinates())
+        {
+            polygons.add(of(polygon));
+        }
+        return polygons;
+    }
+
+    public static double[] pack(List<Point> points)
+    {
+        double[] ring = new double[points.size() * 2];
+        for (int i = 0; i < points.size(); i++)
+        {
+            ring[2 * i] = points.get(i).getX();
+            ring[2 * i + 1] = points.get(i).getY();
+        }
+        return ring;
+    }
+
+    public GeoJsonPolygon toGeoJson()
+    {
+        GeoJsonPolygon polygon = new GeoJsonPolygon(unpack(rings[0]));
+        for (int r = 1; r < rings.length; r++)
+        {
+            polygon = polygon.withInnerRing(unpack(rings[r]));
+        }
+        return polygon;
+    }
+
+    public static List<Point> unpack(double[] ring)
+    {
+        List<Point> points = new ArrayList<>(ring.length / 2);
+        for (int i = 0; i < ring.length; i += 2)
+        {
+            points.add(new Point(ring[i], ring[i + 1]));
+        }
+        return points;
+    }
+
+    /**
+     * Even-odd ray casting over all the rings, so points inside a hole are outside the polygon.
+     */
+    public boolean contains(double x, double y)
+    {
+        if (x < minX || x > maxX || y < minY || y > maxY)
+        {
+            return false;
+        }
+        boolean inside = false;
+        for (double[] ring : rings)
+        {
+            int n = ring.length / 2;
+            for (int i = 0, j = n - 1; i < n; j = i++)
+            {
+                double xi = ring[2 * i], yi = ring[2 * i + 1];
+                double xj = ring[2 * j], yj = ring[2 * j + 1];
+                if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi)
+                {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    public double[][] getRings()
+    {
+        return rings;
+    }
+
+    public double getMinX()
+    {
+        return minX;
+    }
+
+    public double getMinY()
+    {
+        return minY;
+    }
+
+    public double getMaxX()
+    {
+        return maxX;
+    }
+
+    public double getMaxY()
+    {
+        return maxY;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return this == o || (o instanceof PackedPolygon && Arrays.deepEquals(rings, ((PackedPolygon) o).rings));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.deepHashCode(rings);
+    }
+}
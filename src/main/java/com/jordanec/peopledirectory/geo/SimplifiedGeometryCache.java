@@ -0,0 +1,64 @@
+package com.jordanec.peopledirectory.geo;
+
+import com.jordanec.peopledirectory.dto.CacheStatsDTO;
+import com.jordanec.peopledirectory.service.CountryCatalogChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Geometries simplified on the fly by {@link com.jordanec.peopledirectory.config.GeoSerializer}, keyed by country
+ * id, field and level. Cleared whenever the country catalog changes.
+ */
+@Component
+public class SimplifiedGeometryCache
+{
+    private final Map<String, PackedGeometry> geometries = new ConcurrentHashMap<>();
+    // bumped on every clear, a geometry simplified before it is not stored
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PackedGeometry get(String countryId, String field, GeometryDetail detail,
+            Supplier<PackedGeometry> simplifier)
+    {
+        String key = countryId + ':' + field + ':' + detail;
+        PackedGeometry geometry = geometries.get(key);
+        if (geometry != null)
+        {
+            hits.increment();
+            return geometry;
+        }
+        misses.increment();
+        long simplifiedAt = generation.get();
+        geometry = simplifier.get();
+        synchronized (geometries)
+        {
+            if (generation.get() == simplifiedAt)
+            {
+                geometries.put(key, geometry);
+            }
+        }
+        return geometry;
+    }
+
+    public CacheStatsDTO getStats()
+    {
+        return CacheStatsDTO.of("simplifiedGeometryCache", geometries.size(), hits.sum(), misses.sum());
+    }
+
+    @EventListener
+    public void onCountryCatalogChanged(CountryCatalogChangedEvent event)
+    {
+        synchronized (geometries)
+        {
+            generation.incrementAndGet();
+            geometries.clear();
+        }
+    }
+}
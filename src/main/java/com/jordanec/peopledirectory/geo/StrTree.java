@@ -0,0 +1,191 @@
+package com.jordanec.peopledirectory.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Static R-tree over bounding boxes, bulk loaded with Sort-Tile-Recursive packing. Every level is stored in flat
+ * primitive arrays and the children of a node are contiguous in the level below, so a search only walks arrays.
+ * The tree is immutable once built and can be searched from any number of threads.
+ */
+public final class StrTree
+{
+    public static final int DEFAULT_NODE_CAPACITY = 16;
+
+    // levels[0] holds the items (ref = item id), levels[k > 0] the nodes (ref = first child in levels[k - 1])
+    private final Level[] levels;
+
+    private StrTree(Level[] levels)
+    {
+        this.levels = levels;
+    }
+
+    /**
+     * @param boxes one {minX, minY, maxX, maxY} box per item, the item id is the index in the array
+     */
+    public static StrTree build(double[][] boxes, int nodeCapacity)
+    {
+        Level current = Level.ofItems(boxes);
+        List<Level> levels = new ArrayList<>();
+        while (true)
+        {
+            current = current.sortTiles(nodeCapacity);
+            levels.add(current);
+            if (current.size() <= nodeCapacity)
+            {
+                break;
+            }
+            current = current.pack(nodeCapacity);
+        }
+        return new StrTree(levels.toArray(new Level[0]));
+    }
+
+    public static StrTree build(double[][] boxes)
+    {
+        return build(boxes, DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * Calls {@code consumer} with the id of every item whose box contains the point.
+     */
+    public void search(double x, double y, IntConsumer consumer)
+    {
+        int top = levels.length - 1;
+        for (int i = 0; i < levels[top].size(); i++)
+        {
+            search(top, i, x, y, consumer);
+        }
+    }
+
+    private void search(int level, int index, double x, double y, IntConsumer consumer)
+    {
+        Level current = levels[level];
+        if (!current.contains(index, x, y))
+        {
+            return;
+        }
+        if (level == 0)
+        {
+            consumer.accept(current.ref[index]);
+            return;
+        }
+        int end = current.ref[index] + current.count[index];
+        for (int child = current.ref[index]; child < end; child++)
+        {
+            search(level - 1, child, x, y, consumer);
+        }
+    }
+
+    private static final class Level
+    {
+        private final double[] minX;
+        private final double[] minY;
+        private final double[] maxX;
+        private final double[] maxY;
+        private final int[] ref;
+        private final int[] count;
+
+        private Level(int size)
+        {
+            minX = new double[size];
+            minY = new double[size];
+            maxX = new double[size];
+            maxY = new double[size];
+            ref = new int[size];
+            count = new int[size];
+        }
+
+        private static Level ofItems(double[][] boxes)
+        {
+            Level level = new Level(boxes.length);
+            for (int i = 0; i < boxes.length; i++)
+            {
+                level.minX[i] = boxes[i][0];
+                level.minY[i] = boxes[i][1];
+                level.maxX[i] = boxes[i][2];
+                level.maxY[i] = boxes[i][3];
+                level.ref[i] = i;
+            }
+            return level;
+        }
+
+        private int size()
+        {
+            return ref.length;
+        }
+
+        private boolean contains(int i, double x, double y)
+        {
+            return x >= minX[i] && x <= maxX[i] && y >= minY[i] && y <= maxY[i];
+        }
+
+        private double centerX(int i)
+        {
+            return (minX[i] + maxX[i]) / 2;
+        }
+
+        private double centerY(int i)
+        {
+            return (minY[i] + maxY[i]) / 2;
+        }
+
+        /*
+         * STR ordering: sort by center x, cut into ceil(sqrt(P)) vertical slices of S * capacity entries
+         * (P = number of parent nodes), sort every slice by center y. Consecutive runs of `capacity` entries
+         * then become the parent nodes.
+         */
+        private Level sortTiles(int capacity)
+        {
+            int size = size();
+            int parents = (size + capacity - 1) / capacity;
+            int sliceSize = (int) Math.ceil(Math.sqrt(parents)) * capacity;
+            Integer[] order = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+            Arrays.sort(order, Comparator.comparingDouble(this::centerX));
+            for (int from = 0; from < size; from += sliceSize)
+            {
+                Arrays.sort(order, from, Math.min(from + sliceSize, size), Comparator.comparingDouble(this::centerY));
+            }
+            Level sorted = new Level(size);
+            for (int i = 0; i < size; i++)
+            {
+                int source = order[i];
+                sorted.minX[i] = minX[source];
+                sorted.minY[i] = minY[source];
+                sorted.maxX[i] = maxX[source];
+                sorted.maxY[i] = maxY[source];
+                sorted.ref[i] = ref[source];
+                sorted.count[i] = count[source];
+            }
+            return sorted;
+        }
+
+        private Level pack(int capacity)
+        {
+            int size = size();
+            Level parents = new Level((size + capacity - 1) / capacity);
+            for (int p = 0; p < parents.size(); p++)
+            {
+                int from = p * capacity;
+                int to = Math.min(from + capacity, size);
+                parents.minX[p] = Double.POSITIVE_INFINITY;
+                parents.minY[p] = Double.POSITIVE_INFINITY;
+                parents.maxX[p] = Double.NEGATIVE_INFINITY;
+                parents.maxY[p] = Double.NEGATIVE_INFINITY;
+                for (int i = from; i < to; i++)
+                {
+                    parents.minX[p] = Math.min(parents.minX[p], minX[i]);
+                    parents.minY[p] = Math.min(parents.minY[p], minY[i]);
+                    parents.maxX[p] = Math.max(parents.maxX[p], maxX[i]);
+                    parents.maxY[p] = Math.max(parents.maxY[p], maxY[i]);
+                }
+                parents.ref[p] = from;
+                parents.count[p] = to - from;
+            }
+            return parents;
+        }
+    }
+}
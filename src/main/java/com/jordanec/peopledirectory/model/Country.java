@@ -1,15 +1,18 @@
 package com.jordanec.peopledirectory.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.jordanec.peopledirectory.config.GeoSerializer;
+import com.jordanec.peopledirectory.config.PackedGeometryDeserializer;
+import com.jordanec.peopledirectory.dto.BoundingBoxDTO;
 import com.jordanec.peopledirectory.dto.CurrencyDTO;
 import com.jordanec.peopledirectory.dto.LanguageDTO;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
-import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
-import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
 import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
 import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
 import org.springframework.data.mongodb.core.index.Indexed;
@@ -37,9 +40,19 @@ public class Country implements Serializable
     private String flag;
     private Long population;
     @JsonSerialize(using = GeoSerializer.class)
+    @JsonDeserialize(using = PackedGeometryDeserializer.class)
     @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
-    private GeoJsonPolygon geometry;
+    private PackedGeometry geometry;
     @JsonSerialize(using = GeoSerializer.class)
+    @JsonDeserialize(using = PackedGeometryDeserializer.class)
     @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
-    private GeoJsonMultiPolygon geometryMulti;
+    private PackedGeometry geometryMulti;
+    // derived from geometry/geometryMulti on every save, see CountryGeometryCallback
+    private BoundingBoxDTO bbox;
+    @JsonIgnore
+    private PackedGeometry geometryHigh;
+    @JsonIgnore
+    private PackedGeometry geometryMedium;
+    @JsonIgnore
+    private PackedGeometry geometryLow;
 }
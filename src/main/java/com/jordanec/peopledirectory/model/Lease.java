@@ -0,0 +1,25 @@
+package com.jordanec.peopledirectory.model;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Lock held by one application instance until {@code expiresAt}. The holder pushes {@code expiresAt} forward
+ * while it works, a TTL index on it removes leases whose holder died.
+ */
+@Document(collection = "locks")
+@RequiredArgsConstructor
+@Data
+public class Lease
+{
+    // lock name
+    @Id
+    private String id;
+    private String owner;
+    private Date acquiredAt;
+    private Date expiresAt;
+}
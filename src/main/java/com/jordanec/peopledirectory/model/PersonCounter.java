@@ -0,0 +1,30 @@
+package com.jordanec.peopledirectory.model;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Number of persons taking {@code value} for {@code facet} (one of the PersonFacets fields, or {@code total}),
+ * kept with {@code $inc} by every person write and reconciled against the persons collection periodically.
+ */
+@Document(collection = "personCounters")
+@RequiredArgsConstructor
+@Data
+public class PersonCounter
+{
+    // facet:value
+    @Id
+    private String id;
+    @Indexed
+    private String facet;
+    private String value;
+    private long count;
+
+    public static String id(String facet, String value)
+    {
+        return facet + ":" + value;
+    }
+}
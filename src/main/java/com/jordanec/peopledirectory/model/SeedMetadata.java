@@ -0,0 +1,48 @@
+package com.jordanec.peopledirectory.model;
+
+import com.jordanec.peopledirectory.dto.SeedRecordHashDTO;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Version of a seed file as last written to the database: the hash of the whole file and one hash per record,
+ * keyed by the record's natural key. Record hashes are stored as a list since natural keys (country names) may
+ * contain dots.
+ */
+@Document(collection = "seedMetadata")
+@RequiredArgsConstructor
+@Data
+public class SeedMetadata
+{
+    // classpath location of the seed
+    @Id
+    private String id;
+    private String hash;
+    private List<SeedRecordHashDTO> records = new ArrayList<>();
+    private Date syncedAt;
+
+    public static SeedMetadata of(String seed, String hash, Map<String, String> recordHashes)
+    {
+        SeedMetadata seedMetadata = new SeedMetadata();
+        seedMetadata.setId(seed);
+        seedMetadata.setHash(hash);
+        recordHashes.forEach((key, recordHash) -> seedMetadata.getRecords().add(new SeedRecordHashDTO(key, recordHash)));
+        seedMetadata.setSyncedAt(new Date());
+        return seedMetadata;
+    }
+
+    public Map<String, String> getRecordHashes()
+    {
+        Map<String, String> recordHashes = new HashMap<>(records.size() * 2);
+        records.forEach(record -> recordHashes.put(record.getKey(), record.getHash()));
+        return recordHashes;
+    }
+}
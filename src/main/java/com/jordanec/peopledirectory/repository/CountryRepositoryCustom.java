@@ -1,12 +1,22 @@
 package com.jordanec.peopledirectory.repository;
 
+import com.jordanec.peopledirectory.geo.GeometryDetail;
 import com.jordanec.peopledirectory.model.Country;
 import org.bson.Document;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.util.CloseableIterator;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface CountryRepositoryCustom
 {
+    CloseableIterator<Country> streamAll();
+    List<Country> findAllWithoutGeometry();
+    List<Country> findAll(GeometryDetail detail);
+    Optional<Country> findByName(String name, GeometryDetail detail);
+    Country upsertByName(Country country);
     Document createDocument(Document country);
     Optional<Country> getCountryOfCurrentLocation(Long dni);
+    Optional<Country> findCountryAt(GeoJsonPoint location);
 }
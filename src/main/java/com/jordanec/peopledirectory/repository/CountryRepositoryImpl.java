@@ -1,5 +1,10 @@
 package com.jordanec.peopledirectory.repository;
 
+import com.jordanec.peopledirectory.geo.CountryGeometryCallback;
+import com.jordanec.peopledirectory.geo.CountrySpatialIndex;
+import com.jordanec.peopledirectory.geo.GeometryDetail;
+import com.jordanec.peopledirectory.geo.GeometrySimplifier;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
 import com.jordanec.peopledirectory.model.Country;
 import com.jordanec.peopledirectory.model.Person;
 import com.jordanec.peopledirectory.service.PersonService;
@@ -8,11 +13,21 @@ import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 public class CountryRepositoryImpl implements CountryRepositoryCustom
@@ -21,10 +36,175 @@ public class CountryRepositoryImpl implements CountryRepositoryCustom
     private final MongoOperations mongoOperations;
     @Autowired
     PersonService personService;
+    @Autowired
+    CountrySpatialIndex countrySpatialIndex;
+    @Autowired
+    CountryGeometryCallback countryGeometryCallback;
+
+    @Override
+    public CloseableIterator<Country> streamAll()
+    {
+        return mongoOperations.stream(withDetail(new Query(), GeometryDetail.FULL), Country.class);
+    }
+
+    @Override
+    public List<Country> findAllWithoutGeometry()
+    {
+        Query query = new Query();
+        query.fields().exclude("geometry").exclude("geometryMulti");
+        excludeSimplifiedGeometry(query, null);
+        return mongoOperations.find(query, Country.class);
+    }
+
+    @Override
+    public List<Country> findAll(GeometryDetail detail)
+    {
+        return swapGeometry(mongoOperations.find(withDetail(new Query(), detail), Country.class), detail);
+    }
 
+    @Override
+    public Optional<Country> findByName(String name, GeometryDetail detail)
+    {
+        Query query = withDetail(new Query(Criteria.where("name").is(name)), detail);
+        return Optional.ofNullable(mongoOperations.findOne(query, Country.class))
+                .map(country -> swapGeometry(Collections.singletonList(country), detail).get(0));
+    }
+
+    // only the geometry of the requested level is read from Mongo
+    private static Query withDetail(Query query, GeometryDetail detail)
+    {
+        if (detail != GeometryDetail.FULL)
+        {
+            query.fields().exclude("geometry").exclude("geometryMulti");
+        }
+        excludeSimplifiedGeometry(query, detail);
+        return query;
+    }
+
+    private static void excludeSimplifiedGeometry(Query query, GeometryDetail keep)
+    {
+        for (GeometryDetail detail : GeometryDetail.values())
+        {
+            if (detail.isSimplified() && detail != keep)
+            {
+                query.fields().exclude(detail.getField());
+            }
+        }
+    }
+
+    /*
+     * Moves the simplified level into geometry or geometryMulti (same type as the full borders), so clients read
+     * the same fields at every level. Countries written before the levels existed are simplified here from the full
+     * borders, all read with one $in query.
+     */
+    private List<Country> swapGeometry(List<Country> countries, GeometryDetail detail)
+    {
+        if (!detail.isSimplified())
+        {
+            return countries;
+        }
+        List<String> legacyIds = countries.stream()
+                .filter(country -> getSimplifiedGeometry(country, detail) == null)
+                .map(Country::getId)
+                .collect(Collectors.toList());
+        Map<String, Country> fullById = Collections.emptyMap();
+        if (!legacyIds.isEmpty())
+        {
+            Query query = new Query(Criteria.where("_id").in(legacyIds));
+            query.fields().include("geometry").include("geometryMulti");
+            fullById = mongoOperations.find(query, Country.class).stream()
+                    .collect(Collectors.toMap(Country::getId, Function.identity()));
+        }
+        for (Country country : countries)
+        {
+            swapGeometry(country, detail, fullById.get(country.getId()));
+        }
+        return countries;
+    }
+
+    private static void swapGeometry(Country country, GeometryDetail detail, Country full)
+    {
+        PackedGeometry simplified = getSimplifiedGeometry(country, detail);
+        if (simplified == null && full != null && (full.getGeometry() != null || full.getGeometryMulti() != null))
+        {
+            simplified = GeometrySimplifier.simplify(full.getGeometry() != null ? full.getGeometry()
+                    : full.getGeometryMulti(), detail.getTolerance());
+        }
+        if (simplified != null && !simplified.isMultiPolygon())
+        {
+            country.setGeometry(simplified);
+        }
+        else
+        {
+            country.setGeometryMulti(simplified);
+        }
+        country.setGeometryHigh(null);
+        country.setGeometryMedium(null);
+        country.setGeometryLow(null);
+    }
+
+    private static PackedGeometry getSimplifiedGeometry(Country country, GeometryDetail detail)
+    {
+        switch (detail)
+        {
+            case HIGH:
+                return country.getGeometryHigh();
+            case MEDIUM:
+                return country.getGeometryMedium();
+            case LOW:
+                return country.getGeometryLow();
+            default:
+                return null;
+        }
+    }
+
+    // same as PersonRepositoryImpl.upsertByDni, keyed by the unique name index
+    @Override
+    public Country upsertByName(Country country)
+    {
+        country.setId(null);
+        Query query = new Query(Criteria.where("name").is(country.getName()));
+        FindAndReplaceOptions options = FindAndReplaceOptions.options().upsert().returnNew();
+        try
+        {
+            return mongoOperations.findAndReplace(query, country, options);
+        }
+        catch (DuplicateKeyException ex)
+        {
+            return mongoOperations.findAndReplace(query, country, options);
+        }
+    }
+
+    /*
+     * Raw documents are not written through the mapping layer, so CountryGeometryCallback does not see them: the
+     * derived fields are computed on the mapped country and copied into the document before it is saved.
+     */
     @Override
     public Document createDocument(Document country)
     {
+        Country mapped = countryGeometryCallback.onBeforeConvert(
+                mongoOperations.getConverter().read(Country.class, country), "countries");
+        Document derived = new Document();
+        mongoOperations.getConverter().write(mapped, derived);
+        List<String> derivedFields = new ArrayList<>(Collections.singletonList("bbox"));
+        for (GeometryDetail detail : GeometryDetail.values())
+        {
+            if (detail.isSimplified())
+            {
+                derivedFields.add(detail.getField());
+            }
+        }
+        for (String field : derivedFields)
+        {
+            if (derived.containsKey(field))
+            {
+                country.put(field, derived.get(field));
+            }
+            else
+            {
+                country.remove(field);
+            }
+        }
         Document saved = mongoOperations.save(country, "countries");
         return saved;
     }
@@ -38,11 +218,30 @@ public class CountryRepositoryImpl implements CountryRepositoryCustom
             logger.debug(
                     "getCountryOfCurrentLocation(): Person with dni: {} not found or doesn't have currentLocation assigned",
                     dni);
-            return null;
+            return Optional.empty();
+        }
+        return findCountryAt(optionalPerson.get().getCurrentLocation());
+    }
+
+    @Override
+    public Optional<Country> findCountryAt(GeoJsonPoint location)
+    {
+        if (countrySpatialIndex.isReady())
+        {
+            return countrySpatialIndex.findCountryAt(location.getX(), location.getY());
+        }
+        // index not built yet (or disabled), ask Mongo; the bbox leaves out the countries that can't contain the point
+        Criteria bboxCriteria = new Criteria().orOperator(Criteria.where("bbox").exists(false),
+                Criteria.where("bbox.minX").lte(location.getX()).and("bbox.maxX").gte(location.getX())
+                        .and("bbox.minY").lte(location.getY()).and("bbox.maxY").gte(location.getY()));
+        Criteria geoCriteria = new Criteria().orOperator(Criteria.where("geometryMulti").intersects(location),
+                Criteria.where("geometry").intersects(location));
+        Query query = new Query(new Criteria().andOperator(bboxCriteria, geoCriteria));
+        // the borders only match, the country comes back like the index returns it
+        for (String field : CountrySpatialIndex.COUNTRY_FIELDS)
+        {
+            query.fields().include(field);
         }
-        return Optional.ofNullable(mongoOperations.findOne(new Query(new Criteria()
-                        .orOperator(Criteria.where("geometryMulti").intersects(optionalPerson.get().getCurrentLocation()),
-                                Criteria.where("geometry").intersects(optionalPerson.get().getCurrentLocation()))),
-                Country.class));
+        return Optional.ofNullable(mongoOperations.findOne(query, Country.class));
     }
 }
@@ -0,0 +1,95 @@
+package com.jordanec.peopledirectory.repository;
+
+import com.jordanec.peopledirectory.model.Person;
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of a keyset (seek) pagination over persons: the key the slice is ordered by and the last value
+ * returned. The next slice is read with {@code key > lastValue} over the index of the key, so reading slice N
+ * costs the same as reading the first one. Encoded as an opaque url-safe token for clients.
+ */
+public final class KeysetCursor
+{
+    public enum Key
+    {
+        ID("_id"),
+        DNI("dni");
+
+        private final String field;
+
+        Key(String field)
+        {
+            this.field = field;
+        }
+
+        public String getField()
+        {
+            return field;
+        }
+
+        public static Key of(String seekBy)
+        {
+            if (seekBy == null || seekBy.equalsIgnoreCase("id") || seekBy.equals("_id"))
+            {
+                return ID;
+            }
+            if (seekBy.equalsIgnoreCase("dni"))
+            {
+                return DNI;
+            }
+            throw new IllegalArgumentException("Unsupported seekBy value: " + seekBy);
+        }
+    }
+
+    private static final char SEPARATOR = ':';
+
+    private final Key key;
+    private final Object lastValue;
+
+    private KeysetCursor(Key key, Object lastValue)
+    {
+        this.key = key;
+        this.lastValue = lastValue;
+    }
+
+    public static KeysetCursor after(Key key, Person person)
+    {
+        return new KeysetCursor(key, key == Key.ID ? new ObjectId(person.getId()) : person.getDni());
+    }
+
+    public static KeysetCursor decode(String token)
+    {
+        try
+        {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separatorIndex = decoded.indexOf(SEPARATOR);
+            Key key = Key.valueOf(decoded.substring(0, separatorIndex));
+            String value = decoded.substring(separatorIndex + 1);
+            return new KeysetCursor(key, key == Key.ID ? new ObjectId(value) : Long.valueOf(value));
+        }
+        catch (RuntimeException ex)
+        {
+            throw new IllegalArgumentException("Invalid continuation token: " + token, ex);
+        }
+    }
+
+    public String encode()
+    {
+        String value = key == Key.ID ? ((ObjectId) lastValue).toHexString() : lastValue.toString();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((key.name() + SEPARATOR + value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Key getKey()
+    {
+        return key;
+    }
+
+    public Object getLastValue()
+    {
+        return lastValue;
+    }
+}
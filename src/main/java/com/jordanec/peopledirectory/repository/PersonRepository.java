@@ -1,5 +1,6 @@
 package com.jordanec.peopledirectory.repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -22,20 +23,25 @@ public interface PersonRepository extends MongoRepository<Person, String>, Perso
 //	Person findAndModify(Query query, Update update, FindAndModifyOptions options, Person entityClass);
 	List<Person> findByFirstNameLike(String q);
 	Stream<Person> readAllByDateOfBirthNotNullOrderByDateOfBirthDesc();
+	// equality under a strength 2 collation is case-insensitive and matches the *_ci indexes declared in indexes.json
+	String CASE_INSENSITIVE_COLLATION = "{'locale': 'en', 'strength': 2}";
+
+	@Query(value = "{'lastName': ?0, 'firstName': ?1}", collation = CASE_INSENSITIVE_COLLATION)
 	List<Person> findByLastNameAndFirstNameAllIgnoreCase(String lastname, String firstname);
+	@Query(value = "{$or: [{'lastName': ?0}, {'firstName': ?1}]}", collation = CASE_INSENSITIVE_COLLATION)
 	List<Person> findByLastNameOrFirstNameAllIgnoreCase(String lastName, String firstName);
 	List<Person> findByDateOfBirthBetweenOrderById(Date start, Date end);
 	//@Query("{'mobile' : {'$gt' : ?0, '$lt' : ?1}}")	Query equivalent
 	List<Person> findByMobileBetween(long start, long end);
 	List<Person> findByGender(String gender);
+	// only persons whose country is not in the catalog keep its name, the others are found by findByCountryId
+	@Query(value = "{'country.name': ?0}", collation = CASE_INSENSITIVE_COLLATION)
 	List<Person> findDistinctPeopleByCountryIgnoreCase(String country);
+	List<Person> findByCountryId(String countryId);
+	long countByCountryId(String countryId);
 	Optional<Person> findByDni(Long dni);
+	List<Person> findByDniIn(Collection<Long> dnis);
 	List<Person> findByCurrentLocationWithin(Polygon polygon);
-	//
-	@Aggregation(pipeline = {
-			"{$lookup: {from: 'countries', localField: 'country._id', foreignField: '_id', as: 'country'}}",
-			"{$unwind: {path: '$country' }}"})
-	List<Person> lookupCountry();
 
 /*	@TODO: define some aggregations
 @Aggregation(" { $subtract: [ { $subtract:[{$year:'$$NOW'},{$year:'$dateOfBirth'}]},   {$cond:[ {$gt:[0, {$subtract:[{$dayOfYear:'$$NOW'}, "
@@ -1,24 +1,46 @@
 package com.jordanec.peopledirectory.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
+import com.jordanec.peopledirectory.dto.BulkWriteReportDTO;
+import com.jordanec.peopledirectory.dto.KeysetPageRequestDTO;
+import com.jordanec.peopledirectory.dto.KeysetSliceDTO;
+import com.jordanec.peopledirectory.dto.PersonDashboardDTO;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
 import com.jordanec.peopledirectory.model.Person;
 import com.mongodb.client.result.UpdateResult;
 import org.bson.Document;
-import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.util.CloseableIterator;
 
 public interface PersonRepositoryCustom
 {
+	CloseableIterator<Person> streamAll();
+	Map<Long, GeoJsonPoint> findCurrentLocationsByDni(Collection<Long> dnis);
 	List<Person> findBornBetween(LocalDate start, LocalDate end);
 	Optional<Document> findDocumentByDni(Long dni);
 	long getCountByCountry(String country);
 	List<Person> groupByCountry(String field, String order);
 	Document groupDocumentByCountryOrdered(String field, String order);
+	// one $facet aggregation, ageBoundaries are the ascending lower bounds (in years) of the age buckets after 0
+	PersonDashboardDTO dashboard(LocalDate today, int[] ageBoundaries);
 	List<Person> lookupCountry(long dni);
+	List<Person> lookupCountry(Long dni, List<String> countryFields);
 	Person isOlderThan(long dni, int age);
+	Person upsertByDni(Person person);
+	Person upsertByDniReturningPrevious(Person person);
 	List<Person> delete(List<Person> persons);
+	List<Person> delete(List<Person> persons, int batchSize);
+	List<Person> delete(List<Person> persons, int batchSize, Consumer<Person> removed);
+	BulkWriteReportDTO bulkInsert(List<Person> persons, int batchSize);
+	BulkWriteReportDTO bulkUpsert(List<Person> persons, int batchSize);
 	UpdateResult addHobbies(Person person);
 	UpdateResult pushHobbies(Person person);
 	UpdateResult pullHobbies(Person person);
@@ -26,5 +48,24 @@ public interface PersonRepositoryCustom
 	UpdateResult updateHobbiesGoodFrequency(Person person, Integer minFrequency);
 	Document test();
 
-	List<Person> findByCurrentLocationWithin(GeoJsonMultiPolygon multiPolygon);
+	List<Person> findByCurrentLocationWithin(PackedGeometry geometry);
+	// executor: where the per-polygon queries block, never the common ForkJoinPool
+	List<Person> findByCurrentLocationWithinParallel(PackedGeometry geometry, Executor executor);
+
+	// Keyset paginated variants of the list queries, see KeysetCursor
+	KeysetSliceDTO<Person> findAllSlice(KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findBornBetweenSlice(LocalDate start, LocalDate end, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByDateOfBirthBetweenSlice(Date start, Date end, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByFirstNameLikeSlice(String q, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByGenderSlice(String gender, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByLastNameAndFirstNameAllIgnoreCaseSlice(String lastName, String firstName,
+			KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByLastNameOrFirstNameAllIgnoreCaseSlice(String lastName, String firstName,
+			KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByMobileBetweenSlice(long start, long end, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByCountryIdSlice(String countryId, KeysetPageRequestDTO pageRequest);
+	// persons whose country is not in the catalog, matched by name
+	KeysetSliceDTO<Person> findByCountryNameIgnoreCaseSlice(String country, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> lookupCountrySlice(Long dni, List<String> countryFields,
+			KeysetPageRequestDTO pageRequest);
 }
@@ -1,41 +1,98 @@
 package com.jordanec.peopledirectory.repository;
 
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-import com.mongodb.client.result.DeleteResult;
+import com.jordanec.peopledirectory.dto.BulkItemResultDTO;
+import com.jordanec.peopledirectory.dto.BulkWriteReportDTO;
+import com.jordanec.peopledirectory.dto.KeysetPageRequestDTO;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.jordanec.peopledirectory.dto.KeysetSliceDTO;
+import com.jordanec.peopledirectory.dto.PersonDashboardDTO;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
+import com.jordanec.peopledirectory.search.PersonFacets;
 import com.mongodb.client.result.UpdateResult;
 import lombok.RequiredArgsConstructor;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.geo.Polygon;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
 import org.springframework.data.mongodb.core.aggregation.GroupOperation;
-import org.springframework.data.mongodb.core.aggregation.LookupOperation;
 import org.springframework.data.mongodb.core.aggregation.MatchOperation;
 import org.springframework.data.mongodb.core.aggregation.ProjectionOperation;
 import org.springframework.data.mongodb.core.aggregation.SortOperation;
-import org.springframework.data.mongodb.core.aggregation.UnwindOperation;
-import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
-import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Collation;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.MongoRegexCreator;
 import com.jordanec.peopledirectory.model.Person;
 
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.query.Update;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.util.CollectionUtils;
 
 @RequiredArgsConstructor
 public class PersonRepositoryImpl implements PersonRepositoryCustom {
 
+	private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+	private static final int DEFAULT_DELETE_BATCH_SIZE = 1000;
+	private static final Collation CASE_INSENSITIVE = Collation.parse(PersonRepository.CASE_INSENSITIVE_COLLATION);
+	// what CountryDTO holds, anything else would be joined only to be dropped when mapped
+	private static final List<String> LOOKUP_COUNTRY_FIELDS = Arrays.asList("name", "code", "capital", "region",
+			"currency", "language", "flag", "population");
 	private final MongoOperations mongoOperations;
 
+	@Override
+	public CloseableIterator<Person> streamAll()
+	{
+		return mongoOperations.stream(new Query(), Person.class);
+	}
+
+	// one $in round trip, only dni and currentLocation come back
+	@Override
+	public Map<Long, GeoJsonPoint> findCurrentLocationsByDni(Collection<Long> dnis)
+	{
+		Map<Long, GeoJsonPoint> locations = new HashMap<>();
+		if (CollectionUtils.isEmpty(dnis))
+		{
+			return locations;
+		}
+		Query query = new Query(Criteria.where("dni").in(dnis).and("currentLocation").exists(true));
+		query.fields().include("dni").include("currentLocation").exclude("_id");
+		for (Person person : mongoOperations.find(query, Person.class))
+		{
+			locations.put(person.getDni(), person.getCurrentLocation());
+		}
+		return locations;
+	}
+
 	@Override
 	public List<Person> findBornBetween(LocalDate start, LocalDate end) {
 		Query query = new Query(Criteria.where("dateOfBirth").gte(start).lte(end));
@@ -49,9 +106,10 @@ public class PersonRepositoryImpl implements PersonRepositoryCustom {
 				mongoOperations.findOne(new Query(Criteria.where("dni").is(dni)), Document.class, "persons"));
 	}
 
+	// persons whose country is not in the catalog, the others are counted by countByCountryId
 	public long getCountByCountry(String country)
 	{
-		Query query = new Query(Criteria.where("country").is(country));
+		Query query = new Query(Criteria.where("country.name").is(country)).collation(CASE_INSENSITIVE);
 		return mongoOperations.count(query, Person.class);
 	}
 
@@ -65,16 +123,52 @@ public class PersonRepositoryImpl implements PersonRepositoryCustom {
 		return groupDocumentByCountry(field, order).getRawResults();
 	}
 
-	//Console equivalent:
-	//db.persons.aggregate([ {$lookup: {from: "countries", localField: "country._id", foreignField: "_id", as: "country"}}, {$unwind: {path: '$country' }} ]).pretty()
 	@Override
 	public List<Person> lookupCountry(long dni)
 	{
-		MatchOperation matchOperation = Aggregation.match(Criteria.where("dni").is(dni));
-		LookupOperation lookupOperation = Aggregation.lookup("countries", "country._id", "_id", "country");
-		UnwindOperation unwindOperation = Aggregation.unwind("country");
-		Aggregation aggregation = Aggregation.newAggregation(matchOperation, lookupOperation, unwindOperation);
-		return mongoOperations.aggregate(aggregation, Person.class, Person.class).getMappedResults();
+		return lookupCountry(dni, null);
+	}
+
+	//Console equivalent:
+	//db.persons.aggregate([ {$match: {dni: 290978673}}, {$lookup: {from: "countries", let: {countryId: "$country._id"}, pipeline: [ {$match: {$expr: {$eq: ["$_id", "$$countryId"]}}}, {$project: {name: 1, code: 1}} ], as: "country"}}, {$unwind: {path: '$country' }} ]).pretty()
+	@Override
+	public List<Person> lookupCountry(Long dni, List<String> countryFields)
+	{
+		List<AggregationOperation> operations = new ArrayList<>();
+		if (dni != null)
+		{
+			operations.add(Aggregation.match(Criteria.where("dni").is(dni)));
+		}
+		operations.add(projectedCountryLookup(countryFields));
+		operations.add(Aggregation.unwind("country"));
+		return mongoOperations.aggregate(Aggregation.newAggregation(operations), Person.class, Person.class)
+				.getMappedResults();
+	}
+
+	/*
+	 * Pipeline $lookup with an inner $project: only the requested country fields are joined, the geometry
+	 * (hundreds of KB per country) never leaves the server.
+	 */
+	private static AggregationOperation projectedCountryLookup(List<String> countryFields)
+	{
+		List<String> fields = CollectionUtils.isEmpty(countryFields) ? LOOKUP_COUNTRY_FIELDS : countryFields;
+		Document projection = new Document();
+		for (String field : fields)
+		{
+			if (!LOOKUP_COUNTRY_FIELDS.contains(field))
+			{
+				throw new IllegalArgumentException("Unknown country field: " + field);
+			}
+			projection.append(field, 1);
+		}
+		Document lookup = new Document("from", "countries")
+				.append("let", new Document("countryId", "$country._id"))
+				.append("pipeline", Arrays.asList(
+						new Document("$match",
+								new Document("$expr", new Document("$eq", Arrays.asList("$_id", "$$countryId")))),
+						new Document("$project", projection)))
+				.append("as", "country");
+		return context -> new Document("$lookup", lookup);
 	}
 
 	private AggregationResults<Person> groupDocumentByCountry(String field, String order)
@@ -93,6 +187,86 @@ public class PersonRepositoryImpl implements PersonRepositoryCustom {
 		return mongoOperations.aggregate(aggregation, Person.class, Person.class);
 	}
 
+	/*
+	 * Every count of the dashboard in a single round trip: one $facet stage whose sub-pipelines share one scan of
+	 * the collection. The age buckets are dateOfBirth ranges computed from today, so no per-document date math.
+	 */
+	@Override
+	public PersonDashboardDTO dashboard(LocalDate today, int[] ageBoundaries)
+	{
+		// ascending birth dates: a bucket [born after today - (n + 1) years, born on or before today - n years]
+		List<Object> bornAfter = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		int maxAge = 150;
+		bornAfter.add(toDate(today.minusYears(maxAge)));
+		for (int i = ageBoundaries.length - 1; i >= 0; i--)
+		{
+			int upper = i == ageBoundaries.length - 1 ? maxAge : ageBoundaries[i + 1];
+			labels.add(upper == maxAge ? ageBoundaries[i] + "+" : ageBoundaries[i] + "-" + (upper - 1));
+			bornAfter.add(toDate(today.minusYears(ageBoundaries[i]).plusDays(1)));
+		}
+		labels.add("0-" + (ageBoundaries[0] - 1));
+		bornAfter.add(toDate(today.plusDays(1)));
+
+		Aggregation aggregation = Aggregation.newAggregation(Aggregation
+				.facet(Aggregation.count().as("total")).as("total")
+				.and(Aggregation.sortByCount(ConditionalOperators.ifNull("country._id").thenValueOf("country.name")))
+				.as("countries")
+				.and(Aggregation.sortByCount("gender")).as("genders")
+				.and(Aggregation.sortByCount("language")).as("languages")
+				.and(Aggregation.sortByCount("shirtSize")).as("shirtSizes")
+				.and(Aggregation.bucket("dateOfBirth").withBoundaries(bornAfter.toArray())
+						.withDefaultBucket(PersonDashboardDTO.UNKNOWN)).as("ageBuckets")
+				.and(Aggregation.unwind("hobbies"), Aggregation.sortByCount("hobbies.name")).as("hobbies"));
+		Document facets = mongoOperations.aggregate(aggregation, mongoOperations.getCollectionName(Person.class),
+				Document.class).getUniqueMappedResult();
+
+		PersonDashboardDTO dashboard = new PersonDashboardDTO();
+		dashboard.setGeneratedAt(new Date());
+		if (facets == null)
+		{
+			return dashboard;
+		}
+		List<Document> total = facets.getList("total", Document.class);
+		dashboard.setTotal(total.isEmpty() ? 0 : total.get(0).get("total", Number.class).longValue());
+		dashboard.setCountries(counts(facets.getList("countries", Document.class)));
+		dashboard.setGenders(counts(facets.getList("genders", Document.class)));
+		dashboard.setLanguages(counts(facets.getList("languages", Document.class)));
+		dashboard.setShirtSizes(counts(facets.getList("shirtSizes", Document.class)));
+		dashboard.setHobbies(counts(facets.getList("hobbies", Document.class)));
+		// bucket ids are the lower boundaries, empty buckets are not returned
+		Map<Object, Long> byLowerBoundary = new HashMap<>();
+		for (Document bucket : facets.getList("ageBuckets", Document.class))
+		{
+			byLowerBoundary.put(bucket.get("_id"), bucket.get("count", Number.class).longValue());
+		}
+		for (int i = labels.size() - 1; i >= 0; i--)
+		{
+			dashboard.getAgeBuckets().put(labels.get(i), byLowerBoundary.getOrDefault(bornAfter.get(i), 0L));
+		}
+		dashboard.getAgeBuckets().put(PersonDashboardDTO.UNKNOWN,
+				byLowerBoundary.getOrDefault(PersonDashboardDTO.UNKNOWN, 0L));
+		return dashboard;
+	}
+
+	// $sortByCount output, already in descending count order
+	private static Map<String, Long> counts(List<Document> groups)
+	{
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (Document group : groups)
+		{
+			Object key = group.get("_id");
+			counts.put(key == null ? PersonDashboardDTO.UNKNOWN : key.toString(),
+					group.get("count", Number.class).longValue());
+		}
+		return counts;
+	}
+
+	private static Date toDate(LocalDate localDate)
+	{
+		return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
 	public Person isOlderThan(long dni, int age)
 	{
 		LocalDate minimumBornDate = LocalDate.now().minusYears(age);
@@ -120,21 +294,163 @@ public class PersonRepositoryImpl implements PersonRepositoryCustom {
 	}
 
 	@Override
-	@Transactional(propagation = Propagation.REQUIRED)
 	public List<Person> delete(List<Person> persons)
 	{
-		for (Person person: persons)
+		return delete(persons, DEFAULT_DELETE_BATCH_SIZE);
+	}
+
+	/*
+	 * Deletes by chunks of dni $in. findAllAndRemove reads the matching dnis (projected) and removes them by _id,
+	 * so every chunk costs two round trips and the persons returned are exactly the ones removed.
+	 */
+	@Override
+	public List<Person> delete(List<Person> persons, int batchSize)
+	{
+		return delete(persons, batchSize, removed -> {});
+	}
+
+	// the removed documents come with dni and the PersonFacets fields, as they were before the delete
+	@Override
+	public List<Person> delete(List<Person> persons, int batchSize, Consumer<Person> removed)
+	{
+		List<Long> dnis = persons.stream().map(Person::getDni).distinct().collect(Collectors.toList());
+		Set<Long> deletedDnis = new HashSet<>();
+		for (int from = 0; from < dnis.size(); from += batchSize)
+		{
+			Query query = new Query(Criteria.where("dni").in(dnis.subList(from, Math.min(from + batchSize, dnis.size()))));
+			query.fields().include("dni");
+			PersonFacets.FIELDS.keySet().forEach(query.fields()::include);
+			mongoOperations.findAllAndRemove(query, Person.class).forEach(person -> {
+				deletedDnis.add(person.getDni());
+				removed.accept(person);
+			});
+		}
+		return persons.stream().filter(person -> deletedDnis.contains(person.getDni())).collect(Collectors.toList());
+	}
+
+	/*
+	 * Atomic replace-or-insert on the unique dni index in one round trip. Two concurrent upserts of a new dni can
+	 * both miss and insert, the loser gets a duplicate key error and is retried once as a plain replace.
+	 */
+	@Override
+	public Person upsertByDni(Person person)
+	{
+		person.setId(null);
+		Query query = new Query(Criteria.where("dni").is(person.getDni()));
+		FindAndReplaceOptions options = FindAndReplaceOptions.options().upsert().returnNew();
+		try
+		{
+			return mongoOperations.findAndReplace(query, person, options);
+		}
+		catch (DuplicateKeyException ex)
+		{
+			return mongoOperations.findAndReplace(query, person, options);
+		}
+	}
+
+	/*
+	 * Same upsert as upsertByDni, returning the document it replaced (null when it inserted) so that callers can
+	 * tell what changed. The person gets the id of the stored document: the replaced one keeps its _id, an
+	 * inserted one is read back by dni.
+	 */
+	@Override
+	public Person upsertByDniReturningPrevious(Person person)
+	{
+		person.setId(null);
+		Query query = new Query(Criteria.where("dni").is(person.getDni()));
+		FindAndReplaceOptions options = FindAndReplaceOptions.options().upsert();
+		Person previous;
+		try
+		{
+			previous = mongoOperations.findAndReplace(query, person, options);
+		}
+		catch (DuplicateKeyException ex)
+		{
+			previous = mongoOperations.findAndReplace(query, person, options);
+		}
+		if (previous != null)
+		{
+			person.setId(previous.getId());
+		}
+		else
 		{
-			Query query = new Query(Criteria.where("dni").is(person.getDni()));
-			DeleteResult deleteResult = mongoOperations.remove(query, Person.class);
-			if (deleteResult.getDeletedCount() == 0)
+			Query idQuery = new Query(Criteria.where("dni").is(person.getDni()));
+			idQuery.fields().include("_id");
+			Person inserted = mongoOperations.findOne(idQuery, Person.class);
+			person.setId(inserted == null ? null : inserted.getId());
+		}
+		return previous;
+	}
+
+	@Override
+	public BulkWriteReportDTO bulkInsert(List<Person> persons, int batchSize)
+	{
+		return bulkWrite(persons, batchSize, false);
+	}
+
+	// upsert keyed by dni, an existing person is replaced as a whole like save() does
+	@Override
+	public BulkWriteReportDTO bulkUpsert(List<Person> persons, int batchSize)
+	{
+		return bulkWrite(persons, batchSize, true);
+	}
+
+	/*
+	 * Every batch is sent as one unordered bulkWrite: the server keeps going after a failed item and the
+	 * failures come back with the index of the item inside the batch.
+	 */
+	private BulkWriteReportDTO bulkWrite(List<Person> persons, int batchSize, boolean upsert)
+	{
+		BulkWriteReportDTO report = new BulkWriteReportDTO();
+		for (int from = 0; from < persons.size(); from += batchSize)
+		{
+			List<Person> batch = persons.subList(from, Math.min(from + batchSize, persons.size()));
+			BulkOperations bulkOperations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, Person.class);
+			if (upsert)
+			{
+				for (Person person : batch)
+				{
+					person.setId(null);
+					bulkOperations.replaceOne(new Query(Criteria.where("dni").is(person.getDni())), person,
+							FindAndReplaceOptions.options().upsert());
+				}
+			}
+			else
 			{
-				persons.remove(person);
+				bulkOperations.insert(batch);
+			}
+
+			BulkItemResultDTO.Status[] statuses = new BulkItemResultDTO.Status[batch.size()];
+			String[] messages = new String[batch.size()];
+			Arrays.fill(statuses, upsert ? BulkItemResultDTO.Status.UPDATED : BulkItemResultDTO.Status.INSERTED);
+			BulkWriteResult bulkWriteResult;
+			try
+			{
+				bulkWriteResult = bulkOperations.execute();
+			}
+			catch (BulkOperationException ex)
+			{
+				bulkWriteResult = ex.getResult();
+				for (BulkWriteError error : ex.getErrors())
+				{
+					statuses[error.getIndex()] = error.getCode() == DUPLICATE_KEY_ERROR_CODE
+							? BulkItemResultDTO.Status.DUPLICATE : BulkItemResultDTO.Status.FAILED;
+					messages[error.getIndex()] = error.getMessage();
+				}
+			}
+			if (upsert)
+			{
+				for (BulkWriteUpsert bulkWriteUpsert : bulkWriteResult.getUpserts())
+				{
+					statuses[bulkWriteUpsert.getIndex()] = BulkItemResultDTO.Status.INSERTED;
+				}
+			}
+			for (int i = 0; i < batch.size(); i++)
+			{
+				report.add(from + i, batch.get(i).getDni(), statuses[i], messages[i]);
 			}
 		}
-		return persons;
-//		Query query = new Query(Criteria.where("dni").in(persons.stream().map(Person::getDni).collect(Collectors.toList())));
-//		return mongoOperations.findAllAndRemove(query, Person.class);
+		return report;
 	}
 
 	@Override
@@ -225,23 +541,159 @@ public class PersonRepositoryImpl implements PersonRepositoryCustom {
 				), Person.class, Person.class).getRawResults();
 	}
 
+	// one native GeoJSON $geoWithin over the whole (Multi)Polygon, answered by the 2dsphere index on currentLocation
+	@Override
+	public List<Person> findByCurrentLocationWithin(PackedGeometry geometry)
+	{
+		return mongoOperations.find(geoWithinQuery(geometry), Person.class);
+	}
+
+	// one $geoWithin per polygon, run concurrently; a point on a border shared by two polygons is returned once
+	@Override
+	public List<Person> findByCurrentLocationWithinParallel(PackedGeometry geometry, Executor executor)
+	{
+		List<CompletableFuture<List<Person>>> futures = geometry.getPolygons().stream()
+				.map(polygon -> CompletableFuture.supplyAsync(
+						() -> mongoOperations.find(geoWithinQuery(PackedGeometry.polygon(polygon)), Person.class),
+						executor))
+				.collect(Collectors.toList());
+		return futures.stream()
+				.map(CompletableFuture::join)
+				.flatMap(List::stream)
+				.collect(Collectors.toMap(Person::getId, person -> person, (first, second) -> first, LinkedHashMap::new))
+				.values().stream().collect(Collectors.toList());
+	}
+
+	private Query geoWithinQuery(PackedGeometry geometry)
+	{
+		Object mongoGeometry = mongoOperations.getConverter().convertToMongoType(geometry);
+		return new BasicQuery(new Document("currentLocation",
+				new Document("$geoWithin", new Document("$geometry", mongoGeometry))));
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findAllSlice(KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(null, pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findBornBetweenSlice(LocalDate start, LocalDate end, KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(Criteria.where("dateOfBirth").gte(start).lte(end), pageRequest);
+	}
+
 	@Override
-	public List<Person> findByCurrentLocationWithin(GeoJsonMultiPolygon multiPolygon)
+	public KeysetSliceDTO<Person> findByDateOfBirthBetweenSlice(Date start, Date end, KeysetPageRequestDTO pageRequest)
 	{
-		Criteria[] criterias = new Criteria[multiPolygon.getCoordinates().size()];
+		return findSlice(Criteria.where("dateOfBirth").gt(start).lt(end), pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByFirstNameLikeSlice(String q, KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(Criteria.where("firstName")
+				.regex(MongoRegexCreator.INSTANCE.toRegularExpression(q, MongoRegexCreator.MatchMode.LIKE)), pageRequest);
+	}
 
-		for (int i = 0; i < criterias.length; i++)
+	@Override
+	public KeysetSliceDTO<Person> findByGenderSlice(String gender, KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(Criteria.where("gender").is(gender), pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByLastNameAndFirstNameAllIgnoreCaseSlice(String lastName, String firstName,
+			KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(Criteria.where("lastName").is(lastName).and("firstName").is(firstName), pageRequest,
+				CASE_INSENSITIVE);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByLastNameOrFirstNameAllIgnoreCaseSlice(String lastName, String firstName,
+			KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(new Criteria().orOperator(Criteria.where("lastName").is(lastName),
+				Criteria.where("firstName").is(firstName)), pageRequest, CASE_INSENSITIVE);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByMobileBetweenSlice(long start, long end, KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(Criteria.where("mobile").gt(start).lt(end), pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByCountryIdSlice(String countryId, KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(Criteria.where("country._id").is(countryId), pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByCountryNameIgnoreCaseSlice(String country, KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(Criteria.where("country.name").is(country), pageRequest, CASE_INSENSITIVE);
+	}
+
+	// Seek first and $lookup afterwards, so only the persons of the slice get joined
+	@Override
+	public KeysetSliceDTO<Person> lookupCountrySlice(Long dni, List<String> countryFields,
+			KeysetPageRequestDTO pageRequest)
+	{
+		KeysetCursor.Key key = KeysetCursor.Key.of(pageRequest.getSeekBy());
+		Aggregation aggregation = Aggregation.newAggregation(
+				Aggregation.match(seekCriteria(dni == null ? null : Criteria.where("dni").is(dni), key, pageRequest)),
+				Aggregation.sort(Sort.Direction.ASC, key.getField()),
+				Aggregation.limit(pageRequest.getLimit() + 1L),
+				projectedCountryLookup(countryFields),
+				Aggregation.unwind("country"));
+		return toSlice(mongoOperations.aggregate(aggregation, Person.class, Person.class).getMappedResults(), key,
+				pageRequest);
+	}
+
+	private KeysetSliceDTO<Person> findSlice(Criteria criteria, KeysetPageRequestDTO pageRequest)
+	{
+		return findSlice(criteria, pageRequest, null);
+	}
+
+	private KeysetSliceDTO<Person> findSlice(Criteria criteria, KeysetPageRequestDTO pageRequest, Collation collation)
+	{
+		KeysetCursor.Key key = KeysetCursor.Key.of(pageRequest.getSeekBy());
+		Query query = new Query(seekCriteria(criteria, key, pageRequest))
+				.with(Sort.by(Sort.Direction.ASC, key.getField()))
+				.limit(pageRequest.getLimit() + 1);
+		if (collation != null)
 		{
-			GeoJsonPolygon geoJsonPolygon = multiPolygon.getCoordinates().get(i);
-			Polygon polygon = new Polygon(geoJsonPolygon.getPoints());
-			criterias[i] = Criteria.where("currentLocation").within(polygon);
+			query.collation(collation);
 		}
+		return toSlice(mongoOperations.find(query, Person.class), key, pageRequest);
+	}
 
-		return mongoOperations.aggregate(
-			Aggregation.newAggregation(
-				Aggregation.match(new Criteria().orOperator(criterias))
-			)
-			, Person.class, Person.class).getMappedResults();
+	private Criteria seekCriteria(Criteria criteria, KeysetCursor.Key key, KeysetPageRequestDTO pageRequest)
+	{
+		if (pageRequest.getContinuationToken() == null)
+		{
+			return criteria == null ? new Criteria() : criteria;
+		}
+		KeysetCursor cursor = KeysetCursor.decode(pageRequest.getContinuationToken());
+		if (cursor.getKey() != key)
+		{
+			throw new IllegalArgumentException("Continuation token was issued for seekBy=" + cursor.getKey());
+		}
+		Criteria seek = Criteria.where(key.getField()).gt(cursor.getLastValue());
+		return criteria == null ? seek : new Criteria().andOperator(criteria, seek);
 	}
 
+	// One extra document is read to know whether there is a next slice without counting
+	private KeysetSliceDTO<Person> toSlice(List<Person> persons, KeysetCursor.Key key, KeysetPageRequestDTO pageRequest)
+	{
+		int limit = pageRequest.getLimit();
+		if (persons.size() <= limit)
+		{
+			return KeysetSliceDTO.of(persons, null);
+		}
+		List<Person> content = new ArrayList<>(persons.subList(0, limit));
+		return KeysetSliceDTO.of(content, KeysetCursor.after(key, content.get(limit - 1)).encode());
+	}
 }
@@ -0,0 +1,315 @@
+package com.jordanec.peopledirectory.search;
+
+import com.jordanec.peopledirectory.dto.FacetFilterDTO;
+import com.jordanec.peopledirectory.dto.FacetQueryDTO;
+import com.jordanec.peopledirectory.dto.FacetResultDTO;
+import com.jordanec.peopledirectory.model.Person;
+import com.jordanec.peopledirectory.service.PersonIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * In-memory bitmap index over the low-cardinality person fields of {@link PersonFacets}: one bitmap per field
+ * value over dense person ordinals, so filters are bitwise AND / OR / AND NOT and facet counts are cardinalities,
+ * all without reading Mongo. Built from the persons collection on the first query and kept current by the write paths of the person
+ * service; the ordinals of deleted persons are reused, so the bitmaps stay as dense as the directory.
+ */
+@Component
+public class PersonFacetIndex implements PersonIndex
+{
+    private static final Map<String, Function<Person, String>> FIELDS = PersonFacets.FIELDS;
+    private static final String[] FIELD_NAMES = FIELDS.keySet().toArray(new String[0]);
+
+    private final Logger logger = LoggerFactory.getLogger(PersonFacetIndex.class);
+
+    @Value("${people-directory.search.facets.enabled:true}")
+    private boolean FACETS_ENABLED;
+
+    @Autowired
+    MongoOperations mongoOperations;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean built;
+    private BitSet live;
+    private Map<Long, Integer> byDni;
+    private long[] dnis;
+    // values[ordinal][field]
+    private String[][] values;
+    // bitmaps[field] by value
+    private List<Map<String, BitSet>> bitmaps;
+
+    public boolean isReady()
+    {
+        return built;
+    }
+
+    public FacetResultDTO query(FacetQueryDTO facetQuery)
+    {
+        if (!FACETS_ENABLED)
+        {
+            throw new IllegalArgumentException(
+                    "The facet index is disabled, see people-directory.search.facets.enabled");
+        }
+        int[] facetFields = facetQuery.getFacets().stream().mapToInt(PersonFacetIndex::fieldIndex).toArray();
+        ensureBuilt();
+        lock.readLock().lock();
+        try
+        {
+            BitSet matches = facetQuery.getFilter() == null ? (BitSet) live.clone() : evaluate(facetQuery.getFilter());
+            FacetResultDTO result = new FacetResultDTO();
+            result.setCount(matches.cardinality());
+            BitSet scratch = new BitSet(matches.length());
+            for (int field : facetFields)
+            {
+                List<Map.Entry<String, Integer>> counts = new ArrayList<>();
+                for (Map.Entry<String, BitSet> value : bitmaps.get(field).entrySet())
+                {
+                    scratch.clear();
+                    scratch.or(matches);
+                    scratch.and(value.getValue());
+                    int count = scratch.cardinality();
+                    if (count > 0)
+                    {
+                        counts.add(new AbstractMap.SimpleEntry<>(value.getKey(), count));
+                    }
+                }
+                counts.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()));
+                Map<String, Integer> facet = new LinkedHashMap<>();
+                counts.forEach(count -> facet.put(count.getKey(), count.getValue()));
+                result.getFacets().put(FIELD_NAMES[field], facet);
+            }
+            return result;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onSaved(Collection<Person> persons)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (!built)
+            {
+                // the build reads the collection as it is now; checked under the lock so a write is never dropped
+                // while rebuild() streams the collection
+                return;
+            }
+            for (Person person : persons)
+            {
+                remove(byDni.get(person.getDni()));
+                add(person);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(Collection<Person> persons)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (!built)
+            {
+                return;
+            }
+            for (Person person : persons)
+            {
+                remove(byDni.get(person.getDni()));
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the persons collection again, dropping the current index.
+     */
+    public void rebuild()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            live = new BitSet();
+            byDni = new HashMap<>();
+            dnis = new long[64];
+            values = new String[64][];
+            bitmaps = new ArrayList<>();
+            for (int field = 0; field < FIELD_NAMES.length; field++)
+            {
+                bitmaps.add(new HashMap<>());
+            }
+            Query query = new Query();
+            query.fields().include("dni");
+            FIELDS.keySet().forEach(query.fields()::include);
+            try (CloseableIterator<Person> cursor = mongoOperations.stream(query, Person.class))
+            {
+                while (cursor.hasNext())
+                {
+                    add(cursor.next());
+                }
+            }
+            built = true;
+            stopWatch.stop();
+            logger.debug("rebuild(): {} persons indexed in {} ms", byDni.size(), stopWatch.getTotalTimeMillis());
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureBuilt()
+    {
+        if (!built)
+        {
+            lock.writeLock().lock();
+            try
+            {
+                if (!built)
+                {
+                    rebuild();
+                }
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private BitSet evaluate(FacetFilterDTO filter)
+    {
+        if (filter.getField() != null)
+        {
+            Map<String, BitSet> fieldBitmaps = bitmaps.get(fieldIndex(filter.getField()));
+            BitSet result = new BitSet();
+            if (filter.getValues() != null)
+            {
+                for (String value : filter.getValues())
+                {
+                    BitSet bitmap = fieldBitmaps.get(value);
+                    if (bitmap != null)
+                    {
+                        result.or(bitmap);
+                    }
+                }
+            }
+            return result;
+        }
+        if (filter.getAnd() != null && !filter.getAnd().isEmpty())
+        {
+            BitSet result = evaluate(filter.getAnd().get(0));
+            for (int i = 1; i < filter.getAnd().size() && !result.isEmpty(); i++)
+            {
+                result.and(evaluate(filter.getAnd().get(i)));
+            }
+            return result;
+        }
+        if (filter.getOr() != null)
+        {
+            BitSet result = new BitSet();
+            filter.getOr().forEach(operand -> result.or(evaluate(operand)));
+            return result;
+        }
+        if (filter.getNot() != null)
+        {
+            BitSet result = (BitSet) live.clone();
+            result.andNot(evaluate(filter.getNot()));
+            return result;
+        }
+        throw new IllegalArgumentException("Empty facet filter, expected one of field, and, or, not");
+    }
+
+    private void add(Person person)
+    {
+        // lowest free ordinal, deleted ones are reused first
+        int ordinal = live.nextClearBit(0);
+        if (ordinal == dnis.length)
+        {
+            dnis = Arrays.copyOf(dnis, ordinal * 2);
+            values = Arrays.copyOf(values, ordinal * 2);
+        }
+        String[] personValues = new String[FIELD_NAMES.length];
+        int field = 0;
+        for (Function<Person, String> getter : FIELDS.values())
+        {
+            String value = getter.apply(person);
+            if (value != null)
+            {
+                bitmaps.get(field).computeIfAbsent(value, key -> new BitSet()).set(ordinal);
+            }
+            personValues[field++] = value;
+        }
+        dnis[ordinal] = person.getDni();
+        values[ordinal] = personValues;
+        live.set(ordinal);
+        byDni.put(person.getDni(), ordinal);
+    }
+
+    private void remove(Integer ordinal)
+    {
+        if (ordinal == null)
+        {
+            return;
+        }
+        for (int field = 0; field < FIELD_NAMES.length; field++)
+        {
+            String value = values[ordinal][field];
+            if (value != null)
+            {
+                BitSet bitmap = bitmaps.get(field).get(value);
+                bitmap.clear(ordinal);
+                if (bitmap.isEmpty())
+                {
+                    bitmaps.get(field).remove(value);
+                }
+            }
+        }
+        values[ordinal] = null;
+        byDni.remove(dnis[ordinal]);
+        live.clear(ordinal);
+    }
+
+    private static int fieldIndex(String field)
+    {
+        int index = Arrays.asList(FIELD_NAMES).indexOf(field);
+        if (index < 0)
+        {
+            throw new IllegalArgumentException("Unsupported facet field: " + field + ", expected one of "
+                    + Arrays.toString(FIELD_NAMES));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,42 @@
+package com.jordanec.peopledirectory.search;
+
+import com.jordanec.peopledirectory.model.Person;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Low-cardinality person fields indexed by {@link PersonFacetIndex} and counted by the person counters, with the
+ * value every person takes for them.
+ */
+public final class PersonFacets
+{
+    public static final String COUNTRY = "country";
+
+    // country is the catalog id, the name for persons whose country is not in the catalog
+    public static final Map<String, Function<Person, String>> FIELDS;
+    static
+    {
+        Map<String, Function<Person, String>> fields = new LinkedHashMap<>();
+        fields.put("gender", Person::getGender);
+        fields.put("color", Person::getColor);
+        fields.put("frequency", Person::getFrequency);
+        fields.put("language", Person::getLanguage);
+        fields.put("shirtSize", Person::getShirtSize);
+        fields.put(COUNTRY, PersonFacets::countryKey);
+        FIELDS = Collections.unmodifiableMap(fields);
+    }
+
+    private PersonFacets()
+    {
+    }
+
+    public static String countryKey(Person person)
+    {
+        return person.getCountry() == null ? null
+                : StringUtils.defaultIfBlank(person.getCountry().getId(), person.getCountry().getName());
+    }
+}
@@ -0,0 +1,488 @@
+package com.jordanec.peopledirectory.search;
+
+import com.jordanec.peopledirectory.dto.TypeaheadHitDTO;
+import com.jordanec.peopledirectory.model.Person;
+import com.jordanec.peopledirectory.service.PersonIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-process name index over persons for typeahead: firstName, lastName, email, company and university are
+ * normalized (lower case, no diacritics), split into tokens and indexed in a {@link TrigramIndex}. Built from the
+ * persons collection on the first query and kept current afterwards by the write paths of the person service.
+ * Replaced and deleted persons are tombstoned and the index is compacted in memory once half of it is dead.
+ */
+@Component
+public class PersonTypeaheadIndex implements PersonIndex
+{
+    private static final String[] FIELDS = {"firstName", "lastName", "email", "company", "university"};
+    private static final int[] FIELD_WEIGHTS = {5, 4, 2, 1, 1};
+    private static final int FIRST_NAME = 0;
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int SUBSTRING = 1;
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern PLAIN_TOKEN = Pattern.compile("[\\p{L}\\p{N}]{3,}");
+
+    private final Logger logger = LoggerFactory.getLogger(PersonTypeaheadIndex.class);
+
+    @Value("${people-directory.search.typeahead.enabled:true}")
+    private boolean TYPEAHEAD_ENABLED;
+    // upper bound of candidates scored per query, keeps one or two character queries cheap on large directories
+    @Value("${people-directory.search.typeahead.max-candidates:5000}")
+    private int MAX_CANDIDATES;
+
+    @Autowired
+    MongoOperations mongoOperations;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean built;
+    private TrigramIndex trigrams;
+    private Entries entries;
+    private Map<Long, Integer> byDni;
+
+    public boolean isReady()
+    {
+        return built;
+    }
+
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return built ? byDni.size() : 0;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Best {@code limit} persons whose fields contain every token of {@code q}, as a prefix of one of their tokens
+     * for tokens of one or two characters and anywhere in a token otherwise. Empty when the index is disabled.
+     */
+    public List<TypeaheadHitDTO> search(String q, int limit)
+    {
+        String[] tokens = tokenize(q);
+        if (!TYPEAHEAD_ENABLED || tokens.length == 0 || limit <= 0)
+        {
+            return new ArrayList<>();
+        }
+        ensureBuilt();
+        lock.readLock().lock();
+        try
+        {
+            int[] candidates = candidates(tokens);
+            PriorityQueue<int[]> top = new PriorityQueue<>(limit + 1,
+                    Comparator.<int[]>comparingInt(hit -> hit[1]).thenComparingInt(hit -> -hit[0]));
+            int scored = 0;
+            for (int i = 0; i < candidates.length && scored < MAX_CANDIDATES; i++)
+            {
+                int doc = candidates[i];
+                if (entries.deleted.get(doc))
+                {
+                    continue;
+                }
+                scored++;
+                int score = score(doc, tokens);
+                if (score > 0)
+                {
+                    top.add(new int[] {doc, score});
+                    if (top.size() > limit)
+                    {
+                        top.poll();
+                    }
+                }
+            }
+            TypeaheadHitDTO[] hits = new TypeaheadHitDTO[top.size()];
+            for (int i = hits.length - 1; i >= 0; i--)
+            {
+                int[] hit = top.poll();
+                hits[i] = toHit(hit[0], hit[1]);
+            }
+            return new ArrayList<>(Arrays.asList(hits));
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Dnis of the persons whose first name contains {@code q} (case sensitive, as the regex of
+     * {@code findByFirstNameLike}), empty when the index can't answer it: disabled, or {@code q} shorter than three
+     * characters or not a plain word.
+     */
+    public Optional<List<Long>> findDnisByFirstNameContaining(String q)
+    {
+        if (!TYPEAHEAD_ENABLED || q == null || !PLAIN_TOKEN.matcher(q).matches())
+        {
+            return Optional.empty();
+        }
+        ensureBuilt();
+        lock.readLock().lock();
+        try
+        {
+            List<Long> dnis = new ArrayList<>();
+            for (int doc : trigrams.candidates(normalize(q)))
+            {
+                String firstName = entries.display[doc][FIRST_NAME];
+                if (!entries.deleted.get(doc) && firstName != null && firstName.contains(q))
+                {
+                    dnis.add(entries.dnis[doc]);
+                }
+            }
+            return Optional.of(dnis);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onSaved(Collection<Person> persons)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            // the build reads the collection as it is now, a write racing it waits here and is applied after it
+            if (!built)
+            {
+                return;
+            }
+            for (Person person : persons)
+            {
+                Integer previous = byDni.get(person.getDni());
+                if (person.getId() != null && entries.byId.containsKey(person.getId()))
+                {
+                    // the dni of a person may change
+                    remove(entries.byId.get(person.getId()));
+                }
+                // bulk upserts don't hand back the generated id, keep the one already known
+                String id = person.getId() != null || previous == null ? person.getId() : entries.ids[previous];
+                remove(previous);
+                add(id, person);
+            }
+            compactIfNeeded();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(Collection<Person> persons)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (!built)
+            {
+                return;
+            }
+            for (Person person : persons)
+            {
+                // deletes go by dni, a person deleted by id carries both
+                Integer doc = byDni.get(person.getDni());
+                remove(doc != null || person.getId() == null ? doc : entries.byId.get(person.getId()));
+            }
+            compactIfNeeded();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the persons collection again, dropping the current index.
+     */
+    public void rebuild()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            reset();
+            Query query = new Query();
+            query.fields().include("dni");
+            for (String field : FIELDS)
+            {
+                query.fields().include(field);
+            }
+            try (CloseableIterator<Person> cursor = mongoOperations.stream(query, Person.class))
+            {
+                while (cursor.hasNext())
+                {
+                    Person person = cursor.next();
+                    add(person.getId(), person);
+                }
+            }
+            built = true;
+            stopWatch.stop();
+            logger.debug("rebuild(): {} persons, {} trigrams indexed in {} ms", byDni.size(),
+                    trigrams.getTrigramCount(), stopWatch.getTotalTimeMillis());
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureBuilt()
+    {
+        if (!built)
+        {
+            lock.writeLock().lock();
+            try
+            {
+                if (!built)
+                {
+                    rebuild();
+                }
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void reset()
+    {
+        trigrams = new TrigramIndex();
+        entries = new Entries();
+        byDni = new HashMap<>();
+    }
+
+    private void add(String id, Person person)
+    {
+        String[] display = new String[FIELDS.length];
+        display[0] = person.getFirstName();
+        display[1] = person.getLastName();
+        display[2] = person.getEmail();
+        display[3] = person.getCompany();
+        display[4] = person.getUniversity();
+        add(id, person.getDni(), display);
+    }
+
+    private void add(String id, long dni, String[] display)
+    {
+        String[][] tokens = new String[FIELDS.length][];
+        for (int field = 0; field < FIELDS.length; field++)
+        {
+            tokens[field] = tokenize(display[field]);
+        }
+        int doc = entries.add(id, dni, display, tokens);
+        for (String[] fieldTokens : tokens)
+        {
+            for (String token : fieldTokens)
+            {
+                trigrams.add(doc, token);
+            }
+        }
+        byDni.put(dni, doc);
+    }
+
+    private void remove(Integer doc)
+    {
+        if (doc == null || entries.deleted.get(doc))
+        {
+            return;
+        }
+        entries.deleted.set(doc);
+        byDni.remove(entries.dnis[doc]);
+        if (entries.ids[doc] != null)
+        {
+            entries.byId.remove(entries.ids[doc]);
+        }
+    }
+
+    private void compactIfNeeded()
+    {
+        if (entries.deleted.cardinality() > entries.size / 2)
+        {
+            compact();
+        }
+    }
+
+    // re-adds the live entries to a fresh index, without reading Mongo
+    private void compact()
+    {
+        Entries live = entries;
+        reset();
+        for (int doc = 0; doc < live.size; doc++)
+        {
+            if (!live.deleted.get(doc))
+            {
+                add(live.ids[doc], live.dnis[doc], live.display[doc]);
+            }
+        }
+        logger.debug("compact(): {} persons left", byDni.size());
+    }
+
+    private int[] candidates(String[] tokens)
+    {
+        int[] result = null;
+        for (String token : tokens)
+        {
+            int[] docs = trigrams.candidates(token);
+            result = result == null ? docs : intersect(result, docs);
+            if (result.length == 0)
+            {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // every query token has to match some field, the best field counts
+    private int score(int doc, String[] queryTokens)
+    {
+        int score = 0;
+        for (String queryToken : queryTokens)
+        {
+            int best = 0;
+            for (int field = 0; field < FIELDS.length; field++)
+            {
+                for (String token : entries.tokens[doc][field])
+                {
+                    best = Math.max(best, FIELD_WEIGHTS[field] * match(token, queryToken));
+                }
+            }
+            if (best == 0)
+            {
+                // trigram false positive
+                return 0;
+            }
+            score += best;
+        }
+        return score;
+    }
+
+    private static int match(String token, String queryToken)
+    {
+        if (token.equals(queryToken))
+        {
+            return EXACT;
+        }
+        if (token.startsWith(queryToken))
+        {
+            return PREFIX;
+        }
+        return queryToken.length() >= 3 && token.contains(queryToken) ? SUBSTRING : 0;
+    }
+
+    private TypeaheadHitDTO toHit(int doc, int score)
+    {
+        TypeaheadHitDTO hit = new TypeaheadHitDTO();
+        hit.setId(entries.ids[doc]);
+        hit.setDni(entries.dnis[doc]);
+        hit.setFirstName(entries.display[doc][0]);
+        hit.setLastName(entries.display[doc][1]);
+        hit.setEmail(entries.display[doc][2]);
+        hit.setScore(score);
+        return hit;
+    }
+
+    static String normalize(String value)
+    {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    static String[] tokenize(String value)
+    {
+        if (value == null)
+        {
+            return new String[0];
+        }
+        return Arrays.stream(TOKEN_SEPARATOR.split(normalize(value)))
+                .filter(token -> !token.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static int[] intersect(int[] left, int[] right)
+    {
+        int[] result = new int[Math.min(left.length, right.length)];
+        int size = 0;
+        for (int l = 0, r = 0; l < left.length && r < right.length; )
+        {
+            if (left[l] == right[r])
+            {
+                result[size++] = left[l];
+                l++;
+                r++;
+            }
+            else if (left[l] < right[r])
+            {
+                l++;
+            }
+            else
+            {
+                r++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // per ordinal columns, ordinals are never reused until the next compaction
+    private static final class Entries
+    {
+        private String[] ids = new String[64];
+        private long[] dnis = new long[64];
+        private String[][] display = new String[64][];
+        private String[][][] tokens = new String[64][][];
+        private final BitSet deleted = new BitSet();
+        private final Map<String, Integer> byId = new HashMap<>();
+        private int size;
+
+        private int add(String id, long dni, String[] displayFields, String[][] fieldTokens)
+        {
+            if (size == dnis.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+                dnis = Arrays.copyOf(dnis, size * 2);
+                display = Arrays.copyOf(display, size * 2);
+                tokens = Arrays.copyOf(tokens, size * 2);
+            }
+            ids[size] = id;
+            dnis[size] = dni;
+            display[size] = displayFields;
+            tokens[size] = fieldTokens;
+            if (id != null)
+            {
+                byId.put(id, size);
+            }
+            return size++;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.jordanec.peopledirectory.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trigram inverted index over normalized tokens. Every token is indexed with two leading pad characters, so the
+ * padded trigrams answer prefix queries of one or two characters and the inner ones substring queries of three
+ * characters or more. Posting lists are sorted primitive int arrays of document ordinals; documents must be added
+ * in increasing ordinal order. Not thread safe.
+ */
+public final class TrigramIndex
+{
+    private static final char PAD = ' ';
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    public void add(int doc, String token)
+    {
+        String padded = "" + PAD + PAD + token;
+        for (int i = 0; i + 3 <= padded.length(); i++)
+        {
+            postings.computeIfAbsent(key(padded, i), key -> new Postings()).add(doc);
+        }
+    }
+
+    /**
+     * Ordinals of the documents with a token starting with {@code token} (one or two characters) or containing it
+     * (three or more), in increasing order. Trigram matches of longer tokens may be false positives.
+     */
+    public int[] candidates(String token)
+    {
+        if (token.isEmpty())
+        {
+            return EMPTY;
+        }
+        List<Postings> lists = new ArrayList<>();
+        if (token.length() < 3)
+        {
+            String padded = (token.length() == 1 ? "" + PAD + PAD : "" + PAD) + token;
+            lists.add(postings.get(key(padded, 0)));
+        }
+        else
+        {
+            for (int i = 0; i + 3 <= token.length(); i++)
+            {
+                lists.add(postings.get(key(token, i)));
+            }
+        }
+        if (lists.contains(null))
+        {
+            return EMPTY;
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        int[] result = Arrays.copyOf(lists.get(0).docs, lists.get(0).size);
+        int size = result.length;
+        for (int l = 1; l < lists.size() && size > 0; l++)
+        {
+            size = retain(result, size, lists.get(l));
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    public int getTrigramCount()
+    {
+        return postings.size();
+    }
+
+    // keeps the elements of result[0..size) present in postings, both sorted; returns the new size
+    private static int retain(int[] result, int size, Postings postings)
+    {
+        int kept = 0;
+        int from = 0;
+        for (int i = 0; i < size; i++)
+        {
+            int found = Arrays.binarySearch(postings.docs, from, postings.size, result[i]);
+            if (found >= 0)
+            {
+                result[kept++] = result[i];
+                from = found + 1;
+            }
+            else
+            {
+                from = -found - 1;
+            }
+            if (from >= postings.size)
+            {
+                break;
+            }
+        }
+        return kept;
+    }
+
+    private static long key(String text, int from)
+    {
+        return ((long) text.charAt(from) << 32) | ((long) text.charAt(from + 1) << 16) | text.charAt(from + 2);
+    }
+
+    private static final class Postings
+    {
+        private int[] docs = new int[4];
+        private int size;
+
+        private void add(int doc)
+        {
+            // a trigram repeated within the same document is stored once
+            if (size > 0 && docs[size - 1] == doc)
+            {
+                return;
+            }
+            if (size == docs.length)
+            {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.model.Country;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Published after countries are written. {@code countries} holds the written countries when they are known,
+ * when it is empty listeners have to reload the whole catalog (seeding, raw document writes).
+ */
+public class CountryCatalogChangedEvent extends ApplicationEvent
+{
+    private static final long serialVersionUID = 1L;
+    private final transient List<Country> countries;
+
+    public CountryCatalogChangedEvent(Object source)
+    {
+        this(source, Collections.emptyList());
+    }
+
+    public CountryCatalogChangedEvent(Object source, List<Country> countries)
+    {
+        super(source);
+        this.countries = countries;
+    }
+
+    public List<Country> getCountries()
+    {
+        return countries;
+    }
+
+    public boolean isFullReload()
+    {
+        return countries.isEmpty();
+    }
+}
@@ -0,0 +1,175 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.dto.CacheStatsDTO;
+import com.jordanec.peopledirectory.dto.CountryDTO;
+import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.repository.CountryRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process registry of countries (without geometry) keyed by id, name, case-folded name and ISO code.
+ * Lookups read an immutable snapshot without locking; writes copy the snapshot and swap it. The registry is
+ * (re)loaded when a {@link CountryCatalogChangedEvent} is published, which happens after seeding and after every
+ * write through {@link CountryServiceImpl}.
+ */
+@Component
+public class CountryRegistry
+{
+    private final Logger logger = LoggerFactory.getLogger(CountryRegistry.class);
+
+    @Autowired
+    CountryRepository countryRepository;
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap());
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public Optional<CountryDTO> findByName(String name)
+    {
+        if (StringUtils.isBlank(name))
+        {
+            return Optional.empty();
+        }
+        Snapshot current = snapshot;
+        CountryDTO country = current.byName.get(name);
+        if (country == null)
+        {
+            country = current.byFoldedName.get(fold(name));
+        }
+        return record(country);
+    }
+
+    public Optional<CountryDTO> findByCode(String code)
+    {
+        if (StringUtils.isBlank(code))
+        {
+            return Optional.empty();
+        }
+        return record(snapshot.byCode.get(fold(code)));
+    }
+
+    public Optional<CountryDTO> findById(String id)
+    {
+        if (id == null)
+        {
+            return Optional.empty();
+        }
+        return record(snapshot.byId.get(id));
+    }
+
+    public int size()
+    {
+        return snapshot.byId.size();
+    }
+
+    public CacheStatsDTO getStats()
+    {
+        return CacheStatsDTO.of("countryRegistry", size(), hits.sum(), misses.sum());
+    }
+
+    @EventListener
+    public void onCountryCatalogChanged(CountryCatalogChangedEvent event)
+    {
+        if (event.isFullReload())
+        {
+            reload();
+        }
+        else
+        {
+            register(event.getCountries());
+        }
+    }
+
+    public synchronized void reload()
+    {
+        Map<String, CountryDTO> byId = new HashMap<>();
+        for (Country country : countryRepository.findAllWithoutGeometry())
+        {
+            byId.put(country.getId(), toDTO(country));
+        }
+        snapshot = new Snapshot(byId);
+        logger.debug("reload(): {} countries loaded", byId.size());
+    }
+
+    public synchronized void register(List<Country> countries)
+    {
+        Map<String, CountryDTO> byId = new HashMap<>(snapshot.byId);
+        for (Country country : countries)
+        {
+            if (country.getId() != null)
+            {
+                byId.put(country.getId(), toDTO(country));
+            }
+        }
+        snapshot = new Snapshot(byId);
+    }
+
+    private Optional<CountryDTO> record(CountryDTO country)
+    {
+        if (country == null)
+        {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(country);
+    }
+
+    private static String fold(String value)
+    {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static CountryDTO toDTO(Country country)
+    {
+        CountryDTO countryDTO = new CountryDTO();
+        countryDTO.setId(country.getId());
+        countryDTO.setName(country.getName());
+        countryDTO.setCode(country.getCode());
+        countryDTO.setCapital(country.getCapital());
+        countryDTO.setRegion(country.getRegion());
+        countryDTO.setCurrency(country.getCurrency());
+        countryDTO.setLanguage(country.getLanguage());
+        countryDTO.setFlag(country.getFlag());
+        countryDTO.setPopulation(country.getPopulation());
+        return countryDTO;
+    }
+
+    private static final class Snapshot
+    {
+        private final Map<String, CountryDTO> byId;
+        private final Map<String, CountryDTO> byName = new HashMap<>();
+        private final Map<String, CountryDTO> byFoldedName = new HashMap<>();
+        private final Map<String, CountryDTO> byCode = new HashMap<>();
+
+        private Snapshot(Map<String, CountryDTO> byId)
+        {
+            this.byId = Collections.unmodifiableMap(byId);
+            for (CountryDTO country : byId.values())
+            {
+                if (country.getName() != null)
+                {
+                    byName.put(country.getName(), country);
+                    byFoldedName.put(fold(country.getName()), country);
+                }
+                if (country.getCode() != null)
+                {
+                    byCode.put(fold(country.getCode()), country);
+                }
+            }
+        }
+    }
+}
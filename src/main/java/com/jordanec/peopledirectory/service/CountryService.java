@@ -1,9 +1,13 @@
 package com.jordanec.peopledirectory.service;
 
+import com.jordanec.peopledirectory.geo.GeometryDetail;
 import com.jordanec.peopledirectory.model.Country;
 import org.bson.Document;
+import org.springframework.data.util.CloseableIterator;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface CountryService
@@ -18,9 +22,14 @@ public interface CountryService
     Country save(Country country);
 //    void delete(String id);
     List<Country> findAll();
+    List<Country> findAll(GeometryDetail detail);
+    CloseableIterator<Country> streamAll();
     Optional<Country> findByName(String name);
+    Optional<Country> findByName(String name, GeometryDetail detail);
 
     Document createDocument(Document country);
 
     Optional<Country> getCountryOfCurrentLocation(Long dni);
+
+    Map<Long, Country> getCountriesOfCurrentLocation(Collection<Long> dnis);
 }
@@ -1,62 +1,134 @@
 package com.jordanec.peopledirectory.service;
 
+import com.jordanec.peopledirectory.geo.CountrySpatialIndex;
+import com.jordanec.peopledirectory.geo.GeometryDetail;
 import com.jordanec.peopledirectory.model.Country;
 import com.jordanec.peopledirectory.repository.CountryRepository;
 import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class CountryServiceImpl implements CountryService
 {
+    private final Logger logger = LoggerFactory.getLogger(CountryServiceImpl.class);
+
+    @Value("${people-directory.geo.batch.max-size:10000}")
+    private int BATCH_MAX_SIZE;
+    @Value("${people-directory.geo.batch.parallel-threshold:256}")
+    private int BATCH_PARALLEL_THRESHOLD;
+    @Value("${people-directory.geo.batch.fallback-threads:4}")
+    private int BATCH_FALLBACK_THREADS;
+
     @Autowired
     CountryRepository countryRepository;
+    @Autowired
+    PersonService personService;
+    @Autowired
+    CountrySpatialIndex countrySpatialIndex;
+    @Autowired
+    ApplicationEventPublisher applicationEventPublisher;
+
+    // Mongo fallback queries of getCountriesOfCurrentLocation, kept off the common ForkJoinPool
+    private ExecutorService fallbackExecutor;
+
+    @PostConstruct
+    void init()
+    {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("country-batch-");
+        threadFactory.setDaemon(true);
+        fallbackExecutor = Executors.newFixedThreadPool(BATCH_FALLBACK_THREADS, threadFactory);
+    }
 
     @Override
     public List<Country> create(List<Country> countries)
     {
-        return countryRepository.insert(countries);
+        List<Country> inserted = countryRepository.insert(countries);
+        applicationEventPublisher.publishEvent(new CountryCatalogChangedEvent(this, inserted));
+        return inserted;
     }
 
     @Override
     public List<Country> save(List<Country> countries)
     {
-        return countryRepository.saveAll(countries);
+        List<Country> saved = countryRepository.saveAll(countries);
+        applicationEventPublisher.publishEvent(new CountryCatalogChangedEvent(this, saved));
+        return saved;
     }
 
     @Override
     public Country create(Country country)
     {
-        return countryRepository.insert(country);
+        Country inserted = countryRepository.insert(country);
+        applicationEventPublisher.publishEvent(new CountryCatalogChangedEvent(this, Collections.singletonList(inserted)));
+        return inserted;
     }
 
     @Override
     public Country save(Country country)
     {
-        Optional<Country> countryOptional = countryRepository.findByName(country.getName());
-        countryOptional.ifPresent(value -> country.setId(value.getId()));
-        return countryRepository.save(country);
+        Country saved = countryRepository.upsertByName(country);
+        applicationEventPublisher.publishEvent(new CountryCatalogChangedEvent(this, Collections.singletonList(saved)));
+        return saved;
     }
 
     @Override
     public List<Country> findAll()
     {
-        return countryRepository.findAll();
+        return findAll(GeometryDetail.FULL);
+    }
+
+    @Override
+    public List<Country> findAll(GeometryDetail detail)
+    {
+        return countryRepository.findAll(detail);
+    }
+
+    @Override
+    public CloseableIterator<Country> streamAll()
+    {
+        return countryRepository.streamAll();
     }
 
     @Override
     public Optional<Country> findByName(String name)
     {
-        return countryRepository.findByName(name);
+        return findByName(name, GeometryDetail.FULL);
+    }
+
+    @Override
+    public Optional<Country> findByName(String name, GeometryDetail detail)
+    {
+        return countryRepository.findByName(name, detail);
     }
 
     @Override
     public Document createDocument(Document country)
     {
-        return countryRepository.createDocument(country);
+        Document created = countryRepository.createDocument(country);
+        applicationEventPublisher.publishEvent(new CountryCatalogChangedEvent(this));
+        return created;
     }
 
     @Override
@@ -64,4 +136,44 @@ public class CountryServiceImpl implements CountryService
     {
         return countryRepository.getCountryOfCurrentLocation(dni);
     }
+
+    /**
+     * All the locations are read with one query. They are resolved in memory by the spatial index, split across
+     * cores from people-directory.geo.batch.parallel-threshold locations, or while it is not ready by one Mongo query
+     * per location on the fallback executor. DNIs without a person, a location or a country containing it are left
+     * out of the map.
+     *
+     * @throws IllegalArgumentException when there are more than people-directory.geo.batch.max-size DNIs
+     */
+    @Override
+    public Map<Long, Country> getCountriesOfCurrentLocation(Collection<Long> dnis)
+    {
+        if (dnis.size() > BATCH_MAX_SIZE)
+        {
+            throw new IllegalArgumentException("At most " + BATCH_MAX_SIZE + " dnis per batch, got " + dnis.size());
+        }
+        Map<Long, GeoJsonPoint> locations = personService.findCurrentLocationsByDni(dnis);
+        Map<Long, Country> countries = new HashMap<>(locations.size());
+        if (countrySpatialIndex.isReady())
+        {
+            // CPU only over an immutable snapshot, nothing blocks on the common pool
+            Stream<Map.Entry<Long, GeoJsonPoint>> entries = locations.size() >= BATCH_PARALLEL_THRESHOLD
+                    ? locations.entrySet().parallelStream() : locations.entrySet().stream();
+            entries.map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(),
+                    countrySpatialIndex.findCountryAt(entry.getValue().getX(), entry.getValue().getY())))
+                    .filter(entry -> entry.getValue().isPresent())
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().get()))
+                    .forEach(countries::put);
+        }
+        else
+        {
+            Map<Long, CompletableFuture<Optional<Country>>> futures = new HashMap<>(locations.size());
+            locations.forEach((dni, location) -> futures.put(dni,
+                    CompletableFuture.supplyAsync(() -> countryRepository.findCountryAt(location), fallbackExecutor)));
+            futures.forEach((dni, future) -> future.join().ifPresent(country -> countries.put(dni, country)));
+        }
+        logger.debug("getCountriesOfCurrentLocation(): {} dnis, {} with location, {} resolved", dnis.size(),
+                locations.size(), countries.size());
+        return countries;
+    }
 }
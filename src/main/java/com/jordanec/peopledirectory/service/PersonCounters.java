@@ -0,0 +1,248 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.config.BootstrapReadiness;
+import com.jordanec.peopledirectory.model.Person;
+import com.jordanec.peopledirectory.model.PersonCounter;
+import com.jordanec.peopledirectory.search.PersonFacets;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.FacetOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Person totals per PersonFacets value (country, gender, ...) and overall, stored one document per counter in
+ * {@code personCounters} so that every count is a read by _id. Writes through {@link PersonServiceImpl} apply
+ * their deltas with {@code $inc} in one unordered bulk right after the person write; {@link #reconcile()}
+ * recounts the persons collection periodically and on readiness, which corrects the drift left by failed counter
+ * updates and by writes made outside the service.
+ */
+@Component
+public class PersonCounters
+{
+    public static final String TOTAL = "total";
+
+    private final Logger logger = LoggerFactory.getLogger(PersonCounters.class);
+
+    @Value("${people-directory.counters.enabled:true}")
+    private boolean COUNTERS_ENABLED;
+
+    @Autowired
+    MongoOperations mongoOperations;
+    @Autowired
+    BootstrapReadiness bootstrapReadiness;
+
+    public boolean isEnabled()
+    {
+        return COUNTERS_ENABLED;
+    }
+
+    /**
+     * Applies a write: every person in {@code removed} as it was before it, every person in {@code added} as it
+     * is after it. A replaced person is in both.
+     */
+    public void apply(Collection<Person> removed, Collection<Person> added)
+    {
+        if (!COUNTERS_ENABLED)
+        {
+            return;
+        }
+        Map<String, Long> deltas = new HashMap<>();
+        removed.forEach(person -> addDeltas(deltas, person, -1));
+        added.forEach(person -> addDeltas(deltas, person, 1));
+        deltas.values().removeIf(delta -> delta == 0);
+        if (deltas.isEmpty())
+        {
+            return;
+        }
+        BulkOperations bulkOperations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                PersonCounter.class);
+        deltas.forEach((id, delta) -> {
+            int separator = id.indexOf(':');
+            bulkOperations.upsert(new Query(Criteria.where("_id").is(id)), new Update().inc("count", delta)
+                    .setOnInsert("facet", id.substring(0, separator))
+                    .setOnInsert("value", id.substring(separator + 1)));
+        });
+        try
+        {
+            bulkOperations.execute();
+        }
+        catch (RuntimeException ex)
+        {
+            // the person write is done, the counters catch up at the next reconciliation
+            logger.warn("apply(): {} counters not updated, left to the reconciliation", deltas.size(), ex);
+        }
+    }
+
+    public long get(String facet, String value)
+    {
+        PersonCounter counter = mongoOperations.findById(PersonCounter.id(facet, value), PersonCounter.class);
+        return counter == null ? 0 : counter.getCount();
+    }
+
+    public long getTotal()
+    {
+        return get(TOTAL, TOTAL);
+    }
+
+    public List<PersonCounter> getAll(String facet)
+    {
+        return mongoOperations.find(new Query(Criteria.where("facet").is(facet).and("count").gt(0)),
+                PersonCounter.class);
+    }
+
+    @Scheduled(initialDelayString = "#{${people-directory.counters.reconcile-interval-seconds:600} * 1000}",
+            fixedDelayString = "#{${people-directory.counters.reconcile-interval-seconds:600} * 1000}")
+    public void scheduledReconcile()
+    {
+        if (COUNTERS_ENABLED && bootstrapReadiness.isAcceptingTraffic())
+        {
+            reconcile();
+        }
+    }
+
+    /*
+     * Counters never maintained (a database older than them, or counters disabled for a while) are right as soon
+     * as the bootstrap is over. Published while BootstrapReadiness is locked, so the recount runs on another thread.
+     */
+    @EventListener
+    public void onAvailabilityChange(AvailabilityChangeEvent<?> event)
+    {
+        if (COUNTERS_ENABLED && event.getState() == ReadinessState.ACCEPTING_TRAFFIC
+                && bootstrapReadiness.isAcceptingTraffic())
+        {
+            CompletableFuture.runAsync(this::reconcile).exceptionally(ex -> {
+                logger.warn("onAvailabilityChange(): reconciliation failed", ex);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Recounts every counter with one $facet aggregation over the persons collection and overwrites the ones that
+     * drifted. A person write landing between the aggregation and the overwrite can be lost from its counters
+     * until the next run.
+     *
+     * @return number of counters corrected
+     */
+    public synchronized int reconcile()
+    {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        Map<String, Long> expected = recount();
+        Map<String, Long> stored = new HashMap<>();
+        for (PersonCounter counter : mongoOperations.findAll(PersonCounter.class))
+        {
+            stored.put(counter.getId(), counter.getCount());
+        }
+
+        BulkOperations bulkOperations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                PersonCounter.class);
+        int corrected = 0;
+        for (Map.Entry<String, Long> counter : expected.entrySet())
+        {
+            if (!counter.getValue().equals(stored.get(counter.getKey())))
+            {
+                String id = counter.getKey();
+                int separator = id.indexOf(':');
+                bulkOperations.upsert(new Query(Criteria.where("_id").is(id)), new Update()
+                        .set("count", counter.getValue()).set("facet", id.substring(0, separator))
+                        .set("value", id.substring(separator + 1)));
+                corrected++;
+            }
+        }
+        for (Map.Entry<String, Long> counter : stored.entrySet())
+        {
+            if (!expected.containsKey(counter.getKey()) && counter.getValue() != 0)
+            {
+                bulkOperations.remove(new Query(Criteria.where("_id").is(counter.getKey())));
+                corrected++;
+            }
+        }
+        if (corrected > 0)
+        {
+            bulkOperations.execute();
+        }
+        stopWatch.stop();
+        if (corrected > 0)
+        {
+            logger.info("reconcile(): {} of {} counters corrected in {} ms", corrected, expected.size(),
+                    stopWatch.getTotalTimeMillis());
+        }
+        else
+        {
+            logger.debug("reconcile(): {} counters checked in {} ms", expected.size(), stopWatch.getTotalTimeMillis());
+        }
+        return corrected;
+    }
+
+    private Map<String, Long> recount()
+    {
+        FacetOperation facetOperation = Aggregation.facet(Aggregation.count().as("count")).as(TOTAL);
+        for (String facet : PersonFacets.FIELDS.keySet())
+        {
+            facetOperation = facetOperation.and(facet.equals(PersonFacets.COUNTRY)
+                    ? Aggregation.sortByCount(ConditionalOperators.ifNull("country._id").thenValueOf("country.name"))
+                    : Aggregation.sortByCount(facet)).as(facet);
+        }
+        Document facets = mongoOperations.aggregate(Aggregation.newAggregation(facetOperation),
+                mongoOperations.getCollectionName(Person.class), Document.class).getUniqueMappedResult();
+        Map<String, Long> counts = new HashMap<>();
+        if (facets == null)
+        {
+            return counts;
+        }
+        for (Document total : facets.getList(TOTAL, Document.class, Collections.emptyList()))
+        {
+            counts.put(PersonCounter.id(TOTAL, TOTAL), total.get("count", Number.class).longValue());
+        }
+        for (String facet : PersonFacets.FIELDS.keySet())
+        {
+            for (Document group : facets.getList(facet, Document.class, Collections.emptyList()))
+            {
+                // persons without a value are not counted, as in apply()
+                if (group.get("_id") != null)
+                {
+                    counts.put(PersonCounter.id(facet, group.get("_id").toString()),
+                            group.get("count", Number.class).longValue());
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void addDeltas(Map<String, Long> deltas, Person person, long delta)
+    {
+        deltas.merge(PersonCounter.id(TOTAL, TOTAL), delta, Long::sum);
+        for (Map.Entry<String, Function<Person, String>> facet : PersonFacets.FIELDS.entrySet())
+        {
+            String value = facet.getValue().apply(person);
+            if (value != null)
+            {
+                deltas.merge(PersonCounter.id(facet.getKey(), value), delta, Long::sum);
+            }
+        }
+    }
+}
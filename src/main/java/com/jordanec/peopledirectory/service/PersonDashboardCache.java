@@ -0,0 +1,140 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.dto.CacheStatsDTO;
+import com.jordanec.peopledirectory.dto.PersonDashboardDTO;
+import com.jordanec.peopledirectory.repository.PersonRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Stale-while-revalidate cache of the person dashboard. A dashboard younger than the refresh interval is served
+ * as is; an older one is still served while a single background refresh runs; only when there is none, or it is
+ * older than the max staleness (refreshes kept failing), the caller computes it, and concurrent callers wait for
+ * that one aggregation instead of running their own.
+ */
+@Component
+public class PersonDashboardCache
+{
+    // lower bounds of the age buckets after 0-17
+    static final int[] AGE_BUCKETS = {18, 30, 45, 60, 75};
+
+    private final Logger logger = LoggerFactory.getLogger(PersonDashboardCache.class);
+
+    @Value("${people-directory.dashboard.refresh-seconds:60}")
+    private long REFRESH_SECONDS;
+    @Value("${people-directory.dashboard.max-stale-seconds:900}")
+    private long MAX_STALE_SECONDS;
+
+    @Autowired
+    PersonRepository personRepository;
+
+    private Executor refreshExecutor = Executors.newSingleThreadExecutor(refreshThreadFactory());
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private volatile Entry entry;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PersonDashboardDTO get()
+    {
+        Entry current = entry;
+        if (current != null)
+        {
+            long age = clock.getAsLong() - current.loadedAt;
+            if (age < REFRESH_SECONDS * 1000)
+            {
+                hits.increment();
+                return current.dashboard;
+            }
+            if (age < MAX_STALE_SECONDS * 1000)
+            {
+                staleHits.increment();
+                refreshInBackground();
+                return current.dashboard;
+            }
+        }
+        misses.increment();
+        return load();
+    }
+
+    public CacheStatsDTO getStats()
+    {
+        return CacheStatsDTO.of("personDashboard", entry == null ? 0 : 1, hits.sum() + staleHits.sum(), misses.sum());
+    }
+
+    private synchronized PersonDashboardDTO load()
+    {
+        // another caller may have loaded it while this one waited
+        Entry current = entry;
+        if (current != null && clock.getAsLong() - current.loadedAt < REFRESH_SECONDS * 1000)
+        {
+            return current.dashboard;
+        }
+        return compute();
+    }
+
+    private synchronized PersonDashboardDTO compute()
+    {
+        long loadedAt = clock.getAsLong();
+        PersonDashboardDTO dashboard = personRepository.dashboard(LocalDate.now(), AGE_BUCKETS);
+        entry = new Entry(dashboard, loadedAt);
+        logger.debug("compute(): dashboard of {} persons computed in {} ms", dashboard.getTotal(),
+                clock.getAsLong() - loadedAt);
+        return dashboard;
+    }
+
+    private void refreshInBackground()
+    {
+        if (!refreshing.compareAndSet(false, true))
+        {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try
+            {
+                compute();
+            }
+            catch (RuntimeException ex)
+            {
+                // the stale dashboard keeps being served until MAX_STALE_SECONDS
+                logger.warn("refreshInBackground(): dashboard refresh failed", ex);
+            }
+            finally
+            {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private static CustomizableThreadFactory refreshThreadFactory()
+    {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dashboard-refresh-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    private static final class Entry
+    {
+        private final PersonDashboardDTO dashboard;
+        private final long loadedAt;
+
+        private Entry(PersonDashboardDTO dashboard, long loadedAt)
+        {
+            this.dashboard = dashboard;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
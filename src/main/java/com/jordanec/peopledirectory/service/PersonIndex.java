@@ -0,0 +1,22 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.model.Person;
+
+import java.util.Collection;
+
+/**
+ * In-process view over persons kept up to date by the write paths of {@link PersonServiceImpl}. Implementations
+ * are called after the write succeeded, on the writing thread.
+ */
+public interface PersonIndex
+{
+    /**
+     * Persons inserted or replaced, as written.
+     */
+    void onSaved(Collection<Person> persons);
+
+    /**
+     * Persons removed, identified by dni or, when the dni is unknown, by id.
+     */
+    void onDeleted(Collection<Person> persons);
+}
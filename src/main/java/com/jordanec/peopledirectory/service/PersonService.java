@@ -1,12 +1,24 @@
 package com.jordanec.peopledirectory.service;
 
+import com.jordanec.peopledirectory.dto.BulkWriteReportDTO;
+import com.jordanec.peopledirectory.dto.CacheStatsDTO;
+import com.jordanec.peopledirectory.dto.FacetQueryDTO;
+import com.jordanec.peopledirectory.dto.FacetResultDTO;
+import com.jordanec.peopledirectory.dto.KeysetPageRequestDTO;
+import com.jordanec.peopledirectory.dto.KeysetSliceDTO;
+import com.jordanec.peopledirectory.dto.PersonDashboardDTO;
+import com.jordanec.peopledirectory.dto.TypeaheadHitDTO;
 import com.jordanec.peopledirectory.model.Person;
 import com.mongodb.client.result.UpdateResult;
 import org.bson.Document;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.util.CloseableIterator;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface PersonService {
@@ -14,18 +26,29 @@ public interface PersonService {
 	boolean exists(Person person);
 	boolean existsById(String id);
 	long count();
+	// from the person counters when they are enabled, count() otherwise
+	long countFromCounters();
 	List<Person> insert(List<Person> persons);
 	List<Person> save(List<Person> persons);
+	BulkWriteReportDTO bulkInsert(List<Person> persons);
+	BulkWriteReportDTO bulkSave(List<Person> persons);
 	Person insert(Person person);
 	Person save(Person person);
 	void delete(String id);
 	List<Person> delete(List<Person> persons);
+	List<Person> delete(List<Person> persons, boolean transactional);
 	List<Person> findAll();
+	CloseableIterator<Person> streamAll();
 	Optional<Person> findByDni(Long dni);
+	Map<Long, GeoJsonPoint> findCurrentLocationsByDni(Collection<Long> dnis);
 	Optional<Document> findDocumentByDni(Long dni);
 	List<Person> findBornBetween(LocalDate start, LocalDate end);
 	List<Person> findByDateOfBirthBetweenOrderById(Date start, Date end);
 	List<Person> findByFirstNameLike(String q);
+	List<TypeaheadHitDTO> typeahead(String q, int limit);
+	FacetResultDTO facets(FacetQueryDTO facetQuery);
+	PersonDashboardDTO dashboard();
+	CacheStatsDTO getDashboardCacheStats();
 	List<Person> findByGender(String gender);
 	List<Person> findByLastNameAndFirstNameAllIgnoreCase(String lastName, String firstName);
 	List<Person> findByLastNameOrFirstNameAllIgnoreCase(String lastName, String firstName);
@@ -36,7 +59,7 @@ public interface PersonService {
 	List<Person> groupByCountry(String field, String order);
 	Document groupDocumentByCountryOrdered(String field, String order);
 	List<Person> readAllByDateOfBirthNotNullOrderByDateOfBirthDesc();
-	List<Person> lookupCountry(Long dni);
+	List<Person> lookupCountry(Long dni, List<String> countryFields);
 	Person isOlderThan(long dni, int age);
 	UpdateResult addHobbies(Person person);
 	UpdateResult pushHobbies(Person person);
@@ -48,4 +71,18 @@ public interface PersonService {
 	UpdateResult updateHobbiesGoodFrequency(Person person, Integer minFrequency);
 
 	List<Person> findByCurrentLocationWithinCountry(String name);
+	List<Person> findByCurrentLocationWithinCountry(String name, Boolean parallel);
+
+	KeysetSliceDTO<Person> findAll(KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findBornBetween(LocalDate start, LocalDate end, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByDateOfBirthBetweenOrderById(Date start, Date end, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByFirstNameLike(String q, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByGender(String gender, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByLastNameAndFirstNameAllIgnoreCase(String lastName, String firstName,
+			KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByLastNameOrFirstNameAllIgnoreCase(String lastName, String firstName,
+			KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findByMobileBetween(long start, long end, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> findDistinctPeopleByCountryIgnoreCase(String country, KeysetPageRequestDTO pageRequest);
+	KeysetSliceDTO<Person> lookupCountry(Long dni, List<String> countryFields, KeysetPageRequestDTO pageRequest);
 }
@@ -1,29 +1,90 @@
 package com.jordanec.peopledirectory.service;
 
+import com.jordanec.peopledirectory.dto.BulkItemResultDTO;
+import com.jordanec.peopledirectory.dto.BulkWriteReportDTO;
+import com.jordanec.peopledirectory.dto.CountryDTO;
+import com.jordanec.peopledirectory.dto.CacheStatsDTO;
+import com.jordanec.peopledirectory.dto.FacetQueryDTO;
+import com.jordanec.peopledirectory.dto.FacetResultDTO;
+import com.jordanec.peopledirectory.dto.KeysetPageRequestDTO;
+import com.jordanec.peopledirectory.dto.KeysetSliceDTO;
+import com.jordanec.peopledirectory.dto.PersonDashboardDTO;
+import com.jordanec.peopledirectory.dto.TypeaheadHitDTO;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
 import com.jordanec.peopledirectory.model.Country;
 import com.jordanec.peopledirectory.model.Person;
+import com.jordanec.peopledirectory.model.PersonCounter;
 import com.jordanec.peopledirectory.repository.PersonRepository;
+import com.jordanec.peopledirectory.search.PersonFacetIndex;
+import com.jordanec.peopledirectory.search.PersonFacets;
+import com.jordanec.peopledirectory.search.PersonTypeaheadIndex;
 import com.mongodb.client.result.UpdateResult;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Example;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 @Service
 public class PersonServiceImpl implements PersonService {
+	@Value("${people-directory.mongodb.bulk.batch-size:1000}")
+	private int BULK_BATCH_SIZE;
+	@Value("${people-directory.geo.within.parallel-threshold:0}")
+	private int GEO_WITHIN_PARALLEL_THRESHOLD;
+	@Value("${people-directory.geo.within.parallel-threads:8}")
+	private int GEO_WITHIN_PARALLEL_THREADS;
 	@Autowired
 	PersonRepository personRepository;
 	@Autowired
 	CountryService countryService;
+	@Autowired
+	CountryRegistry countryRegistry;
+	@Autowired(required = false)
+	MongoTransactionManager mongoTransactionManager;
+	@Autowired
+	PersonTypeaheadIndex personTypeaheadIndex;
+	@Autowired
+	PersonFacetIndex personFacetIndex;
+	@Autowired
+	PersonDashboardCache personDashboardCache;
+	@Autowired
+	PersonCounters personCounters;
+	// notified after every write, see PersonIndex
+	@Autowired(required = false)
+	List<PersonIndex> personIndexes = Collections.emptyList();
+	// per-polygon queries of findByCurrentLocationWithinCountry, bounded and kept off the common ForkJoinPool
+	private ExecutorService withinExecutor;
+
+	@PostConstruct
+	void init()
+	{
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("geo-within-");
+		threadFactory.setDaemon(true);
+		withinExecutor = Executors.newFixedThreadPool(GEO_WITHIN_PARALLEL_THREADS, threadFactory);
+	}
 
 	@Override
 	public Optional<Person> getById(String id) {
@@ -45,16 +106,34 @@ public class PersonServiceImpl implements PersonService {
 		return personRepository.count();
 	}
 
+	@Override
+	public long countFromCounters()
+	{
+		return personCounters.isEnabled() ? personCounters.getTotal() : count();
+	}
+
 	@Override
 	public List<Person> findAll() {
         return personRepository.findAll();
 	}
+
+	@Override
+	public CloseableIterator<Person> streamAll() {
+		return personRepository.streamAll();
+	}
+
 	@Override
 	public Optional<Person> findByDni(Long dni)
 	{
 		return personRepository.findByDni(dni);
 	}
 
+	@Override
+	public Map<Long, GeoJsonPoint> findCurrentLocationsByDni(Collection<Long> dnis)
+	{
+		return personRepository.findCurrentLocationsByDni(dnis);
+	}
+
 	@Override
 	public Optional<Document> findDocumentByDni(Long dni)
 	{
@@ -70,45 +149,135 @@ public class PersonServiceImpl implements PersonService {
 	@Override
 	public List<Person> insert(List<Person> persons) {
 		persons.forEach(this::assignCountryId);
-		return personRepository.insert(persons);
+		return saved(Collections.emptyList(), personRepository.insert(persons));
 	}
+	// saveAll replaces by id, the replaced documents are read first for the counters
 	@Override
 	public List<Person> save(List<Person> persons) {
 		persons.forEach(this::assignCountryId);
-		return personRepository.saveAll(persons);
+		List<Person> previous = new ArrayList<>();
+		if (personCounters.isEnabled())
+		{
+			personRepository.findAllById(persons.stream().map(Person::getId).filter(Objects::nonNull)
+					.collect(Collectors.toList())).forEach(previous::add);
+		}
+		return saved(previous, personRepository.saveAll(persons));
+	}
+
+	@Override
+	public BulkWriteReportDTO bulkInsert(List<Person> persons) {
+		persons.forEach(this::assignCountryId);
+		return saved(persons, Collections.emptyMap(), personRepository.bulkInsert(persons, BULK_BATCH_SIZE));
+	}
+
+	@Override
+	public BulkWriteReportDTO bulkSave(List<Person> persons) {
+		persons.forEach(this::assignCountryId);
+		Map<Long, Person> previousByDni = new HashMap<>();
+		if (personCounters.isEnabled())
+		{
+			personRepository.findByDniIn(persons.stream().map(Person::getDni).collect(Collectors.toSet()))
+					.forEach(previous -> previousByDni.put(previous.getDni(), previous));
+		}
+		return saved(persons, previousByDni, personRepository.bulkUpsert(persons, BULK_BATCH_SIZE));
 	}
 
 	@Override
 	public Person insert(Person person) {
 		assignCountryId(person);
-		return personRepository.insert(person);
+		Person inserted = personRepository.insert(person);
+		saved(Collections.emptyList(), Collections.singletonList(inserted));
+		return inserted;
 	}
 
+	/*
+	 * One upsert returning the stored person. Only the counters need the replaced document, that upsert returns
+	 * the previous one instead and costs a read of the id when it inserts.
+	 */
 	@Override
 	public Person save(Person person)
 	{
 		assignCountryId(person);
-		Optional<Person> personOptional = personRepository.findByDni(person.getDni());
-		personOptional.ifPresent(p -> person.setId(p.getId()));
-		return personRepository.save(person);
+		if (!personCounters.isEnabled())
+		{
+			Person stored = personRepository.upsertByDni(person);
+			saved(Collections.emptyList(), Collections.singletonList(stored));
+			return stored;
+		}
+		Person previous = personRepository.upsertByDniReturningPrevious(person);
+		saved(previous == null ? Collections.emptyList() : Collections.singletonList(previous),
+				Collections.singletonList(person));
+		return person;
 	}
 
 	@Override
 	public void delete(String id)
 	{
+		Optional<Person> person = personIndexes.isEmpty() && !personCounters.isEnabled() ? Optional.empty()
+				: personRepository.findById(id);
 		personRepository.deleteById(id);
+		person.ifPresent(deleted -> deleted(Collections.singletonList(deleted)));
 	}
 	@Override
 	public List<Person> delete(List<Person> persons)
 	{
-		return personRepository.delete(persons);
+		return delete(persons, false);
 	}
 
+	// transactional: every chunk is removed or none is
+	@Override
+	public List<Person> delete(List<Person> persons, boolean transactional)
+	{
+		List<Person> removed = new ArrayList<>();
+		if (!transactional)
+		{
+			return deleted(personRepository.delete(persons, BULK_BATCH_SIZE, removed::add), removed);
+		}
+		if (mongoTransactionManager == null)
+		{
+			throw new IllegalArgumentException(
+					"Transactions are disabled, see people-directory.mongodb.transactions.enabled");
+		}
+		// applied once the transaction committed
+		return deleted(new TransactionTemplate(mongoTransactionManager)
+				.execute(status -> personRepository.delete(persons, BULK_BATCH_SIZE, removed::add)), removed);
+	}
+
+	// served from the typeahead index when it can answer the query, only the matches are read from Mongo
 	@Override
 	public List<Person> findByFirstNameLike(String q) {
+		Optional<List<Long>> dnis = personTypeaheadIndex.findDnisByFirstNameContaining(q);
+		if (dnis.isPresent())
+		{
+			return dnis.get().isEmpty() ? new ArrayList<>() : personRepository.findByDniIn(dnis.get());
+		}
 		return personRepository.findByFirstNameLike(q);
 	}
 
+	@Override
+	public List<TypeaheadHitDTO> typeahead(String q, int limit)
+	{
+		return personTypeaheadIndex.search(q, limit);
+	}
+
+	@Override
+	public FacetResultDTO facets(FacetQueryDTO facetQuery)
+	{
+		return personFacetIndex.query(facetQuery);
+	}
+
+	@Override
+	public PersonDashboardDTO dashboard()
+	{
+		return personDashboardCache.get();
+	}
+
+	@Override
+	public CacheStatsDTO getDashboardCacheStats()
+	{
+		return personDashboardCache.getStats();
+	}
+
 	@Override
 	public List<Person> readAllByDateOfBirthNotNullOrderByDateOfBirthDesc() {
 		List<Person> personList = personRepository.readAllByDateOfBirthNotNullOrderByDateOfBirthDesc().collect(
@@ -117,17 +286,8 @@ public class PersonServiceImpl implements PersonService {
 		return personList;
 	}
 	@Override
-	public List<Person> lookupCountry(Long dni) {
-		List<Person> personList;
-		if (dni == null)
-		{
-			personList = personRepository.lookupCountry();
-		}
-		else
-		{
-			personList = personRepository.lookupCountry(dni);
-		}
-		return personList;
+	public List<Person> lookupCountry(Long dni, List<String> countryFields) {
+		return personRepository.lookupCountry(dni, countryFields);
 	}
 
 	@Override
@@ -157,19 +317,56 @@ public class PersonServiceImpl implements PersonService {
 
 	@Override
 	public List<Person> findDistinctPeopleByCountryIgnoreCase(String country) {
+		// persons keep the id of a catalog country, the name only when it was not in the catalog
+		Optional<CountryDTO> optionalCountry = countryRegistry.findByName(country);
+		if (optionalCountry.isPresent())
+		{
+			return personRepository.findByCountryId(optionalCountry.get().getId());
+		}
 		return personRepository.findDistinctPeopleByCountryIgnoreCase(country);
 	}
 
 	@Override
 	public long getCountByCountry(String country)
 	{
-		return personRepository.getCountByCountry(country);
+		// counted like they are stored: by catalog id, by name for countries not in the catalog
+		Optional<CountryDTO> optionalCountry = countryRegistry.findByName(country);
+		if (!optionalCountry.isPresent())
+		{
+			// the counters are keyed by the name as stored, the query ignores case like the registry does
+			return personRepository.getCountByCountry(country);
+		}
+		return personCounters.isEnabled()
+				? personCounters.get(PersonFacets.COUNTRY, optionalCountry.get().getId())
+				: personRepository.countByCountryId(optionalCountry.get().getId());
 	}
 
+	// read from the country counters, one small query instead of a $group over every person
 	@Override
     public List<Person> groupByCountry(String field, String order)
 	{
-        return personRepository.groupByCountry(field, order);
+		if (!personCounters.isEnabled())
+		{
+			return personRepository.groupByCountry(field, order);
+		}
+		List<Person> groups = new ArrayList<>();
+		for (PersonCounter counter : personCounters.getAll(PersonFacets.COUNTRY))
+		{
+			Person group = new Person();
+			group.setCountry(countryRegistry.findById(counter.getValue()).orElseGet(() -> {
+				CountryDTO country = new CountryDTO();
+				country.setName(counter.getValue());
+				return country;
+			}));
+			group.setTotal(counter.getCount());
+			groups.add(group);
+		}
+		Comparator<Person> comparator = field != null && field.equalsIgnoreCase("total")
+				? Comparator.comparing(Person::getTotal)
+				: Comparator.comparing(group -> group.getCountry().getName(),
+						Comparator.nullsFirst(Comparator.naturalOrder()));
+		groups.sort(order != null && order.toLowerCase().contains("desc") ? comparator.reversed() : comparator);
+		return groups;
 	}
 	@Override
     public Document groupDocumentByCountryOrdered(String field, String order)
@@ -221,6 +418,16 @@ public class PersonServiceImpl implements PersonService {
 
 	@Override
 	public List<Person> findByCurrentLocationWithinCountry(String name)
+	{
+		return findByCurrentLocationWithinCountry(name, null);
+	}
+
+	/**
+	 * @param parallel fan out one query per polygon of a MultiPolygon; when null, it is done for countries with at
+	 *                 least people-directory.geo.within.parallel-threshold polygons
+	 */
+	@Override
+	public List<Person> findByCurrentLocationWithinCountry(String name, Boolean parallel)
 	{
 		Optional<Country>  optionalCountry = countryService.findByName(name);
 		if (!optionalCountry.isPresent())
@@ -228,25 +435,139 @@ public class PersonServiceImpl implements PersonService {
 			return new ArrayList<>();
 		}
 		Country country = optionalCountry.get();
-		if (country.getGeometry() != null)
+		PackedGeometry geometry = country.getGeometry() != null ? country.getGeometry() : country.getGeometryMulti();
+		if (geometry == null)
 		{
-			return personRepository.findByCurrentLocationWithin(country.getGeometry());
+			return new ArrayList<>();
 		}
-		else if (country.getGeometryMulti() != null)
+		if (parallel == null)
 		{
-			return personRepository.findByCurrentLocationWithin(country.getGeometryMulti());
+			parallel = GEO_WITHIN_PARALLEL_THRESHOLD > 0 && geometry.getPolygons().size() >= GEO_WITHIN_PARALLEL_THRESHOLD;
 		}
-		else
+		return parallel ? personRepository.findByCurrentLocationWithinParallel(geometry, withinExecutor)
+				: personRepository.findByCurrentLocationWithin(geometry);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findAll(KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.findAllSlice(pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findBornBetween(LocalDate start, LocalDate end, KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.findBornBetweenSlice(start, end, pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByDateOfBirthBetweenOrderById(Date start, Date end,
+			KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.findByDateOfBirthBetweenSlice(start, end, pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByFirstNameLike(String q, KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.findByFirstNameLikeSlice(q, pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByGender(String gender, KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.findByGenderSlice(gender, pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByLastNameAndFirstNameAllIgnoreCase(String lastName, String firstName,
+			KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.findByLastNameAndFirstNameAllIgnoreCaseSlice(lastName, firstName, pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByLastNameOrFirstNameAllIgnoreCase(String lastName, String firstName,
+			KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.findByLastNameOrFirstNameAllIgnoreCaseSlice(lastName, firstName, pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> findByMobileBetween(long start, long end, KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.findByMobileBetweenSlice(start, end, pageRequest);
+	}
+
+	// same as the unpaged variant: by catalog id, by name for countries not in the catalog
+	@Override
+	public KeysetSliceDTO<Person> findDistinctPeopleByCountryIgnoreCase(String country,
+			KeysetPageRequestDTO pageRequest)
+	{
+		Optional<CountryDTO> optionalCountry = countryRegistry.findByName(country);
+		if (!optionalCountry.isPresent())
 		{
-			return new ArrayList<>();
+			return personRepository.findByCountryNameIgnoreCaseSlice(country, pageRequest);
 		}
+		return personRepository.findByCountryIdSlice(optionalCountry.get().getId(), pageRequest);
+	}
+
+	@Override
+	public KeysetSliceDTO<Person> lookupCountry(Long dni, List<String> countryFields,
+			KeysetPageRequestDTO pageRequest)
+	{
+		return personRepository.lookupCountrySlice(dni, countryFields, pageRequest);
+	}
+
+	// previous: the documents the write replaced, as they were
+	private List<Person> saved(Collection<Person> previous, List<Person> persons)
+	{
+		personIndexes.forEach(index -> index.onSaved(persons));
+		personCounters.apply(previous, persons);
+		return persons;
+	}
+
+	// only the elements the report says were written, an update replaced the person of the same dni
+	private BulkWriteReportDTO saved(List<Person> persons, Map<Long, Person> previousByDni,
+			BulkWriteReportDTO report)
+	{
+		List<Person> written = new ArrayList<>();
+		List<Person> previous = new ArrayList<>();
+		for (BulkItemResultDTO item : report.getItems())
+		{
+			if (item.getStatus() == BulkItemResultDTO.Status.INSERTED
+					|| item.getStatus() == BulkItemResultDTO.Status.UPDATED)
+			{
+				written.add(persons.get(item.getIndex()));
+			}
+			if (item.getStatus() == BulkItemResultDTO.Status.UPDATED && previousByDni.containsKey(item.getDni()))
+			{
+				previous.add(previousByDni.get(item.getDni()));
+			}
+		}
+		saved(previous, written);
+		return report;
+	}
+
+	private List<Person> deleted(List<Person> persons)
+	{
+		return deleted(persons, persons);
+	}
+
+	// removed: the documents as they were before the delete
+	private List<Person> deleted(List<Person> persons, List<Person> removed)
+	{
+		personIndexes.forEach(index -> index.onDeleted(persons));
+		personCounters.apply(removed, Collections.emptyList());
+		return persons;
 	}
 
+	// resolved against the in-memory registry, bulk writes don't query the countries collection per person
 	private void assignCountryId(Person person)
 	{
 		if (person.getCountry() != null && StringUtils.isNotBlank(person.getCountry().getName()))
 		{
-			Optional<Country> countryOptional = countryService.findByName(person.getCountry().getName());
+			Optional<CountryDTO> countryOptional = countryRegistry.findByName(person.getCountry().getName());
 			countryOptional.ifPresent(country -> {
 				person.getCountry().setId(country.getId());
 				person.getCountry().setName(null);
@@ -3,6 +3,7 @@ package com.jordanec.peopledirectory;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
 import com.jordanec.peopledirectory.model.Country;
 import org.junit.Ignore;
 import org.junit.runner.RunWith;
@@ -91,7 +92,7 @@ public class Test
                             .map(pointAsList -> new Point(pointAsList.get(0), pointAsList.get(1)))
                             .collect(Collectors.toList());
                     Assert.notEmpty(points, "points empty for: " + countryName);
-                    c.setGeometry(new GeoJsonPolygon(points));
+                    c.setGeometry(PackedGeometry.of(new GeoJsonPolygon(points)));
                 }
                 else if ("MultiPolygon".equalsIgnoreCase(geometryMap.get("type").toString()))
                 {
@@ -111,7 +112,7 @@ public class Test
                         polygonList.add(new GeoJsonPolygon(points));
                     }
                     Assert.notEmpty(polygonList, "polygonList empty for: " + countryName);
-                    c.setGeometryMulti(new GeoJsonMultiPolygon(polygonList));
+                    c.setGeometryMulti(PackedGeometry.of(new GeoJsonMultiPolygon(polygonList)));
                 }
             }
             else
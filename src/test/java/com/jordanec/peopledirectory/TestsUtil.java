@@ -1,6 +1,7 @@
 package com.jordanec.peopledirectory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jordanec.peopledirectory.dto.KeysetSliceDTO;
 import com.jordanec.peopledirectory.model.Person;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.io.ClassPathResource;
@@ -20,6 +21,10 @@ public class TestsUtil
     {
         return new ParameterizedTypeReference<List<Person>>(){};
     }
+    public static ParameterizedTypeReference<KeysetSliceDTO<Person>> personSliceTypeReference()
+    {
+        return new ParameterizedTypeReference<KeysetSliceDTO<Person>>(){};
+    }
     public static ParameterizedTypeReference<Person> personTypeReference()
     {
         return new ParameterizedTypeReference<Person>(){};
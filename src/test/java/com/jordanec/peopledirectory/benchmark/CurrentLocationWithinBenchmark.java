@@ -0,0 +1,103 @@
+package com.jordanec.peopledirectory.benchmark;
+
+import com.jordanec.peopledirectory.PeopleDirectoryApplication;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
+import com.jordanec.peopledirectory.geo.PackedPolygon;
+import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.model.Person;
+import com.jordanec.peopledirectory.repository.PersonRepository;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.geo.Polygon;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Manual benchmark of the people located within the countries with the most polygons: the former $or of legacy
+ * polygons in an aggregation, the single GeoJSON MultiPolygon $geoWithin and the parallel per-polygon fan-out.
+ * Run it explicitly, results are logged.
+ */
+@SpringBootTest(classes = PeopleDirectoryApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles("test")
+@Ignore
+public class CurrentLocationWithinBenchmark
+{
+    private static final int WARM_UP = 3;
+    private static final int ITERATIONS = 10;
+    private final Logger logger = LoggerFactory.getLogger(CurrentLocationWithinBenchmark.class);
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+    @Autowired
+    PersonRepository personRepository;
+
+    @Test
+    public void findByCurrentLocationWithin_ManyPolygons()
+    {
+        Query query = new Query(Criteria.where("geometryMulti").exists(true));
+        // what people-directory.geo.within.parallel-threads defaults to
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (Country country : mongoTemplate.find(query, Country.class))
+        {
+            // only the countries with many islands are interesting here
+            if (country.getGeometryMulti().getPolygons().size() < 20)
+            {
+                continue;
+            }
+            PackedGeometry multiPolygon = country.getGeometryMulti();
+            String name = country.getName() + " (" + multiPolygon.getPolygons().size() + " polygons)";
+            int legacy = measure(name + " legacy $or", () -> legacyOr(multiPolygon));
+            int single = measure(name + " GeoJSON $geoWithin", () -> personRepository.findByCurrentLocationWithin(multiPolygon));
+            int parallel = measure(name + " parallel fan-out",
+                    () -> personRepository.findByCurrentLocationWithinParallel(multiPolygon, executor));
+            Assert.assertEquals(single, parallel);
+            logger.info("{}: legacy {} / GeoJSON {} persons", name, legacy, single);
+        }
+        executor.shutdown();
+    }
+
+    // what findByCurrentLocationWithin(GeoJsonMultiPolygon) used to run
+    private List<Person> legacyOr(PackedGeometry multiPolygon)
+    {
+        Criteria[] criterias = multiPolygon.getPolygons().stream()
+                .map(polygon -> Criteria.where("currentLocation").within(new Polygon(PackedPolygon.unpack(polygon.getRings()[0]))))
+                .toArray(Criteria[]::new);
+        return mongoTemplate.aggregate(Aggregation.newAggregation(Aggregation.match(new Criteria().orOperator(criterias))),
+                Person.class, Person.class).getMappedResults();
+    }
+
+    private int measure(String name, Supplier<List<Person>> query)
+    {
+        long totalNanos = 0;
+        int size = 0;
+        for (int i = 0; i < WARM_UP + ITERATIONS; i++)
+        {
+            long start = System.nanoTime();
+            size = query.get().size();
+            long elapsed = System.nanoTime() - start;
+            if (i >= WARM_UP)
+            {
+                totalNanos += elapsed;
+            }
+        }
+        logger.info("{}: {} persons, {} ms average over {} runs", name, size, totalNanos / ITERATIONS / 1_000_000,
+                ITERATIONS);
+        return size;
+    }
+}
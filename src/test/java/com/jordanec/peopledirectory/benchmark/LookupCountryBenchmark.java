@@ -0,0 +1,105 @@
+package com.jordanec.peopledirectory.benchmark;
+
+import com.jordanec.peopledirectory.PeopleDirectoryApplication;
+import org.bson.Document;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Manual benchmark of /person/lookupCountry over the seeded data set: compares the plain $lookup (whole country
+ * document, geometry included) with the projected pipeline $lookup on the raw documents returned by Mongo, which
+ * is where the bytes are saved: both map to the same CountryDTO, so the HTTP legs only time the endpoint. Run it
+ * explicitly, results are logged.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = PeopleDirectoryApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles("test")
+@Ignore
+public class LookupCountryBenchmark
+{
+    private static final int WARM_UP = 3;
+    private static final int ITERATIONS = 10;
+    private final Logger logger = LoggerFactory.getLogger(LookupCountryBenchmark.class);
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    MongoTemplate mongoTemplate;
+    TestRestTemplate testRestTemplate = new TestRestTemplate();
+
+    @Test
+    public void lookupCountry_FullVsProjected()
+    {
+        List<Document> fullLookup = Arrays.asList(
+                Document.parse("{$lookup: {from: 'countries', localField: 'country._id', foreignField: '_id', as: 'country'}}"),
+                Document.parse("{$unwind: {path: '$country'}}"));
+        List<Document> projectedLookup = Arrays.asList(
+                Document.parse("{$lookup: {from: 'countries', let: {countryId: '$country._id'}, pipeline: ["
+                        + "{$match: {$expr: {$eq: ['$_id', '$$countryId']}}}, "
+                        + "{$project: {name: 1, code: 1, capital: 1, region: 1, currency: 1, language: 1, flag: 1, population: 1}}"
+                        + "], as: 'country'}}"),
+                Document.parse("{$unwind: {path: '$country'}}"));
+        long fullBytes = measureAggregation("full $lookup", fullLookup);
+        long projectedBytes = measureAggregation("projected $lookup", projectedLookup);
+        logger.info("projection saves ~{} bytes ({}%) per call", fullBytes - projectedBytes,
+                fullBytes == 0 ? 0 : (fullBytes - projectedBytes) * 100 / fullBytes);
+
+        measureHttp("GET /person/lookupCountry", "person/lookupCountry");
+        measureHttp("GET /person/lookupCountry?countryFields=name,code", "person/lookupCountry?countryFields=name,code");
+    }
+
+    private long measureAggregation(String name, List<Document> pipeline)
+    {
+        long totalNanos = 0;
+        long bytes = 0;
+        for (int i = 0; i < WARM_UP + ITERATIONS; i++)
+        {
+            long start = System.nanoTime();
+            bytes = 0;
+            for (Document document : mongoTemplate.getCollection("persons").aggregate(pipeline))
+            {
+                bytes += document.toJson().length();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (i >= WARM_UP)
+            {
+                totalNanos += elapsed;
+            }
+        }
+        logger.info("{}: ~{} bytes returned by Mongo (as JSON), {} ms average over {} runs", name, bytes,
+                totalNanos / ITERATIONS / 1_000_000, ITERATIONS);
+        return bytes;
+    }
+
+    private void measureHttp(String name, String path)
+    {
+        long totalNanos = 0;
+        int bytes = 0;
+        for (int i = 0; i < WARM_UP + ITERATIONS; i++)
+        {
+            long start = System.nanoTime();
+            String body = testRestTemplate.getForObject("http://localhost:" + port + "/people/api/" + path, String.class);
+            long elapsed = System.nanoTime() - start;
+            bytes = body == null ? 0 : body.length();
+            if (i >= WARM_UP)
+            {
+                totalNanos += elapsed;
+            }
+        }
+        logger.info("{}: {} response bytes, {} ms average over {} runs", name, bytes,
+                totalNanos / ITERATIONS / 1_000_000, ITERATIONS);
+    }
+}
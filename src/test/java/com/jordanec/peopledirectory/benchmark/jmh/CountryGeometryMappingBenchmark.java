@@ -0,0 +1,139 @@
+package com.jordanec.peopledirectory.benchmark.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jordanec.peopledirectory.geo.PackedGeometryConverters;
+import com.jordanec.peopledirectory.model.Country;
+import lombok.Data;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jol.info.GraphLayout;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping time and allocation of the seeded countries collection: the documents as returned by the driver are
+ * mapped to {@link Country} (packed rings) and to the former GeoJsonPolygon/GeoJsonMultiPolygon model. The
+ * gc profiler reports the bytes allocated per mapping, transient garbage included; what each model keeps on the
+ * heap is the retained size of the mapped list, measured with JOL before the benchmarks run.
+ *
+ * Only compiled with the jmh profile: {@code mvn -Pjmh test-compile}, then run {@link #main(String[])} with the
+ * test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CountryGeometryMappingBenchmark
+{
+    private List<Document> documents;
+    private MappingMongoConverter packedConverter;
+    private MappingMongoConverter geoJsonConverter;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException
+    {
+        documents = new ArrayList<>();
+        try (InputStream inputStream = new ClassPathResource("data/Country_WithGeometry.json").getInputStream())
+        {
+            ObjectMapper objectMapper = new ObjectMapper();
+            List<Map<String, Object>> countries = objectMapper.readValue(inputStream, List.class);
+            for (Map<String, Object> country : countries)
+            {
+                // nested Documents, like the driver decodes them
+                documents.add(Document.parse(objectMapper.writeValueAsString(country)));
+            }
+        }
+        packedConverter = converter(new MongoCustomConversions(PackedGeometryConverters.getConvertersToRegister()));
+        geoJsonConverter = converter(new MongoCustomConversions(Collections.emptyList()));
+    }
+
+    @Benchmark
+    public List<Country> readPacked()
+    {
+        List<Country> countries = new ArrayList<>(documents.size());
+        for (Document document : documents)
+        {
+            countries.add(packedConverter.read(Country.class, document));
+        }
+        return countries;
+    }
+
+    @Benchmark
+    public List<GeoJsonCountry> readGeoJson()
+    {
+        List<GeoJsonCountry> countries = new ArrayList<>(documents.size());
+        for (Document document : documents)
+        {
+            countries.add(geoJsonConverter.read(GeoJsonCountry.class, document));
+        }
+        return countries;
+    }
+
+    private static MappingMongoConverter converter(MongoCustomConversions conversions)
+    {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    // Country geometry before the packed model
+    @Data
+    public static class GeoJsonCountry
+    {
+        private String id;
+        private String name;
+        private GeoJsonPolygon geometry;
+        private GeoJsonMultiPolygon geometryMulti;
+    }
+
+    // reachable bytes of the mapped countries, the name and id strings are the same in both models
+    private void printRetainedSizes()
+    {
+        long packed = GraphLayout.parseInstance(readPacked()).totalSize();
+        long geoJson = GraphLayout.parseInstance(readGeoJson()).totalSize();
+        System.out.printf("Retained size of %d countries: packed %,d bytes, GeoJson %,d bytes (%.1fx)%n",
+                documents.size(), packed, geoJson, (double) geoJson / packed);
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException
+    {
+        CountryGeometryMappingBenchmark benchmark = new CountryGeometryMappingBenchmark();
+        benchmark.setUp();
+        benchmark.printRetainedSizes();
+        new Runner(new OptionsBuilder().include(CountryGeometryMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
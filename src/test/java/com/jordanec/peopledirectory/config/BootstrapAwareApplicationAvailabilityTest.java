@@ -0,0 +1,45 @@
+package com.jordanec.peopledirectory.config;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.availability.ApplicationAvailabilityBean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+
+import static org.junit.Assert.assertEquals;
+
+public class BootstrapAwareApplicationAvailabilityTest
+{
+    BootstrapAwareApplicationAvailability applicationAvailability;
+    ApplicationAvailabilityBean applicationAvailabilityBean;
+    BootstrapReadiness bootstrapReadiness;
+
+    @Before
+    public void setUp()
+    {
+        applicationAvailabilityBean = new ApplicationAvailabilityBean();
+        bootstrapReadiness = new BootstrapReadiness();
+        bootstrapReadiness.applicationEventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+        applicationAvailability = new BootstrapAwareApplicationAvailability();
+        applicationAvailability.applicationAvailabilityBean = applicationAvailabilityBean;
+        applicationAvailability.bootstrapReadiness = bootstrapReadiness;
+    }
+
+    @Test
+    public void getReadinessState_RefusingUntilBootstrapIsOver()
+    {
+        bootstrapReadiness.starting();
+        // Boot marks the application ready while the bootstrap is running
+        applicationAvailabilityBean.onApplicationEvent(
+                new AvailabilityChangeEvent<>(this, ReadinessState.ACCEPTING_TRAFFIC));
+        applicationAvailabilityBean.onApplicationEvent(new AvailabilityChangeEvent<>(this, LivenessState.CORRECT));
+        assertEquals(ReadinessState.REFUSING_TRAFFIC, applicationAvailability.getReadinessState());
+        assertEquals(LivenessState.CORRECT, applicationAvailability.getLivenessState());
+
+        bootstrapReadiness.ready();
+        assertEquals(ReadinessState.ACCEPTING_TRAFFIC, applicationAvailability.getReadinessState());
+    }
+}
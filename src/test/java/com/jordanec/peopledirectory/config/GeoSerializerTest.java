@@ -0,0 +1,71 @@
+package com.jordanec.peopledirectory.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jordanec.peopledirectory.geo.GeometryRenderOptions;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
+import com.jordanec.peopledirectory.model.Country;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeoSerializerTest
+{
+    ObjectMapper objectMapper = new ObjectMapper();
+    Country country;
+
+    @Before
+    public void setUp()
+    {
+        country = new Country();
+        country.setId("1");
+        country.setGeometry(PackedGeometry.of(new GeoJsonPolygon(new Point(0, 0), new Point(5.123456789, 0.001),
+                new Point(10, 0), new Point(10, 10), new Point(0, 10), new Point(0, 0))));
+    }
+
+    @After
+    public void tearDown()
+    {
+        GeometryRenderOptions.clear();
+    }
+
+    @Test
+    public void serialize_Default()
+    {
+        JsonNode ring = objectMapper.valueToTree(country).path("geometry").path("coordinates").get(0);
+        assertEquals(6, ring.size());
+        assertEquals(5.123456789, ring.get(1).get(0).asDouble(), 0);
+    }
+
+    @Test
+    public void serialize_LodAndPrecision()
+    {
+        GeometryRenderOptions.set(GeometryRenderOptions.of("high", "2"));
+        JsonNode geometry = objectMapper.valueToTree(country).path("geometry");
+        assertEquals("Polygon", geometry.path("type").asText());
+        assertEquals(5, geometry.path("coordinates").get(0).size());
+
+        GeometryRenderOptions.set(GeometryRenderOptions.of(null, "2"));
+        JsonNode ring = objectMapper.valueToTree(country).path("geometry").path("coordinates").get(0);
+        assertEquals(6, ring.size());
+        assertEquals(5.12, ring.get(1).get(0).asDouble(), 0);
+    }
+
+    @Test
+    public void serialize_LodNone()
+    {
+        GeometryRenderOptions.set(GeometryRenderOptions.of("none", null));
+        assertTrue(objectMapper.valueToTree(country).path("geometry").isNull());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_InvalidPrecision()
+    {
+        GeometryRenderOptions.of(null, "20");
+    }
+}
@@ -0,0 +1,100 @@
+package com.jordanec.peopledirectory.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jordanec.peopledirectory.dto.IndexReportDTO;
+import com.jordanec.peopledirectory.model.Person;
+import com.mongodb.client.ListIndexesIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexManagerTest
+{
+    @InjectMocks
+    IndexManager indexManager;
+    @Mock
+    MongoTemplate mongoTemplate;
+    @Mock
+    MongoCollection<Document> collection;
+    @Mock
+    ListIndexesIterable<Document> listIndexes;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(indexManager, "mongoMappingContext", new MongoMappingContext());
+        ReflectionTestUtils.setField(indexManager, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(indexManager, "INDEXES_CONFIG", "indexes.json");
+        Mockito.doReturn("persons").when(mongoTemplate).getCollectionName(Person.class);
+        Mockito.doReturn(collection).when(mongoTemplate).getCollection("persons");
+        Mockito.doReturn(listIndexes).when(collection).listIndexes();
+        Mockito.doThrow(new IllegalStateException("$indexStats")).when(collection).aggregate(ArgumentMatchers.anyList());
+    }
+
+    @Test
+    public void inspect_MissingDriftedAndUndeclared()
+    {
+        existingIndexes(index("_id_", new Document("_id", 1)),
+                // declared unique
+                index("dni", new Document("dni", 1.0)),
+                index("mobile_1", new Document("mobile", 1)),
+                index("legacy_1", new Document("legacy", 1)),
+                // completed by the server with the defaults of the locale
+                index("firstName_1_ci", new Document("firstName", 1)).append("collation",
+                        new Document("locale", "en").append("caseLevel", false).append("strength", 2)),
+                index("country.name_1_ci", new Document("country.name", 1)).append("collation",
+                        new Document("locale", "en").append("strength", 3)));
+        IndexReportDTO report = indexManager.inspect(Person.class);
+        assertEquals(Arrays.asList("dni: declared unique=true, found null",
+                "country.name_1_ci: declared collation=Document{{locale=en, strength=2}}, found "
+                        + "Document{{locale=en, strength=3}}"), report.getDrifted());
+        assertEquals(Collections.singletonList("legacy_1"), report.getUndeclared());
+        assertTrue(report.getMissing().contains("currentLocation"));
+        assertTrue(report.getMissing().contains("gender_1__id_1"));
+        assertTrue(report.getCreated().isEmpty());
+    }
+
+    @Test
+    public void getDeclaredIndexes_AnnotationsAndConfig()
+    {
+        List<IndexDefinition> declared = indexManager.getDeclaredIndexes(Person.class);
+        assertTrue(declared.stream().anyMatch(index -> IndexManager.keySpec(index.getIndexKeys()).equals("dni:1")));
+        assertTrue(declared.stream()
+                .anyMatch(index -> IndexManager.keySpec(index.getIndexKeys()).equals("country._id:1,_id:1")));
+    }
+
+    private void existingIndexes(Document... indexes)
+    {
+        Iterator<Document> iterator = Arrays.asList(indexes).iterator();
+        @SuppressWarnings("unchecked")
+        MongoCursor<Document> cursor = Mockito.mock(MongoCursor.class);
+        Mockito.doAnswer(invocation -> iterator.hasNext()).when(cursor).hasNext();
+        Mockito.doAnswer(invocation -> iterator.next()).when(cursor).next();
+        Mockito.doReturn(cursor).when(listIndexes).iterator();
+    }
+
+    private static Document index(String name, Document keys)
+    {
+        return new Document("name", name).append("key", keys);
+    }
+}
@@ -1,29 +1,48 @@
 package com.jordanec.peopledirectory.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.CollectionType;
 import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.model.Lease;
+import com.jordanec.peopledirectory.model.SeedMetadata;
 import com.jordanec.peopledirectory.repository.CountryRepository;
+import com.jordanec.peopledirectory.service.CountryCatalogChangedEvent;
 import com.mongodb.client.MongoDatabase;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.mongodb.core.CollectionOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ActiveProfiles("test")
@@ -40,6 +59,12 @@ public class MongoDBDataInitializerConfigTest
     CountryRepository countryRepository;
     @Mock
     ObjectMapper objectMapper;
+    @Mock
+    ApplicationEventPublisher applicationEventPublisher;
+    @Mock
+    BootstrapReadiness bootstrapReadiness;
+    @Mock
+    MongoLeaseLock mongoLeaseLock;
 
     @Before
     public void setUp()
@@ -69,14 +94,21 @@ public class MongoDBDataInitializerConfigTest
         Mockito.doNothing().when(mongoDBDataInitializerConfig).createPersonSchema();
         Mockito.doNothing().when(mongoDBDataInitializerConfig).seedCountryData();
         Mockito.doNothing().when(mongoDBDataInitializerConfig).seedPersonData();
-        Mockito.doNothing().when(mongoDatabase).drop();
         Mockito.doReturn(mongoDatabase).when(mongoTemplate).getDb();
+        Mockito.doReturn("locks").when(mongoTemplate).getCollectionName(Lease.class);
+        Mockito.doReturn(new HashSet<>(Arrays.asList("countries", "persons", "locks", "system.views")))
+                .when(mongoTemplate).getCollectionNames();
 
 //        PowerMockito.mockStatic(LoggerFactory.class);
 //        Logger logger = PowerMockito.mock(Logger.class);
 //        PowerMockito.when(LoggerFactory.getLogger(MongoDBDataInitializerConfig.class)).thenReturn(logger);
         mongoDBDataInitializerConfig.mongoDBInitializer();
         Mockito.verify(mongoDBDataInitializerConfig, Mockito.times(1)).dropDB();
+        Mockito.verify(mongoTemplate).dropCollection("countries");
+        Mockito.verify(mongoTemplate).dropCollection("persons");
+        // the lease of this instance lives in locks
+        Mockito.verify(mongoTemplate, Mockito.never()).dropCollection("locks");
+        Mockito.verify(mongoDatabase, Mockito.never()).drop();
 //        Mockito.verify(logger, Mockito.never())
 //                .error(ArgumentMatchers.anyString(), ArgumentMatchers.any(Exception.class));
 //        Mockito.verify(logger, Mockito.times(1))
@@ -85,14 +117,109 @@ public class MongoDBDataInitializerConfigTest
 //                .debug(ArgumentMatchers.anyString(),ArgumentMatchers.anyString());
     }
 
+    @Test
+    public void mongoDBInitializer_SeedsCountriesBeforePersons() throws IOException
+    {
+        Mockito.doNothing().when(mongoDBDataInitializerConfig).createCountrySchema();
+        Mockito.doNothing().when(mongoDBDataInitializerConfig).createPersonSchema();
+        Mockito.doNothing().when(mongoDBDataInitializerConfig).seedCountryData();
+        Mockito.doNothing().when(mongoDBDataInitializerConfig).seedPersonData();
+        mongoDBDataInitializerConfig.mongoDBInitializer();
+        InOrder inOrder = Mockito.inOrder(mongoDBDataInitializerConfig, applicationEventPublisher, bootstrapReadiness);
+        inOrder.verify(bootstrapReadiness).starting();
+        inOrder.verify(mongoDBDataInitializerConfig).seedCountryData();
+        inOrder.verify(applicationEventPublisher).publishEvent(ArgumentMatchers.any(CountryCatalogChangedEvent.class));
+        inOrder.verify(mongoDBDataInitializerConfig).seedPersonData();
+        inOrder.verify(bootstrapReadiness).ready();
+    }
+
+    @Test
+    public void mongoDBInitializer_Failed() throws IOException
+    {
+        Mockito.doNothing().when(mongoDBDataInitializerConfig).createCountrySchema();
+        Mockito.doNothing().when(mongoDBDataInitializerConfig).createPersonSchema();
+        Mockito.doThrow(new IOException("seed")).when(mongoDBDataInitializerConfig).seedCountryData();
+        mongoDBDataInitializerConfig.mongoDBInitializer();
+        Mockito.verify(mongoDBDataInitializerConfig, Mockito.never()).seedPersonData();
+        Mockito.verify(bootstrapReadiness).failed(ArgumentMatchers.any(UncheckedIOException.class));
+    }
+
+    @Test
+    public void mongoDBInitializer_LeaseHeldAndSkipMode() throws IOException, InterruptedException
+    {
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_ENABLED", true);
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_MODE", "skip");
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_TTL_SECONDS", 30);
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_WAIT_SECONDS", 60);
+        Mockito.doReturn(Optional.empty()).when(mongoLeaseLock)
+                .tryAcquire(ArgumentMatchers.eq(MongoDBDataInitializerConfig.BOOTSTRAP_LOCK), ArgumentMatchers.any(Duration.class));
+        Mockito.doReturn(true).when(mongoLeaseLock).awaitRelease(ArgumentMatchers.eq(MongoDBDataInitializerConfig.BOOTSTRAP_LOCK),
+                ArgumentMatchers.any(Duration.class), ArgumentMatchers.eq(Duration.ofSeconds(60)));
+        mongoDBDataInitializerConfig.mongoDBInitializer();
+        Mockito.verify(mongoDBDataInitializerConfig, Mockito.never()).createCountrySchema();
+        Mockito.verify(mongoDBDataInitializerConfig, Mockito.never()).seedCountryData();
+        // the catalog seeded by the other instance is loaded before this one accepts traffic
+        InOrder inOrder = Mockito.inOrder(mongoLeaseLock, applicationEventPublisher, bootstrapReadiness);
+        inOrder.verify(mongoLeaseLock).awaitRelease(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+        inOrder.verify(applicationEventPublisher).publishEvent(ArgumentMatchers.any(CountryCatalogChangedEvent.class));
+        inOrder.verify(bootstrapReadiness).ready();
+    }
+
+    @Test
+    public void mongoDBInitializer_LeaseHeldAndSkipModeTimedOut() throws InterruptedException
+    {
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_ENABLED", true);
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_MODE", "skip");
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_TTL_SECONDS", 30);
+        Mockito.doReturn(Optional.empty()).when(mongoLeaseLock)
+                .tryAcquire(ArgumentMatchers.eq(MongoDBDataInitializerConfig.BOOTSTRAP_LOCK), ArgumentMatchers.any(Duration.class));
+        Mockito.doReturn(false).when(mongoLeaseLock)
+                .awaitRelease(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+        mongoDBDataInitializerConfig.mongoDBInitializer();
+        Mockito.verify(applicationEventPublisher, Mockito.never()).publishEvent(ArgumentMatchers.any(Object.class));
+        Mockito.verify(bootstrapReadiness).failed(ArgumentMatchers.any(IllegalStateException.class));
+        Mockito.verify(bootstrapReadiness, Mockito.never()).ready();
+    }
+
+    @Test
+    public void mongoDBInitializer_LeaseLost() throws IOException
+    {
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_ENABLED", true);
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "BOOTSTRAP_LOCK_TTL_SECONDS", 30);
+        MongoLeaseLock leaseLock = new MongoLeaseLock();
+        leaseLock.mongoOperations = mongoTemplate;
+        Mockito.doReturn(Mockito.mock(IndexOperations.class)).when(mongoTemplate).indexOps(Lease.class);
+        MongoLeaseLock.Handle handle = leaseLock.tryAcquire(MongoDBDataInitializerConfig.BOOTSTRAP_LOCK,
+                Duration.ofSeconds(30)).get();
+        Mockito.doReturn(Optional.of(handle)).when(mongoLeaseLock)
+                .tryAcquire(ArgumentMatchers.eq(MongoDBDataInitializerConfig.BOOTSTRAP_LOCK), ArgumentMatchers.any(Duration.class));
+        // another instance takes the lease over while the schemas are created
+        Mockito.doAnswer(invocation -> {
+            Mockito.doThrow(new DuplicateKeyException("E11000")).when(mongoTemplate).upsert(
+                    ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(Lease.class));
+            handle.renew();
+            return null;
+        }).when(mongoDBDataInitializerConfig).createCountrySchema();
+        Mockito.doNothing().when(mongoDBDataInitializerConfig).createPersonSchema();
+        mongoDBDataInitializerConfig.mongoDBInitializer();
+        Mockito.verify(mongoDBDataInitializerConfig, Mockito.never()).seedCountryData();
+        Mockito.verify(mongoDBDataInitializerConfig, Mockito.never()).seedPersonData();
+        Mockito.verify(bootstrapReadiness).failed(ArgumentMatchers.any(IllegalStateException.class));
+    }
+
     @Test
     public void createCountrySchema_collectionExists()
     {
         Mockito.when(mongoTemplate.collectionExists(ArgumentMatchers.eq(Country.class))).thenReturn(true);
+        Mockito.doNothing().when(mongoDBDataInitializerConfig)
+                .checkIndexForCollection(ArgumentMatchers.eq(Country.class));
 
         mongoDBDataInitializerConfig.createCountrySchema();
 
-        Mockito.verify(mongoDBDataInitializerConfig, Mockito.times(0))
+        // indexes are reconciled on every boot, not only when the collection is created
+        Mockito.verify(mongoTemplate, Mockito.never())
+                .createCollection(ArgumentMatchers.eq(Country.class), ArgumentMatchers.any(CollectionOptions.class));
+        Mockito.verify(mongoDBDataInitializerConfig, Mockito.times(1))
                 .checkIndexForCollection(ArgumentMatchers.eq(Country.class));
     }
 
@@ -118,43 +245,112 @@ public class MongoDBDataInitializerConfigTest
     public void seedCountryData_NoCountriesAndInsertEnabled() throws IOException
     {
         ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "INSERT_INITIAL_DATA_COUNTRY", true);
-        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", objectMapper);
-        Mockito.doReturn(mockCountryList()).when(objectMapper).readValue(ArgumentMatchers.any(File.class), ArgumentMatchers.any(CollectionType.class));
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "SEED_BATCH_SIZE", 100);
+        Mockito.doAnswer(invocation -> mockCountrySeed(249)).when(mongoDBDataInitializerConfig).openSeed(ArgumentMatchers.anyString());
         Mockito.doReturn(0L).when(countryRepository).count();
         Mockito.doReturn(null).when(countryRepository).insert(ArgumentMatchers.any(List.class));
         mongoDBDataInitializerConfig.seedCountryData();
-        //@TODO: asserts/verifies over logs
+        // 249 documents in batches of 100
+        Mockito.verify(countryRepository, Mockito.times(3)).insert(ArgumentMatchers.any(List.class));
+        Mockito.verify(mongoTemplate).save(ArgumentMatchers.argThat((SeedMetadata seedMetadata) ->
+                seedMetadata.getRecords().size() == 249));
     }
     @Test
     public void seedCountryData_UpdateEnabled() throws IOException
     {
         ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "INSERT_INITIAL_DATA_COUNTRY", false);
         ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "UPDATE_INITIAL_DATA_COUNTRY", true);
-        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", objectMapper);
-        Mockito.doReturn(mockCountryList()).when(objectMapper).readValue(ArgumentMatchers.any(File.class), ArgumentMatchers.any(CollectionType.class));
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "SEED_BATCH_SIZE", 100);
+        Mockito.doAnswer(invocation -> mockCountrySeed(249)).when(mongoDBDataInitializerConfig).openSeed(ArgumentMatchers.anyString());
         Mockito.doReturn(100L).when(countryRepository).count();
-        Mockito.doReturn(null).when(countryRepository).saveAll(ArgumentMatchers.any(List.class));
         mongoDBDataInitializerConfig.seedCountryData();
-        //@TODO: asserts/verifies over logs
+        Mockito.verify(countryRepository, Mockito.times(249)).upsertByName(ArgumentMatchers.any(Country.class));
     }
     @Test
     public void seedCountryData_InsertAndUpdateDisabled() throws IOException
     {
         ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "INSERT_INITIAL_DATA_COUNTRY", false);
         ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "UPDATE_INITIAL_DATA_COUNTRY", false);
-        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", objectMapper);
-        Mockito.doReturn(mockCountryList()).when(objectMapper).readValue(ArgumentMatchers.any(File.class), ArgumentMatchers.any(CollectionType.class));
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "SEED_BATCH_SIZE", 100);
+        Mockito.doAnswer(invocation -> mockCountrySeed(249)).when(mongoDBDataInitializerConfig).openSeed(ArgumentMatchers.anyString());
+        Mockito.doReturn(249L).when(countryRepository).count();
+        mongoDBDataInitializerConfig.seedCountryData();
+        Mockito.verify(countryRepository, Mockito.never()).upsertByName(ArgumentMatchers.any(Country.class));
+        Mockito.verify(countryRepository, Mockito.never()).saveAll(ArgumentMatchers.any(List.class));
+        Mockito.verify(countryRepository, Mockito.never()).insert(ArgumentMatchers.any(List.class));
+        Mockito.verify(mongoTemplate, Mockito.never()).save(ArgumentMatchers.any(SeedMetadata.class));
+    }
+    @Test
+    public void seedCountryData_SeedUnchanged() throws IOException
+    {
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "UPDATE_INITIAL_DATA_COUNTRY", true);
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "SEED_BATCH_SIZE", 100);
+        Mockito.doAnswer(invocation -> mockCountrySeed(249)).when(mongoDBDataInitializerConfig).openSeed(ArgumentMatchers.anyString());
+        Mockito.doReturn(249L).when(countryRepository).count();
+        SeedMetadata seedMetadata = SeedMetadata.of(MongoDBDataInitializerConfig.COUNTRY_SEED,
+                JsonSeedReader.hash(mockCountrySeed(249)), Collections.emptyMap());
+        Mockito.doReturn(seedMetadata).when(mongoTemplate).findById(MongoDBDataInitializerConfig.COUNTRY_SEED, SeedMetadata.class);
+        mongoDBDataInitializerConfig.seedCountryData();
+        // hashed only, never parsed
+        Mockito.verify(mongoDBDataInitializerConfig, Mockito.times(1)).openSeed(ArgumentMatchers.anyString());
+        Mockito.verify(countryRepository, Mockito.never()).upsertByName(ArgumentMatchers.any(Country.class));
+    }
+    @Test
+    public void seedCountryData_SeedChangedUpsertsChangedRecords() throws IOException
+    {
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "UPDATE_INITIAL_DATA_COUNTRY", true);
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "SEED_BATCH_SIZE", 100);
+        Mockito.doAnswer(invocation -> mockCountrySeed(249)).when(mongoDBDataInitializerConfig).openSeed(ArgumentMatchers.anyString());
+        Mockito.doReturn(248L).when(countryRepository).count();
+        // previous version: same records except the last one
+        Map<String, String> recordHashes = new HashMap<>();
+        new JsonSeedReader<>(new ObjectMapper(), Country.class, 100)
+                .forEachChangedBatch(mockCountrySeed(248), "name", recordHashes, batch -> {});
+        SeedMetadata seedMetadata = SeedMetadata.of(MongoDBDataInitializerConfig.COUNTRY_SEED, "outdated", recordHashes);
+        Mockito.doReturn(seedMetadata).when(mongoTemplate).findById(MongoDBDataInitializerConfig.COUNTRY_SEED, SeedMetadata.class);
+        mongoDBDataInitializerConfig.seedCountryData();
+        Mockito.verify(countryRepository, Mockito.times(1)).upsertByName(ArgumentMatchers.argThat(country ->
+                country.getName().equals("Country 248")));
+    }
+    @Test
+    public void seedCountryData_SeedChangedPrunesRemovedRecords() throws IOException
+    {
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "UPDATE_INITIAL_DATA_COUNTRY", true);
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(mongoDBDataInitializerConfig, "SEED_BATCH_SIZE", 100);
+        Mockito.doAnswer(invocation -> mockCountrySeed(248)).when(mongoDBDataInitializerConfig).openSeed(ArgumentMatchers.anyString());
         Mockito.doReturn(249L).when(countryRepository).count();
+        // previous version: one more record
+        Map<String, String> recordHashes = new HashMap<>();
+        new JsonSeedReader<>(new ObjectMapper(), Country.class, 100)
+                .forEachChangedBatch(mockCountrySeed(249), "name", recordHashes, batch -> {});
+        SeedMetadata seedMetadata = SeedMetadata.of(MongoDBDataInitializerConfig.COUNTRY_SEED, "outdated", recordHashes);
+        Mockito.doReturn(seedMetadata).when(mongoTemplate).findById(MongoDBDataInitializerConfig.COUNTRY_SEED, SeedMetadata.class);
         mongoDBDataInitializerConfig.seedCountryData();
-        //@TODO: asserts/verifies over logs
+        Mockito.verify(countryRepository, Mockito.never()).upsertByName(ArgumentMatchers.any(Country.class));
+        Mockito.verify(mongoTemplate).save(ArgumentMatchers.argThat((SeedMetadata saved) ->
+                saved.getRecords().size() == 248 && !saved.getRecordHashes().containsKey("Country 248")));
+    }
+    @Test
+    public void openSeed_ClasspathStream() throws IOException
+    {
+        try (InputStream inputStream = mongoDBDataInitializerConfig.openSeed(MongoDBDataInitializerConfig.COUNTRY_SEED))
+        {
+            Assert.assertNotEquals(-1, inputStream.read());
+        }
     }
-    private List<Country> mockCountryList()
+    private InputStream mockCountrySeed(int size)
     {
-        List<Country> countries = new ArrayList<>();
-        for (int i = 0; i < 249; i++)
+        StringJoiner seed = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < size; i++)
         {
-            countries.add(new Country());
+            seed.add("{\"name\":\"Country " + i + "\"}");
         }
-        return countries;
+        return new ByteArrayInputStream(seed.toString().getBytes(StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,91 @@
+package com.jordanec.peopledirectory.config;
+
+import com.jordanec.peopledirectory.model.Lease;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MongoLeaseLockTest
+{
+    @InjectMocks
+    MongoLeaseLock mongoLeaseLock;
+    @Mock
+    MongoOperations mongoOperations;
+    @Mock
+    IndexOperations indexOperations;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        Mockito.doReturn(indexOperations).when(mongoOperations).indexOps(Lease.class);
+    }
+
+    @Test
+    public void tryAcquire_FreeLease()
+    {
+        Optional<MongoLeaseLock.Handle> handle = mongoLeaseLock.tryAcquire("bootstrap", Duration.ofSeconds(30));
+        assertTrue(handle.isPresent());
+        handle.get().close();
+        Mockito.verify(mongoOperations).remove(ArgumentMatchers.any(Query.class), ArgumentMatchers.eq(Lease.class));
+    }
+
+    @Test
+    public void tryAcquire_HeldByAnotherInstance()
+    {
+        Mockito.doThrow(new DuplicateKeyException("E11000")).when(mongoOperations).findAndModify(
+                ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class),
+                ArgumentMatchers.any(FindAndModifyOptions.class), ArgumentMatchers.eq(Lease.class));
+        assertFalse(mongoLeaseLock.tryAcquire("bootstrap", Duration.ofSeconds(30)).isPresent());
+    }
+
+    @Test
+    public void renew_TakenOver()
+    {
+        MongoLeaseLock.Handle handle = mongoLeaseLock.tryAcquire("bootstrap", Duration.ofSeconds(30)).get();
+        Mockito.doThrow(new DuplicateKeyException("E11000")).when(mongoOperations).upsert(
+                ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(Lease.class));
+        handle.renew();
+        assertTrue(handle.isLost());
+        handle.close();
+    }
+
+    @Test
+    public void isLost_Expired() throws InterruptedException
+    {
+        MongoLeaseLock.Handle handle = mongoLeaseLock.tryAcquire("bootstrap", Duration.ofMillis(50)).get();
+        // every renewal fails, the lease expires in Mongo and may be taken by another instance
+        Mockito.doThrow(new IllegalStateException("timeout")).when(mongoOperations).upsert(
+                ArgumentMatchers.any(Query.class), ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(Lease.class));
+        Thread.sleep(100);
+        assertTrue(handle.isLost());
+        handle.close();
+    }
+
+    @Test
+    public void awaitRelease_ReleasedByHolder() throws InterruptedException
+    {
+        Mockito.doReturn(true).doReturn(false).when(mongoOperations)
+                .exists(ArgumentMatchers.any(Query.class), ArgumentMatchers.eq(Lease.class));
+        assertTrue(mongoLeaseLock.awaitRelease("bootstrap", Duration.ofSeconds(1), Duration.ofSeconds(5)));
+        Mockito.verify(mongoOperations, Mockito.never()).findAndModify(ArgumentMatchers.any(Query.class),
+                ArgumentMatchers.any(Update.class), ArgumentMatchers.any(FindAndModifyOptions.class),
+                ArgumentMatchers.eq(Lease.class));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,113 @@
+package com.jordanec.peopledirectory.controller;
+
+import com.jordanec.peopledirectory.service.CountryCatalogChangedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class CountryResponseCacheTest
+{
+    private static final byte[] JSON = "[{\"name\":\"Costa Rica\"}]".getBytes(StandardCharsets.UTF_8);
+
+    CountryResponseCache countryResponseCache;
+    AtomicInteger renders;
+
+    @Before
+    public void setUp()
+    {
+        countryResponseCache = new CountryResponseCache();
+        ReflectionTestUtils.setField(countryResponseCache, "RESPONSE_CACHE_ENABLED", true);
+        ReflectionTestUtils.setField(countryResponseCache, "RESPONSE_CACHE_MAX_ENTRIES", 1);
+        ReflectionTestUtils.setField(countryResponseCache, "RESPONSE_CACHE_MAX_BYTES", Long.MAX_VALUE);
+        renders = new AtomicInteger();
+    }
+
+    @Test
+    public void get_RendersOnceAndAnswersNotModified() throws Exception
+    {
+        ResponseEntity<byte[]> first = get("findAll", null, null);
+        ResponseEntity<byte[]> second = get("findAll", first.getHeaders().getETag(), null);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertArrayEquals(JSON, first.getBody());
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+        assertEquals(1, renders.get());
+        assertEquals(1, countryResponseCache.getStats().getHits());
+    }
+
+    @Test
+    public void get_GzipVariant() throws Exception
+    {
+        ResponseEntity<byte[]> plain = get("findAll", null, null);
+        ResponseEntity<byte[]> gzipped = get("findAll", null, "gzip, deflate");
+        assertEquals("gzip", gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertNotEquals(plain.getHeaders().getETag(), gzipped.getHeaders().getETag());
+        assertArrayEquals(JSON, StreamUtils.copyToByteArray(new GZIPInputStream(
+                new ByteArrayInputStream(gzipped.getBody()))));
+    }
+
+    @Test
+    public void get_EvictsAndInvalidates() throws Exception
+    {
+        get("findAll", null, null);
+        get("findByName:Aruba", null, null);
+        get("findAll", null, null);
+        assertEquals(3, renders.get());
+        countryResponseCache.onCountryCatalogChanged(new CountryCatalogChangedEvent(this));
+        get("findAll", null, null);
+        assertEquals(4, renders.get());
+    }
+
+    @Test
+    public void get_EvictsBeyondMaxBytes() throws Exception
+    {
+        long entryBytes = new CountryResponseCache.CachedResponse(JSON).bytes();
+        ReflectionTestUtils.setField(countryResponseCache, "RESPONSE_CACHE_MAX_ENTRIES", 10);
+        ReflectionTestUtils.setField(countryResponseCache, "RESPONSE_CACHE_MAX_BYTES", 2 * entryBytes);
+        get("findAll", null, null);
+        get("findByName:Aruba", null, null);
+        get("findAll", null, null);
+        get("findByName:Chile", null, null);
+        assertEquals(2, countryResponseCache.getStats().getSize());
+        // findByName:Aruba was the least recently used
+        get("findByName:Aruba", null, null);
+        assertEquals(4, renders.get());
+        get("findAll", null, null);
+        assertEquals(5, renders.get());
+
+        ReflectionTestUtils.setField(countryResponseCache, "RESPONSE_CACHE_MAX_BYTES", entryBytes - 1);
+        countryResponseCache.onCountryCatalogChanged(new CountryCatalogChangedEvent(this));
+        get("findAll", null, null);
+        assertEquals(0, countryResponseCache.getStats().getSize());
+    }
+
+    @Test
+    public void get_NotFoundIsNotCached() throws Exception
+    {
+        assertEquals(HttpStatus.NOT_FOUND, countryResponseCache.get("findByName:Narnia", null, null, () -> {
+            renders.incrementAndGet();
+            return null;
+        }).getStatusCode());
+        assertEquals(0, countryResponseCache.getStats().getSize());
+    }
+
+    private ResponseEntity<byte[]> get(String key, String ifNoneMatch, String acceptEncoding) throws Exception
+    {
+        return countryResponseCache.get(key, ifNoneMatch, acceptEncoding, () -> {
+            renders.incrementAndGet();
+            return JSON;
+        });
+    }
+}
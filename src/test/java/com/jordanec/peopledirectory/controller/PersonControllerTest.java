@@ -2,6 +2,9 @@ package com.jordanec.peopledirectory.controller;
 
 import com.jordanec.peopledirectory.PeopleDirectoryApplication;
 import com.jordanec.peopledirectory.TestsUtil;
+import com.jordanec.peopledirectory.dto.BulkItemResultDTO;
+import com.jordanec.peopledirectory.dto.BulkWriteReportDTO;
+import com.jordanec.peopledirectory.dto.KeysetSliceDTO;
 import com.jordanec.peopledirectory.model.Person;
 import com.jordanec.peopledirectory.repository.PersonRepository;
 import org.hamcrest.CoreMatchers;
@@ -22,8 +25,11 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes= PeopleDirectoryApplication.class)
 @RunWith(SpringRunner.class)
@@ -61,6 +67,61 @@ public class PersonControllerTest
         Assert.assertEquals(1000, responseList.size());
     }
 
+    @Test
+    public void findAll_Keyset()
+    {
+        Set<Long> dnis = new HashSet<>();
+        String continuationToken = null;
+        int slices = 0;
+        do
+        {
+            String url = buildURL() + "person?size=300&seekBy=dni"
+                    + (continuationToken == null ? "" : "&continuationToken=" + continuationToken);
+            ResponseEntity<KeysetSliceDTO<Person>> responseEntity = testRestTemplate
+                    .exchange(url, HttpMethod.GET, new HttpEntity<>(TestsUtil.createHeaders()),
+                            TestsUtil.personSliceTypeReference());
+            Assert.assertThat(responseEntity.getStatusCode(), CoreMatchers.equalTo(HttpStatus.OK));
+            KeysetSliceDTO<Person> slice = responseEntity.getBody();
+            Assert.assertNotNull(slice);
+            slice.getContent().forEach(person -> dnis.add(person.getDni()));
+            continuationToken = slice.getContinuationToken();
+            slices++;
+        }
+        while (continuationToken != null);
+        Assert.assertEquals(4, slices);
+        Assert.assertEquals(1000, dnis.size());
+    }
+
+    @Test
+    public void findAll_KeysetInvalidToken()
+    {
+        ResponseEntity<String> responseEntity = testRestTemplate
+                .getForEntity(buildURL() + "person?size=10&continuationToken=invalid", String.class);
+        Assert.assertThat(responseEntity.getStatusCode(), CoreMatchers.equalTo(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    public void stream_Json()
+    {
+        ResponseEntity<List<Person>> responseEntity = testRestTemplate
+                .exchange(buildURL() + "person/stream", HttpMethod.GET, new HttpEntity<>(TestsUtil.createHeaders()),
+                        TestsUtil.listPersonTypeReference());
+        Assert.assertThat(responseEntity.getStatusCode(), CoreMatchers.equalTo(HttpStatus.OK));
+        List<Person> responseList = responseEntity.getBody();
+        Assert.assertNotNull(responseList);
+        Assert.assertEquals(1000, responseList.size());
+    }
+
+    @Test
+    public void stream_Ndjson()
+    {
+        ResponseEntity<String> responseEntity = testRestTemplate
+                .getForEntity(buildURL() + "person/stream?format=ndjson", String.class);
+        Assert.assertThat(responseEntity.getStatusCode(), CoreMatchers.equalTo(HttpStatus.OK));
+        Assert.assertNotNull(responseEntity.getBody());
+        Assert.assertEquals(1000, responseEntity.getBody().split("\n").length);
+    }
+
     @Test
     public void findByDni_OK()
     {
@@ -91,14 +152,31 @@ public class PersonControllerTest
     public void bulkInsert_OK() throws IOException
     {
         List<Person> persons = TestsUtil.readList("Person_1.json", Person.class);
-        ResponseEntity<List<Person>> responseEntity = testRestTemplate
+        ResponseEntity<BulkWriteReportDTO> responseEntity = testRestTemplate
                 .exchange(buildURL() + "person/bulkInsert", HttpMethod.POST,
-                        new HttpEntity<>(persons, TestsUtil.createHeaders()), TestsUtil.listPersonTypeReference());
+                        new HttpEntity<>(persons, TestsUtil.createHeaders()), BulkWriteReportDTO.class);
         Assert.assertThat(responseEntity.getStatusCode(), CoreMatchers.equalTo(HttpStatus.OK));
-        List<Person> responseList = responseEntity.getBody();
-        Assert.assertNotNull(responseList);
-        testPersonList = responseList;
-        Assert.assertEquals(persons.size(), responseList.size());
+        BulkWriteReportDTO report = responseEntity.getBody();
+        Assert.assertNotNull(report);
+        testPersonList = persons;
+        Assert.assertEquals(persons.size(), report.getInserted());
+        Assert.assertEquals(persons.size(), report.getItems().size());
+    }
+
+    @Test
+    public void bulkInsert_Duplicate() throws IOException
+    {
+        bulkInsert_OK();
+        List<Person> persons = TestsUtil.readList("Person_1.json", Person.class);
+        ResponseEntity<BulkWriteReportDTO> responseEntity = testRestTemplate
+                .exchange(buildURL() + "person/bulkInsert", HttpMethod.POST,
+                        new HttpEntity<>(persons, TestsUtil.createHeaders()), BulkWriteReportDTO.class);
+        Assert.assertThat(responseEntity.getStatusCode(), CoreMatchers.equalTo(HttpStatus.OK));
+        BulkWriteReportDTO report = responseEntity.getBody();
+        Assert.assertNotNull(report);
+        Assert.assertEquals(0, report.getInserted());
+        Assert.assertEquals(persons.size(), report.getDuplicates());
+        Assert.assertThat(report.getItems().get(0).getStatus(), CoreMatchers.equalTo(BulkItemResultDTO.Status.DUPLICATE));
     }
 
     @Test
@@ -129,6 +207,25 @@ public class PersonControllerTest
         testPersonList.clear();
     }
 
+    @Test
+    public void bulkDelete_SomeNotFound() throws IOException
+    {
+        bulkInsert_OK();
+        List<Person> toDelete = new ArrayList<>(testPersonList);
+        Person notFound = new Person();
+        notFound.setDni(123456L);
+        toDelete.add(0, notFound);
+        ResponseEntity<List<Person>> responseEntity = testRestTemplate
+                .exchange(buildURL() + "person/bulkDelete", HttpMethod.DELETE,
+                        new HttpEntity<>(toDelete, TestsUtil.createHeaders()), TestsUtil.listPersonTypeReference());
+        Assert.assertThat(responseEntity.getStatusCode(), CoreMatchers.equalTo(HttpStatus.OK));
+        List<Person> responseList = responseEntity.getBody();
+        Assert.assertNotNull(responseList);
+        Assert.assertEquals(testPersonList.size(), responseList.size());
+        Assert.assertThat(personRepository.count(), CoreMatchers.equalTo(1000L));
+        testPersonList.clear();
+    }
+
 /*
     //TODO: adjust below tests
     @Test
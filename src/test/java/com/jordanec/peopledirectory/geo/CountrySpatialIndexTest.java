@@ -0,0 +1,117 @@
+package com.jordanec.peopledirectory.geo;
+
+import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.service.CountryCatalogChangedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CountrySpatialIndexTest
+{
+    @InjectMocks
+    CountrySpatialIndex countrySpatialIndex;
+    @Mock
+    MongoOperations mongoOperations;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(countrySpatialIndex, "SPATIAL_INDEX_ENABLED", true);
+        // a 10x10 square with a 2x2 hole, and two islands
+        Country square = country("1", "Square");
+        square.setGeometry(PackedGeometry.of(new GeoJsonPolygon(new Point(0, 0), new Point(10, 0), new Point(10, 10), new Point(0, 10),
+                new Point(0, 0)).withInnerRing(new Point(4, 4), new Point(6, 4), new Point(6, 6), new Point(4, 6),
+                new Point(4, 4))));
+        Country islands = country("2", "Islands");
+        islands.setGeometryMulti(PackedGeometry.of(new GeoJsonMultiPolygon(Arrays.asList(
+                new GeoJsonPolygon(new Point(20, 0), new Point(22, 0), new Point(21, 2), new Point(20, 0)),
+                new GeoJsonPolygon(new Point(30, 0), new Point(32, 0), new Point(32, 2), new Point(30, 2),
+                        new Point(30, 0))))));
+        Mockito.doAnswer(invocation -> cursor(Arrays.asList(square, islands).iterator())).when(mongoOperations)
+                .stream(Mockito.any(Query.class), Mockito.eq(Country.class));
+    }
+
+    @Test
+    public void findCountryAt_PolygonsHolesAndMultiPolygons()
+    {
+        assertFalse(countrySpatialIndex.isReady());
+        countrySpatialIndex.onCountryCatalogChanged(new CountryCatalogChangedEvent(this));
+        assertTrue(countrySpatialIndex.isReady());
+        assertEquals("1", countrySpatialIndex.findCountryAt(2, 2).get().getId());
+        assertFalse(countrySpatialIndex.findCountryAt(5, 5).isPresent());
+        assertEquals("2", countrySpatialIndex.findCountryAt(21, 0.5).get().getId());
+        assertEquals("2", countrySpatialIndex.findCountryAt(31, 1).get().getId());
+        // inside the bounding box of the triangle but outside the triangle
+        assertFalse(countrySpatialIndex.findCountryAt(20.1, 1.9).isPresent());
+        assertFalse(countrySpatialIndex.findCountryAt(-1, -1).isPresent());
+        assertNull(countrySpatialIndex.findCountryAt(2, 2).get().getGeometry());
+    }
+
+    @Test
+    public void onCountryCatalogChanged_SingleWritesShareOneRebuild() throws InterruptedException
+    {
+        ReflectionTestUtils.setField(countrySpatialIndex, "REBUILD_DELAY_MILLIS", 100L);
+        countrySpatialIndex.onCountryCatalogChanged(new CountryCatalogChangedEvent(this));
+        for (int i = 0; i < 5; i++)
+        {
+            countrySpatialIndex.onCountryCatalogChanged(
+                    new CountryCatalogChangedEvent(this, Collections.singletonList(country("1", "Square"))));
+        }
+        Mockito.verify(mongoOperations, Mockito.timeout(2000).times(2)).stream(Mockito.any(Query.class),
+                Mockito.eq(Country.class));
+        Thread.sleep(300);
+        Mockito.verify(mongoOperations, Mockito.times(2)).stream(Mockito.any(Query.class), Mockito.eq(Country.class));
+        assertEquals("1", countrySpatialIndex.findCountryAt(2, 2).get().getId());
+    }
+
+    private static CloseableIterator<Country> cursor(Iterator<Country> iterator)
+    {
+        return new CloseableIterator<Country>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Country next()
+            {
+                return iterator.next();
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    private Country country(String id, String name)
+    {
+        Country country = new Country();
+        country.setId(id);
+        country.setName(name);
+        return country;
+    }
+}
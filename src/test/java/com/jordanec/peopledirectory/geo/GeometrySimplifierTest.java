@@ -0,0 +1,61 @@
+package com.jordanec.peopledirectory.geo;
+
+import com.jordanec.peopledirectory.model.Country;
+import org.junit.Test;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeometrySimplifierTest
+{
+    @Test
+    public void simplify_DropsPointsWithinTolerance()
+    {
+        // closed square with a slightly bent bottom edge
+        double[] ring = {0, 0, 5, 0.001, 10, 0, 10, 10, 0, 10, 0, 0};
+        assertArrayEquals(new double[] {0, 0, 10, 0, 10, 10, 0, 10, 0, 0}, GeometrySimplifier.simplify(ring, 0.01), 0);
+        assertArrayEquals(ring, GeometrySimplifier.simplify(ring, 0.0001), 0);
+    }
+
+    @Test
+    public void simplify_CollapsedIslandsAndHolesAreDropped()
+    {
+        GeoJsonPolygon mainland = new GeoJsonPolygon(new Point(0, 0), new Point(10, 0), new Point(10, 10),
+                new Point(0, 10), new Point(0, 0)).withInnerRing(new Point(4, 4), new Point(4.01, 4),
+                new Point(4.01, 4.01), new Point(4, 4));
+        GeoJsonPolygon islet = new GeoJsonPolygon(new Point(20, 0), new Point(20.01, 0), new Point(20.01, 0.01),
+                new Point(20, 0));
+        PackedGeometry simplified = GeometrySimplifier.simplify(
+                PackedGeometry.of(new GeoJsonMultiPolygon(Arrays.asList(mainland, islet))), 0.25);
+        assertTrue(simplified.isMultiPolygon());
+        assertEquals(1, simplified.getPolygons().size());
+        assertEquals(1, simplified.getPolygons().get(0).getRings().length);
+    }
+
+    @Test
+    public void onBeforeConvert_BboxAndLevels()
+    {
+        Country country = new Country();
+        country.setGeometry(PackedGeometry.of(new GeoJsonPolygon(new Point(-1, -2), new Point(3, -2), new Point(3, 4),
+                new Point(-1, 4), new Point(-1, -2))));
+        new CountryGeometryCallback().onBeforeConvert(country, "countries");
+        assertEquals(-1, country.getBbox().getMinX(), 0);
+        assertEquals(-2, country.getBbox().getMinY(), 0);
+        assertEquals(3, country.getBbox().getMaxX(), 0);
+        assertEquals(4, country.getBbox().getMaxY(), 0);
+        assertFalse(country.getGeometryLow().isMultiPolygon());
+
+        country.setGeometry(null);
+        new CountryGeometryCallback().onBeforeConvert(country, "countries");
+        assertNull(country.getBbox());
+        assertNull(country.getGeometryHigh());
+    }
+}
@@ -0,0 +1,69 @@
+package com.jordanec.peopledirectory.geo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jordanec.peopledirectory.model.Country;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.geo.GeoJsonMultiPolygon;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PackedGeometryConvertersTest
+{
+    MappingMongoConverter mappingMongoConverter;
+    Country country;
+
+    @Before
+    public void setUp()
+    {
+        MongoCustomConversions conversions = new MongoCustomConversions(PackedGeometryConverters.getConvertersToRegister());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        mappingMongoConverter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        mappingMongoConverter.setCustomConversions(conversions);
+        mappingMongoConverter.afterPropertiesSet();
+
+        country = new Country();
+        country.setName("Islands");
+        country.setGeometryMulti(PackedGeometry.of(new GeoJsonMultiPolygon(Arrays.asList(
+                new GeoJsonPolygon(new Point(20, 0), new Point(22, 0), new Point(21, 2), new Point(20, 0)),
+                new GeoJsonPolygon(new Point(30, 0), new Point(32, 0), new Point(32, 2), new Point(30, 2),
+                        new Point(30, 0))))));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void writeAndRead_GeoJsonDocument()
+    {
+        Document document = new Document();
+        mappingMongoConverter.write(country, document);
+        Document geometryMulti = (Document) document.get("geometryMulti");
+        assertEquals("MultiPolygon", geometryMulti.getString("type"));
+        List<Object> firstPosition = ((List<List<List<List<Object>>>>) geometryMulti.get("coordinates")).get(0).get(0).get(0);
+        assertEquals(Arrays.asList(20.0, 0.0), firstPosition);
+
+        Country read = mappingMongoConverter.read(Country.class, document);
+        assertEquals(country.getGeometryMulti(), read.getGeometryMulti());
+    }
+
+    @Test
+    public void deserialize_TypeAfterCoordinates() throws Exception
+    {
+        Country read = new ObjectMapper().readValue("{\"name\": \"Square\", \"geometry\": {\"coordinates\": "
+                + "[[[0, 0], [10, 0, 5], [10, 10], [0, 0]]], \"type\": \"Polygon\"}}", Country.class);
+        assertEquals(PackedGeometry.POLYGON, read.getGeometry().getType());
+        assertArrayEquals(new double[] {0, 0, 10, 0, 10, 10, 0, 0}, read.getGeometry().getPolygons().get(0).getRings()[0], 0);
+    }
+}
@@ -0,0 +1,37 @@
+package com.jordanec.peopledirectory.geo;
+
+import com.jordanec.peopledirectory.service.CountryCatalogChangedEvent;
+import org.junit.Test;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SimplifiedGeometryCacheTest
+{
+    SimplifiedGeometryCache simplifiedGeometryCache = new SimplifiedGeometryCache();
+    PackedGeometry square = PackedGeometry.of(new GeoJsonPolygon(new Point(0, 0), new Point(10, 0),
+            new Point(10, 10), new Point(0, 10), new Point(0, 0)));
+
+    @Test
+    public void get_CachedUntilCatalogChanges()
+    {
+        assertSame(square, simplifiedGeometryCache.get("1", "geometry", GeometryDetail.LOW, () -> square));
+        assertSame(square, simplifiedGeometryCache.get("1", "geometry", GeometryDetail.LOW, () -> null));
+        assertEquals(1, simplifiedGeometryCache.getStats().getSize());
+        simplifiedGeometryCache.onCountryCatalogChanged(new CountryCatalogChangedEvent(this));
+        assertEquals(0, simplifiedGeometryCache.getStats().getSize());
+    }
+
+    @Test
+    public void get_SimplifiedBeforeClearIsNotStored()
+    {
+        PackedGeometry stale = simplifiedGeometryCache.get("1", "geometry", GeometryDetail.LOW, () -> {
+            simplifiedGeometryCache.onCountryCatalogChanged(new CountryCatalogChangedEvent(this));
+            return square;
+        });
+        assertSame(square, stale);
+        assertEquals(0, simplifiedGeometryCache.getStats().getSize());
+    }
+}
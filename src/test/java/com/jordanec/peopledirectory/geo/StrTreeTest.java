@@ -0,0 +1,43 @@
+package com.jordanec.peopledirectory.geo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class StrTreeTest
+{
+    @Test
+    public void search_SameItemsAsBruteForce()
+    {
+        Random random = new Random(42);
+        double[][] boxes = new double[2000][];
+        for (int i = 0; i < boxes.length; i++)
+        {
+            double x = random.nextDouble() * 360 - 180;
+            double y = random.nextDouble() * 180 - 90;
+            boxes[i] = new double[] {x, y, x + random.nextDouble() * 20, y + random.nextDouble() * 20};
+        }
+        StrTree strTree = StrTree.build(boxes, 4);
+        for (int q = 0; q < 500; q++)
+        {
+            double x = random.nextDouble() * 360 - 180;
+            double y = random.nextDouble() * 180 - 90;
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < boxes.length; i++)
+            {
+                if (x >= boxes[i][0] && x <= boxes[i][2] && y >= boxes[i][1] && y <= boxes[i][3])
+                {
+                    expected.add(i);
+                }
+            }
+            List<Integer> found = new ArrayList<>();
+            strTree.search(x, y, found::add);
+            found.sort(null);
+            assertEquals(expected, found);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.jordanec.peopledirectory.repository;
+
+import com.jordanec.peopledirectory.geo.CountryGeometryCallback;
+import com.jordanec.peopledirectory.geo.CountrySpatialIndex;
+import com.jordanec.peopledirectory.geo.GeometryDetail;
+import com.jordanec.peopledirectory.geo.PackedGeometry;
+import com.jordanec.peopledirectory.geo.PackedGeometryConverters;
+import com.jordanec.peopledirectory.model.Country;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CountryRepositoryImplTest
+{
+    MongoOperations mongoOperations;
+    CountryRepositoryImpl countryRepository;
+
+    @Before
+    public void setUp()
+    {
+        MongoCustomConversions conversions = new MongoCustomConversions(PackedGeometryConverters.getConvertersToRegister());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter mappingMongoConverter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        mappingMongoConverter.setCustomConversions(conversions);
+        mappingMongoConverter.afterPropertiesSet();
+
+        mongoOperations = Mockito.mock(MongoOperations.class);
+        Mockito.doReturn(mappingMongoConverter).when(mongoOperations).getConverter();
+        countryRepository = new CountryRepositoryImpl(mongoOperations);
+        countryRepository.countryGeometryCallback = new CountryGeometryCallback();
+        countryRepository.countrySpatialIndex = Mockito.mock(CountrySpatialIndex.class);
+    }
+
+    @Test
+    public void findAll_LegacyCountriesReadInOneQuery()
+    {
+        Country simplified = country("1");
+        simplified.setGeometryLow(square(0));
+        Country legacy1 = country("2");
+        Country legacy2 = country("3");
+        Mockito.doReturn(Arrays.asList(simplified, legacy1, legacy2)).doReturn(Arrays.asList(full("2"), full("3")))
+                .when(mongoOperations).find(Mockito.any(Query.class), Mockito.eq(Country.class));
+
+        List<Country> countries = countryRepository.findAll(GeometryDetail.LOW);
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(mongoOperations, Mockito.times(2)).find(queries.capture(), Mockito.eq(Country.class));
+        assertEquals(Arrays.asList("2", "3"),
+                ((Document) queries.getAllValues().get(1).getQueryObject().get("_id")).get("$in"));
+        Mockito.verify(mongoOperations, Mockito.never()).findById(Mockito.any(), Mockito.any());
+        for (Country country : countries)
+        {
+            assertNotNull(country.getGeometry());
+            assertNull(country.getGeometryLow());
+        }
+    }
+
+    @Test
+    public void createDocument_DerivedFields()
+    {
+        Document document = new Document("name", "Square").append("geometry", new Document("type", "Polygon")
+                .append("coordinates", Arrays.asList(Arrays.asList(Arrays.asList(0.0, 0.0), Arrays.asList(10.0, 0.0),
+                        Arrays.asList(10.0, 10.0), Arrays.asList(0.0, 10.0), Arrays.asList(0.0, 0.0)))));
+        Mockito.doAnswer(invocation -> invocation.getArgument(0)).when(mongoOperations)
+                .save(Mockito.any(Document.class), Mockito.eq("countries"));
+
+        Document saved = countryRepository.createDocument(document);
+        Document bbox = (Document) saved.get("bbox");
+        assertEquals(0.0, bbox.get("minX"));
+        assertEquals(10.0, bbox.get("maxY"));
+        for (GeometryDetail detail : GeometryDetail.values())
+        {
+            if (detail.isSimplified())
+            {
+                assertNotNull(detail.getField(), saved.get(detail.getField()));
+            }
+        }
+    }
+
+    @Test
+    public void findCountryAt_MongoFallbackWithoutGeometry()
+    {
+        Mockito.doReturn(false).when(countryRepository.countrySpatialIndex).isReady();
+        countryRepository.findCountryAt(new GeoJsonPoint(5, 5));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(mongoOperations).findOne(query.capture(), Mockito.eq(Country.class));
+        Document fields = query.getValue().getFieldsObject();
+        assertEquals(1, fields.get("name"));
+        assertNull(fields.get("geometry"));
+        assertNull(fields.get("geometryMulti"));
+        assertNull(fields.get("bbox"));
+    }
+
+    private static Country country(String id)
+    {
+        Country country = new Country();
+        country.setId(id);
+        return country;
+    }
+
+    private static Country full(String id)
+    {
+        Country country = country(id);
+        country.setGeometry(square(10));
+        return country;
+    }
+
+    private static PackedGeometry square(double offset)
+    {
+        return PackedGeometry.of(new GeoJsonPolygon(new Point(offset, 0), new Point(offset + 10, 0),
+                new Point(offset + 10, 10), new Point(offset, 10), new Point(offset, 0)));
+    }
+}
@@ -0,0 +1,76 @@
+package com.jordanec.peopledirectory.repository;
+
+import com.jordanec.peopledirectory.geo.PackedGeometry;
+import com.jordanec.peopledirectory.geo.PackedPolygon;
+import com.jordanec.peopledirectory.model.Person;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PersonRepositoryImplTest
+{
+    MongoOperations mongoOperations;
+    PersonRepositoryImpl personRepository;
+
+    @Before
+    public void setUp()
+    {
+        mongoOperations = Mockito.mock(MongoOperations.class);
+        MongoConverter converter = Mockito.mock(MongoConverter.class);
+        Mockito.doReturn(converter).when(mongoOperations).getConverter();
+        Mockito.doReturn(new Document()).when(converter).convertToMongoType(Mockito.any());
+        personRepository = new PersonRepositoryImpl(mongoOperations);
+    }
+
+    @Test
+    public void findByCurrentLocationWithinParallel_OnGivenExecutor()
+    {
+        Person shared = new Person();
+        shared.setId("1");
+        Person other = new Person();
+        other.setId("2");
+        Mockito.doAnswer(invocation -> {
+            // never on the common ForkJoinPool
+            assertTrue(Thread.currentThread().getName().startsWith("geo-within-"));
+            return Arrays.asList(shared, other);
+        }).doAnswer(invocation -> Collections.singletonList(shared))
+                .when(mongoOperations).find(Mockito.any(Query.class), Mockito.eq(Person.class));
+        ExecutorService executor = Executors.newFixedThreadPool(1, new CustomizableThreadFactory("geo-within-"));
+
+        PackedGeometry multiPolygon = PackedGeometry.multiPolygon(Arrays.asList(square(0), square(20)));
+        List<Person> persons = personRepository.findByCurrentLocationWithinParallel(multiPolygon, executor);
+        executor.shutdown();
+        // a person on a shared border comes back once
+        assertEquals(2, persons.size());
+        Mockito.verify(mongoOperations, Mockito.times(2)).find(Mockito.any(Query.class), Mockito.eq(Person.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lookupCountry_GeometryNotJoined()
+    {
+        // CountryDTO has no geometry, joining it would only move megabytes to drop them
+        personRepository.lookupCountry(null, Arrays.asList("name", "geometry"));
+    }
+
+    private static PackedPolygon square(double offset)
+    {
+        return PackedPolygon.of(new GeoJsonPolygon(new Point(offset, 0), new Point(offset + 10, 0),
+                new Point(offset + 10, 10), new Point(offset, 10), new Point(offset, 0)));
+    }
+}
@@ -0,0 +1,305 @@
+package com.jordanec.peopledirectory.repository;
+
+import com.jordanec.peopledirectory.PeopleDirectoryApplication;
+import com.jordanec.peopledirectory.dto.CountryDTO;
+import com.jordanec.peopledirectory.dto.KeysetPageRequestDTO;
+import com.jordanec.peopledirectory.model.Person;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.geo.Point;
+import org.springframework.data.geo.Polygon;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Explains every command sent by the person query methods against a synthetic data set of
+ * {@code -DqueryPlan.scale} persons (20000 by default) and fails when one scans the collection or examines more
+ * than {@link #MAX_EXAMINED_RATIO} documents per document returned. Methods known to scan are explained and logged
+ * only; remove them from that list once they are backed by an index.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = PeopleDirectoryApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles("test")
+@DirtiesContext
+public class PersonRepositoryQueryPlanTest
+{
+    private static final int SCALE = Integer.getInteger("queryPlan.scale", 20000);
+    private static final double MAX_EXAMINED_RATIO = 2.0;
+    private static final long FIRST_SYNTHETIC_DNI = 900_000_000_000L;
+    private static final String[] FIRST_NAMES = {"Katherine", "Juan", "Maria", "Ahmed", "Wei", "Olga", "Kwame", "Lucia"};
+    private static final String[] LAST_NAMES = {"Jenkins", "Aruba", "Garcia", "Khan", "Chen", "Ivanova", "Mensah", "Rossi"};
+    private static final String[] COUNTRIES = {"Nigeria", "Aruba", "Costa Rica", "China", "Peru", "Ghana", "Italy"};
+
+    private final Logger logger = LoggerFactory.getLogger(PersonRepositoryQueryPlanTest.class);
+
+    @Autowired
+    private PersonRepository personRepository;
+    @Autowired
+    private MongoOperations mongoOperations;
+    @Autowired
+    private QueryPlanRecorder queryPlanRecorder;
+
+    @TestConfiguration
+    static class QueryPlanConfig
+    {
+        @Bean
+        QueryPlanRecorder queryPlanRecorder()
+        {
+            return new QueryPlanRecorder();
+        }
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer queryPlanRecorderCustomizer(QueryPlanRecorder queryPlanRecorder)
+        {
+            return builder -> builder.addCommandListener(queryPlanRecorder);
+        }
+    }
+
+    @Before
+    public void insertSyntheticPersons()
+    {
+        Query synthetic = new Query(Criteria.where("dni").gte(FIRST_SYNTHETIC_DNI));
+        if (mongoOperations.count(synthetic, Person.class) >= SCALE)
+        {
+            return;
+        }
+        mongoOperations.remove(synthetic, Person.class);
+        Random random = new Random(42);
+        List<Person> batch = new ArrayList<>();
+        for (int i = 0; i < SCALE; i++)
+        {
+            batch.add(syntheticPerson(i, random));
+            if (batch.size() == 1000)
+            {
+                mongoOperations.insert(batch, Person.class);
+                batch.clear();
+            }
+        }
+        mongoOperations.insert(batch, Person.class);
+    }
+
+    @Test
+    public void findByDni()
+    {
+        assertIndexed("findByDni", () -> personRepository.findByDni(FIRST_SYNTHETIC_DNI + 10));
+    }
+
+    @Test
+    public void findByDniIn()
+    {
+        assertIndexed("findByDniIn", () -> personRepository.findByDniIn(
+                Arrays.asList(FIRST_SYNTHETIC_DNI + 10, FIRST_SYNTHETIC_DNI + 20, FIRST_SYNTHETIC_DNI + 30)));
+    }
+
+    @Test
+    public void findByGender()
+    {
+        assertIndexed("findByGender", () -> personRepository.findByGender("Female"));
+    }
+
+    @Test
+    public void findByMobileBetween()
+    {
+        assertIndexed("findByMobileBetween", () -> personRepository.findByMobileBetween(80000000L, 80100000L));
+    }
+
+    @Test
+    public void findByDateOfBirthBetweenOrderById()
+    {
+        assertIndexed("findByDateOfBirthBetweenOrderById", () -> personRepository.findByDateOfBirthBetweenOrderById(
+                date(1980, 1, 1), date(1980, 3, 1)));
+    }
+
+    @Test
+    public void readAllByDateOfBirthNotNullOrderByDateOfBirthDesc()
+    {
+        assertIndexed("readAllByDateOfBirthNotNullOrderByDateOfBirthDesc", () -> {
+            try (Stream<Person> persons = personRepository.readAllByDateOfBirthNotNullOrderByDateOfBirthDesc())
+            {
+                persons.limit(10).forEach(person -> {});
+            }
+        });
+    }
+
+    @Test
+    public void findBornBetween()
+    {
+        assertIndexed("findBornBetween", () -> personRepository.findBornBetween(LocalDate.of(1980, 1, 1),
+                LocalDate.of(1980, 3, 1)));
+    }
+
+    @Test
+    public void findCurrentLocationsByDni()
+    {
+        assertIndexed("findCurrentLocationsByDni", () -> personRepository.findCurrentLocationsByDni(
+                Arrays.asList(FIRST_SYNTHETIC_DNI, FIRST_SYNTHETIC_DNI + 1, FIRST_SYNTHETIC_DNI + 2)));
+    }
+
+    @Test
+    public void findByLastNameAndFirstNameAllIgnoreCase()
+    {
+        assertIndexed("findByLastNameAndFirstNameAllIgnoreCase",
+                () -> personRepository.findByLastNameAndFirstNameAllIgnoreCase("jenkins", "katherine"));
+    }
+
+    @Test
+    public void findByLastNameOrFirstNameAllIgnoreCase()
+    {
+        assertIndexed("findByLastNameOrFirstNameAllIgnoreCase",
+                () -> personRepository.findByLastNameOrFirstNameAllIgnoreCase("jenkins", "katherine"));
+    }
+
+    @Test
+    public void findDistinctPeopleByCountryIgnoreCase()
+    {
+        assertIndexed("findDistinctPeopleByCountryIgnoreCase",
+                () -> personRepository.findDistinctPeopleByCountryIgnoreCase("nigeria"));
+    }
+
+    @Test
+    public void findByCountryId()
+    {
+        assertIndexed("findByCountryId", () -> personRepository.findByCountryId("country-2"));
+    }
+
+    @Test
+    public void countByCountryId()
+    {
+        assertIndexed("countByCountryId", () -> personRepository.countByCountryId("country-2"));
+    }
+
+    @Test
+    public void getCountByCountry()
+    {
+        assertIndexed("getCountByCountry", () -> personRepository.getCountByCountry("NIGERIA"));
+    }
+
+    @Test
+    public void findByLastNameAndFirstNameAllIgnoreCaseSlice()
+    {
+        assertIndexed("findByLastNameAndFirstNameAllIgnoreCaseSlice", () -> personRepository
+                .findByLastNameAndFirstNameAllIgnoreCaseSlice("JENKINS10", "katherine", pageRequest()));
+    }
+
+    @Test
+    public void findByGenderSlice()
+    {
+        assertIndexed("findByGenderSlice", () -> personRepository.findByGenderSlice("Male", pageRequest()));
+    }
+
+    @Test
+    public void findByCountryIdSlice()
+    {
+        assertIndexed("findByCountryIdSlice", () -> personRepository.findByCountryIdSlice("country-2", pageRequest()));
+    }
+
+    @Test
+    public void findByCountryNameIgnoreCaseSlice()
+    {
+        assertIndexed("findByCountryNameIgnoreCaseSlice",
+                () -> personRepository.findByCountryNameIgnoreCaseSlice("NIGERIA", pageRequest()));
+    }
+
+    @Test
+    public void findByMobileBetweenSlice()
+    {
+        assertIndexed("findByMobileBetweenSlice",
+                () -> personRepository.findByMobileBetweenSlice(80000000L, 80100000L, pageRequest()));
+    }
+
+    /*
+     * Known scans, explained and logged until an index backs them
+     */
+
+    @Test
+    public void findByFirstNameLike()
+    {
+        // unanchored regex, the service answers it from PersonTypeaheadIndex and only reads the matches by dni
+        logKnownScan("findByFirstNameLike", () -> personRepository.findByFirstNameLike("Kat"));
+    }
+
+    @Test
+    public void findByCurrentLocationWithin()
+    {
+        // legacy $polygon can only use a 2d index, currentLocation has a 2dsphere one
+        logKnownScan("findByCurrentLocationWithin", () -> personRepository.findByCurrentLocationWithin(
+                new Polygon(new Point(-70.1, 12.4), new Point(-69.8, 12.4), new Point(-69.8, 12.7))));
+    }
+
+    private void assertIndexed(String method, Runnable invocation)
+    {
+        List<QueryPlan> queryPlans = queryPlanRecorder.explain(invocation, mongoOperations);
+        assertFalse(method + " sent no command", queryPlans.isEmpty());
+        for (QueryPlan queryPlan : queryPlans)
+        {
+            logger.info("{}(): {}", method, queryPlan);
+            assertFalse(method + " scans the collection: " + queryPlan, queryPlan.isCollectionScan());
+            assertTrue(method + " examines " + queryPlan.getExaminedRatio() + " documents per result: " + queryPlan,
+                    queryPlan.getExaminedRatio() <= MAX_EXAMINED_RATIO);
+        }
+    }
+
+    private void logKnownScan(String method, Runnable invocation)
+    {
+        for (QueryPlan queryPlan : queryPlanRecorder.explain(invocation, mongoOperations))
+        {
+            logger.warn("{}(): known scan, {}", method, queryPlan);
+        }
+    }
+
+    private static KeysetPageRequestDTO pageRequest()
+    {
+        KeysetPageRequestDTO pageRequest = new KeysetPageRequestDTO();
+        pageRequest.setSize(50);
+        return pageRequest;
+    }
+
+    private static Date date(int year, int month, int day)
+    {
+        return Date.from(LocalDate.of(year, month, day).atStartOfDay().toInstant(ZoneOffset.UTC));
+    }
+
+    private static Person syntheticPerson(int i, Random random)
+    {
+        Person person = new Person();
+        person.setDni(FIRST_SYNTHETIC_DNI + i);
+        person.setFirstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+        person.setLastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)] + i);
+        person.setEmail("synthetic" + i + "@example.com");
+        person.setGender(random.nextBoolean() ? "Female" : "Male");
+        person.setMobile(10000000L + random.nextInt(90000000));
+        person.setDateOfBirth(LocalDate.of(1940, 1, 1).plusDays(random.nextInt(365 * 60)));
+        int country = random.nextInt(COUNTRIES.length);
+        CountryDTO countryDTO = new CountryDTO();
+        countryDTO.setId("country-" + country);
+        countryDTO.setName(COUNTRIES[country]);
+        person.setCountry(countryDTO);
+        person.setCurrentLocation(new GeoJsonPoint(-180 + random.nextDouble() * 360, -80 + random.nextDouble() * 160));
+        return person;
+    }
+}
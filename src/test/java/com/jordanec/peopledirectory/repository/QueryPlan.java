@@ -0,0 +1,137 @@
+package com.jordanec.peopledirectory.repository;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Winning plan and execution statistics of one command, read from {@code explain} with
+ * {@code executionStats} verbosity. Stages are collected from the whole explain output so the plans of
+ * {@code find}, {@code count} and the {@code $cursor} stage of {@code aggregate} are read the same way.
+ */
+public final class QueryPlan
+{
+    private final String command;
+    private final Set<String> stages = new LinkedHashSet<>();
+    private long docsExamined;
+    private long keysExamined;
+    private long returned;
+
+    private QueryPlan(String command)
+    {
+        this.command = command;
+    }
+
+    static QueryPlan of(Document command, Document explain)
+    {
+        QueryPlan queryPlan = new QueryPlan(command.keySet().iterator().next() + " " + command.toJson());
+        queryPlan.collectStages(explain.get("queryPlanner") != null ? explain.get("queryPlanner") : explain);
+        List<Document> executionStats = new ArrayList<>();
+        findAll(explain, "executionStats", executionStats);
+        for (Document stats : executionStats)
+        {
+            queryPlan.docsExamined += number(stats, "totalDocsExamined");
+            queryPlan.keysExamined += number(stats, "totalKeysExamined");
+            queryPlan.returned += number(stats, "nReturned");
+        }
+        return queryPlan;
+    }
+
+    public boolean isCollectionScan()
+    {
+        return stages.contains("COLLSCAN");
+    }
+
+    /**
+     * Documents examined per document returned, an empty result counts as one returned.
+     */
+    public double getExaminedRatio()
+    {
+        return (double) docsExamined / Math.max(1, returned);
+    }
+
+    public String getCommand()
+    {
+        return command;
+    }
+
+    public Set<String> getStages()
+    {
+        return stages;
+    }
+
+    public long getDocsExamined()
+    {
+        return docsExamined;
+    }
+
+    public long getKeysExamined()
+    {
+        return keysExamined;
+    }
+
+    public long getReturned()
+    {
+        return returned;
+    }
+
+    @Override
+    public String toString()
+    {
+        return command + " stages=" + stages + " docsExamined=" + docsExamined + " keysExamined=" + keysExamined
+                + " returned=" + returned;
+    }
+
+    private void collectStages(Object node)
+    {
+        if (node instanceof Document)
+        {
+            Document document = (Document) node;
+            if (document.get("stage") instanceof String)
+            {
+                stages.add(document.getString("stage"));
+            }
+            for (Map.Entry<String, Object> entry : document.entrySet())
+            {
+                // only the plan that ran matters
+                if (!entry.getKey().equals("rejectedPlans") && !entry.getKey().equals("allPlansExecution"))
+                {
+                    collectStages(entry.getValue());
+                }
+            }
+        }
+        else if (node instanceof Collection)
+        {
+            ((Collection<?>) node).forEach(this::collectStages);
+        }
+    }
+
+    private static void findAll(Object node, String key, List<Document> found)
+    {
+        if (node instanceof Document)
+        {
+            Document document = (Document) node;
+            if (document.get(key) instanceof Document)
+            {
+                found.add(document.get(key, Document.class));
+                return;
+            }
+            document.values().forEach(value -> findAll(value, key, found));
+        }
+        else if (node instanceof Collection)
+        {
+            ((Collection<?>) node).forEach(value -> findAll(value, key, found));
+        }
+    }
+
+    private static long number(Document document, String key)
+    {
+        Object value = document.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
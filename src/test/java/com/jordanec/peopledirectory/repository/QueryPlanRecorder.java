@@ -0,0 +1,62 @@
+package com.jordanec.peopledirectory.repository;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.DecoderContext;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Driver {@link CommandListener} recording the read commands a repository method sends, so they can be explained
+ * exactly as they were issued. Recording is per thread and only active inside {@link #explain(Runnable)}.
+ */
+public class QueryPlanRecorder implements CommandListener
+{
+    private static final List<String> EXPLAINABLE_COMMANDS = Arrays.asList("find", "aggregate", "count", "distinct");
+
+    private final ThreadLocal<List<Document>> recorded = new ThreadLocal<>();
+
+    @Override
+    public void commandStarted(CommandStartedEvent event)
+    {
+        List<Document> commands = recorded.get();
+        if (commands != null && EXPLAINABLE_COMMANDS.contains(event.getCommandName()))
+        {
+            Document command = new DocumentCodec().decode(event.getCommand().asBsonReader(),
+                    DecoderContext.builder().build());
+            // session and cluster fields are not part of the query
+            command.keySet().removeIf(key -> key.startsWith("$") || key.equals("lsid") || key.equals("txnNumber"));
+            commands.add(command);
+        }
+    }
+
+    /**
+     * Runs {@code invocation} and explains every read command it sent.
+     */
+    public List<QueryPlan> explain(Runnable invocation, MongoOperations mongoOperations)
+    {
+        List<Document> commands = new ArrayList<>();
+        recorded.set(commands);
+        try
+        {
+            invocation.run();
+        }
+        finally
+        {
+            recorded.remove();
+        }
+        List<QueryPlan> queryPlans = new ArrayList<>();
+        for (Document command : commands)
+        {
+            Document explain = mongoOperations.executeCommand(
+                    new Document("explain", command).append("verbosity", "executionStats"));
+            queryPlans.add(QueryPlan.of(command, explain));
+        }
+        return queryPlans;
+    }
+}
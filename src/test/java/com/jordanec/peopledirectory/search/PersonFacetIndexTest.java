@@ -0,0 +1,209 @@
+package com.jordanec.peopledirectory.search;
+
+import com.jordanec.peopledirectory.dto.CountryDTO;
+import com.jordanec.peopledirectory.dto.FacetFilterDTO;
+import com.jordanec.peopledirectory.dto.FacetQueryDTO;
+import com.jordanec.peopledirectory.dto.FacetResultDTO;
+import com.jordanec.peopledirectory.model.Person;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PersonFacetIndexTest
+{
+    private static final String[] GENDERS = {"Female", "Male"};
+    private static final String[] COLORS = {"Red", "Green", "Blue", "Teal"};
+    private static final String[] SIZES = {"S", "M", "L"};
+
+    @InjectMocks
+    PersonFacetIndex personFacetIndex;
+    @Mock
+    MongoOperations mongoOperations;
+
+    private final List<Person> persons = new ArrayList<>();
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(personFacetIndex, "FACETS_ENABLED", true);
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++)
+        {
+            persons.add(person(i, GENDERS[random.nextInt(GENDERS.length)], COLORS[random.nextInt(COLORS.length)],
+                    SIZES[random.nextInt(SIZES.length)], "country-" + random.nextInt(5)));
+        }
+        Iterator<Person> iterator = new ArrayList<>(persons).iterator();
+        Mockito.doReturn(new CloseableIterator<Person>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Person next()
+            {
+                return iterator.next();
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        }).when(mongoOperations).stream(Mockito.any(Query.class), Mockito.eq(Person.class));
+    }
+
+    @Test
+    public void query_SameCountsAsBruteForce()
+    {
+        // Female and (Red or Blue) and not size S
+        FacetFilterDTO filter = and(values("gender", "Female"), values("color", "Red", "Blue"),
+                not(values("shirtSize", "S")));
+        assertMatchesBruteForce(filter);
+
+        // writes after the build: one replaced, one deleted, one added
+        persons.set(0, person(0, "Male", "Teal", "S", "country-9"));
+        Person deleted = persons.remove(1);
+        persons.add(person(5000, "Female", "Red", "M", "country-1"));
+        personFacetIndex.onSaved(Arrays.asList(persons.get(0), persons.get(persons.size() - 1)));
+        personFacetIndex.onDeleted(Collections.singletonList(deleted));
+        assertMatchesBruteForce(filter);
+        assertMatchesBruteForce(or(values("country", "country-9"), values("gender", "Male")));
+    }
+
+    @Test
+    public void onSaved_DuringRebuild() throws InterruptedException
+    {
+        CloseableIterator<Person> cursor = mongoOperations.stream(new Query(), Person.class);
+        Person added = person(5000, "Female", "Red", "M", "country-1");
+        Thread writer = new Thread(() -> personFacetIndex.onSaved(Collections.singletonList(added)));
+        Mockito.doAnswer(invocation -> {
+            // the write lands while the collection is streamed, after the cursor went past it
+            writer.start();
+            while (writer.isAlive() && writer.getState() != Thread.State.WAITING)
+            {
+                Thread.sleep(1);
+            }
+            return cursor;
+        }).when(mongoOperations).stream(Mockito.any(Query.class), Mockito.eq(Person.class));
+
+        personFacetIndex.rebuild();
+        writer.join();
+        persons.add(added);
+        assertMatchesBruteForce(values("gender", "Female"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void query_UnsupportedField()
+    {
+        FacetQueryDTO facetQuery = new FacetQueryDTO();
+        facetQuery.setFacets(Collections.singletonList("firstName"));
+        personFacetIndex.query(facetQuery);
+    }
+
+    private void assertMatchesBruteForce(FacetFilterDTO filter)
+    {
+        FacetQueryDTO facetQuery = new FacetQueryDTO();
+        facetQuery.setFilter(filter);
+        facetQuery.setFacets(Arrays.asList("color", "country"));
+        FacetResultDTO result = personFacetIndex.query(facetQuery);
+
+        int count = 0;
+        Map<String, Integer> colors = new LinkedHashMap<>();
+        Map<String, Integer> countries = new LinkedHashMap<>();
+        for (Person person : persons)
+        {
+            if (matches(filter, person))
+            {
+                count++;
+                colors.merge(person.getColor(), 1, Integer::sum);
+                countries.merge(person.getCountry().getId(), 1, Integer::sum);
+            }
+        }
+        assertEquals(count, result.getCount());
+        assertEquals(colors, result.getFacets().get("color"));
+        assertEquals(countries, result.getFacets().get("country"));
+    }
+
+    private static boolean matches(FacetFilterDTO filter, Person person)
+    {
+        if (filter.getField() != null)
+        {
+            String value = filter.getField().equals("gender") ? person.getGender()
+                    : filter.getField().equals("color") ? person.getColor()
+                    : filter.getField().equals("shirtSize") ? person.getShirtSize() : person.getCountry().getId();
+            return filter.getValues().contains(value);
+        }
+        if (filter.getAnd() != null)
+        {
+            return filter.getAnd().stream().allMatch(operand -> matches(operand, person));
+        }
+        if (filter.getOr() != null)
+        {
+            return filter.getOr().stream().anyMatch(operand -> matches(operand, person));
+        }
+        return !matches(filter.getNot(), person);
+    }
+
+    private static FacetFilterDTO values(String field, String... values)
+    {
+        FacetFilterDTO filter = new FacetFilterDTO();
+        filter.setField(field);
+        filter.setValues(Arrays.asList(values));
+        return filter;
+    }
+
+    private static FacetFilterDTO and(FacetFilterDTO... operands)
+    {
+        FacetFilterDTO filter = new FacetFilterDTO();
+        filter.setAnd(Arrays.asList(operands));
+        return filter;
+    }
+
+    private static FacetFilterDTO or(FacetFilterDTO... operands)
+    {
+        FacetFilterDTO filter = new FacetFilterDTO();
+        filter.setOr(Arrays.asList(operands));
+        return filter;
+    }
+
+    private static FacetFilterDTO not(FacetFilterDTO operand)
+    {
+        FacetFilterDTO filter = new FacetFilterDTO();
+        filter.setNot(operand);
+        return filter;
+    }
+
+    private static Person person(long dni, String gender, String color, String shirtSize, String countryId)
+    {
+        Person person = new Person();
+        person.setDni(dni);
+        person.setGender(gender);
+        person.setColor(color);
+        person.setShirtSize(shirtSize);
+        CountryDTO country = new CountryDTO();
+        country.setId(countryId);
+        person.setCountry(country);
+        return person;
+    }
+}
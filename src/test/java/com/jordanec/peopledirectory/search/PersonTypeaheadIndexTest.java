@@ -0,0 +1,149 @@
+package com.jordanec.peopledirectory.search;
+
+import com.jordanec.peopledirectory.dto.TypeaheadHitDTO;
+import com.jordanec.peopledirectory.model.Person;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PersonTypeaheadIndexTest
+{
+    @InjectMocks
+    PersonTypeaheadIndex personTypeaheadIndex;
+    @Mock
+    MongoOperations mongoOperations;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(personTypeaheadIndex, "TYPEAHEAD_ENABLED", true);
+        ReflectionTestUtils.setField(personTypeaheadIndex, "MAX_CANDIDATES", 5000);
+        Iterator<Person> iterator = Arrays.asList(
+                person("1", 1, "Kate", "Smith", "kate.smith@acme.com", "Acme"),
+                person("2", 2, "Katherine", "Jones", "kjones@initech.com", "Initech"),
+                person("3", 3, "José", "Katz", "jkatz@acme.com", "Acme"),
+                person("4", 4, "Mark", "Skate", "mark@globex.com", "Globex")).iterator();
+        Mockito.doReturn(new CloseableIterator<Person>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Person next()
+            {
+                return iterator.next();
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        }).when(mongoOperations).stream(Mockito.any(Query.class), Mockito.eq(Person.class));
+    }
+
+    @Test
+    public void search_RankedByFieldAndMatchType()
+    {
+        assertFalse(personTypeaheadIndex.isReady());
+        // exact first name, then substring of a last name
+        assertEquals(Arrays.asList(1L, 4L), dnis(personTypeaheadIndex.search("kate", 10)));
+        assertTrue(personTypeaheadIndex.isReady());
+        // prefix of a first name, prefix of a last name, substring of a last name
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), dnis(personTypeaheadIndex.search("kat", 10)));
+        assertEquals(Arrays.asList(1L, 2L), dnis(personTypeaheadIndex.search("kat", 2)));
+        assertEquals(Arrays.asList(1L, 2L, 3L), dnis(personTypeaheadIndex.search("k", 10)));
+        // diacritics and every token has to match
+        assertEquals(Collections.singletonList(3L), dnis(personTypeaheadIndex.search("jose ac", 10)));
+        assertTrue(personTypeaheadIndex.search("kate initech", 10).isEmpty());
+    }
+
+    @Test
+    public void onSavedOnDeleted_KeepIndexCurrent()
+    {
+        personTypeaheadIndex.rebuild();
+        personTypeaheadIndex.onSaved(Collections.singletonList(person(null, 2, "Kathy", "Jones", null, null)));
+        personTypeaheadIndex.onSaved(Collections.singletonList(person("5", 5, "Ekaterina", "Ivanova", null, null)));
+        List<TypeaheadHitDTO> hits = personTypeaheadIndex.search("kath", 10);
+        assertEquals(Collections.singletonList(2L), dnis(hits));
+        // the id of the replaced entry is kept, the upsert didn't return one
+        assertEquals("2", hits.get(0).getId());
+        assertEquals(Arrays.asList(5L), dnis(personTypeaheadIndex.search("kater", 10)));
+
+        personTypeaheadIndex.onDeleted(Arrays.asList(person("1", 0, null, null, null, null),
+                person(null, 3, null, null, null, null), person(null, 5, null, null, null, null)));
+        assertEquals(Collections.singletonList(2L), dnis(personTypeaheadIndex.search("ka", 10)));
+        assertTrue(personTypeaheadIndex.search("kate", 10).stream().noneMatch(hit -> hit.getDni() == 1));
+        assertEquals(2, personTypeaheadIndex.size());
+    }
+
+    @Test
+    public void onSaved_DuringRebuild() throws InterruptedException
+    {
+        CloseableIterator<Person> cursor = mongoOperations.stream(new Query(), Person.class);
+        Thread writer = new Thread(() -> personTypeaheadIndex
+                .onSaved(Collections.singletonList(person("5", 5, "Kathy", "Brown", null, null))));
+        Mockito.doAnswer(invocation -> {
+            // the first build is streaming when the write comes in
+            writer.start();
+            while (writer.isAlive() && writer.getState() != Thread.State.WAITING)
+            {
+                Thread.sleep(1);
+            }
+            return cursor;
+        }).when(mongoOperations).stream(Mockito.any(Query.class), Mockito.eq(Person.class));
+
+        personTypeaheadIndex.rebuild();
+        writer.join();
+        assertEquals(Collections.singletonList(5L), dnis(personTypeaheadIndex.search("kathy", 10)));
+        assertEquals(5, personTypeaheadIndex.size());
+    }
+
+    @Test
+    public void findDnisByFirstNameContaining_CaseSensitiveLikeTheRegex()
+    {
+        assertEquals(Arrays.asList(1L, 2L), personTypeaheadIndex.findDnisByFirstNameContaining("Kat").get());
+        assertEquals(Collections.singletonList(2L), personTypeaheadIndex.findDnisByFirstNameContaining("the").get());
+        assertTrue(personTypeaheadIndex.findDnisByFirstNameContaining("kat").get().isEmpty());
+        assertFalse(personTypeaheadIndex.findDnisByFirstNameContaining("Ka").isPresent());
+        assertFalse(personTypeaheadIndex.findDnisByFirstNameContaining("K.t").isPresent());
+    }
+
+    private static List<Long> dnis(List<TypeaheadHitDTO> hits)
+    {
+        return hits.stream().map(TypeaheadHitDTO::getDni).collect(Collectors.toList());
+    }
+
+    private static Person person(String id, long dni, String firstName, String lastName, String email,
+            String company)
+    {
+        Person person = new Person();
+        person.setId(id);
+        person.setDni(dni);
+        person.setFirstName(firstName);
+        person.setLastName(lastName);
+        person.setEmail(email);
+        person.setCompany(company);
+        return person;
+    }
+}
@@ -0,0 +1,53 @@
+package com.jordanec.peopledirectory.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class TrigramIndexTest
+{
+    @Test
+    public void candidates_SupersetOfBruteForce()
+    {
+        Random random = new Random(42);
+        String[] tokens = new String[3000];
+        TrigramIndex trigramIndex = new TrigramIndex();
+        for (int i = 0; i < tokens.length; i++)
+        {
+            tokens[i] = randomToken(random, 2 + random.nextInt(8));
+            trigramIndex.add(i, tokens[i]);
+        }
+        for (int q = 0; q < 500; q++)
+        {
+            String query = randomToken(random, 1 + random.nextInt(4));
+            List<Integer> candidates = new ArrayList<>();
+            for (int doc : trigramIndex.candidates(query))
+            {
+                candidates.add(doc);
+            }
+            for (int i = 0; i < tokens.length; i++)
+            {
+                boolean matches = query.length() < 3 ? tokens[i].startsWith(query) : tokens[i].contains(query);
+                if (matches)
+                {
+                    assertTrue(query + " should find " + tokens[i], candidates.contains(i));
+                }
+            }
+        }
+    }
+
+    // a small alphabet so that queries have matches
+    private static String randomToken(Random random, int length)
+    {
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < length; i++)
+        {
+            token.append((char) ('a' + random.nextInt(4)));
+        }
+        return token.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.repository.CountryRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CountryRegistryTest
+{
+    @InjectMocks
+    CountryRegistry countryRegistry;
+    @Mock
+    CountryRepository countryRepository;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        Mockito.doReturn(Arrays.asList(country("1", "Costa Rica", "CR"), country("2", "Aruba", "AW")))
+                .when(countryRepository).findAllWithoutGeometry();
+        countryRegistry.onCountryCatalogChanged(new CountryCatalogChangedEvent(this));
+    }
+
+    @Test
+    public void findByName_ExactFoldedAndCode()
+    {
+        assertEquals("1", countryRegistry.findByName("Costa Rica").get().getId());
+        assertEquals("1", countryRegistry.findByName(" costa RICA ").get().getId());
+        assertEquals("2", countryRegistry.findByCode("aw").get().getId());
+        assertFalse(countryRegistry.findByName("Narnia").isPresent());
+        assertEquals(3, countryRegistry.getStats().getHits());
+        assertEquals(1, countryRegistry.getStats().getMisses());
+    }
+
+    @Test
+    public void register_ReplacesRenamedCountry()
+    {
+        countryRegistry.onCountryCatalogChanged(
+                new CountryCatalogChangedEvent(this, Collections.singletonList(country("2", "Aruba (NL)", "AW"))));
+        assertFalse(countryRegistry.findByName("Aruba").isPresent());
+        assertTrue(countryRegistry.findByName("aruba (nl)").isPresent());
+        assertEquals(2, countryRegistry.size());
+        Mockito.verify(countryRepository, Mockito.times(1)).findAllWithoutGeometry();
+    }
+
+    private Country country(String id, String name, String code)
+    {
+        Country country = new Country();
+        country.setId(id);
+        country.setName(name);
+        country.setCode(code);
+        return country;
+    }
+}
@@ -0,0 +1,103 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.geo.CountrySpatialIndex;
+import com.jordanec.peopledirectory.model.Country;
+import com.jordanec.peopledirectory.repository.CountryRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CountryServiceTest
+{
+    @InjectMocks
+    CountryServiceImpl countryService;
+    @Mock
+    CountryRepository countryRepository;
+    @Mock
+    PersonService personService;
+    @Mock
+    CountrySpatialIndex countrySpatialIndex;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(countryService, "BATCH_MAX_SIZE", 3);
+        ReflectionTestUtils.setField(countryService, "BATCH_PARALLEL_THRESHOLD", 256);
+        ReflectionTestUtils.setField(countryService, "BATCH_FALLBACK_THREADS", 2);
+        countryService.init();
+        Map<Long, GeoJsonPoint> locations = new HashMap<>();
+        locations.put(1L, new GeoJsonPoint(2, 2));
+        locations.put(2L, new GeoJsonPoint(50, 50));
+        Mockito.doReturn(locations).when(personService).findCurrentLocationsByDni(Mockito.anyCollection());
+    }
+
+    @Test
+    public void getCountriesOfCurrentLocation_SpatialIndex()
+    {
+        Mockito.doReturn(true).when(countrySpatialIndex).isReady();
+        Mockito.doReturn(Optional.of(country("Aruba"))).when(countrySpatialIndex).findCountryAt(2, 2);
+        Mockito.doReturn(Optional.empty()).when(countrySpatialIndex).findCountryAt(50, 50);
+
+        Map<Long, Country> countries = countryService.getCountriesOfCurrentLocation(Arrays.asList(1L, 2L, 3L));
+        assertEquals(1, countries.size());
+        assertEquals("Aruba", countries.get(1L).getName());
+        Mockito.verify(countryRepository, Mockito.never()).findCountryAt(Mockito.any());
+    }
+
+    @Test
+    public void getCountriesOfCurrentLocation_SpatialIndexParallel()
+    {
+        ReflectionTestUtils.setField(countryService, "BATCH_PARALLEL_THRESHOLD", 2);
+        Mockito.doReturn(true).when(countrySpatialIndex).isReady();
+        Mockito.doReturn(Optional.of(country("Aruba"))).when(countrySpatialIndex).findCountryAt(2, 2);
+        Mockito.doReturn(Optional.empty()).when(countrySpatialIndex).findCountryAt(50, 50);
+
+        Map<Long, Country> countries = countryService.getCountriesOfCurrentLocation(Arrays.asList(1L, 2L));
+        assertEquals(1, countries.size());
+        assertEquals("Aruba", countries.get(1L).getName());
+    }
+
+    @Test
+    public void getCountriesOfCurrentLocation_MongoFallback()
+    {
+        Mockito.doReturn(false).when(countrySpatialIndex).isReady();
+        Mockito.doAnswer(invocation -> {
+            // never on the common ForkJoinPool
+            assertTrue(Thread.currentThread().getName().startsWith("country-batch-"));
+            GeoJsonPoint location = invocation.getArgument(0);
+            return location.getX() == 2 ? Optional.of(country("Aruba")) : Optional.empty();
+        }).when(countryRepository).findCountryAt(Mockito.any());
+
+        Map<Long, Country> countries = countryService.getCountriesOfCurrentLocation(Arrays.asList(1L, 2L));
+        assertEquals(1, countries.size());
+        assertEquals("Aruba", countries.get(1L).getName());
+        Mockito.verify(countryRepository, Mockito.times(2)).findCountryAt(Mockito.any());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCountriesOfCurrentLocation_TooManyDnis()
+    {
+        countryService.getCountriesOfCurrentLocation(Arrays.asList(1L, 2L, 3L, 4L));
+    }
+
+    private Country country(String name)
+    {
+        Country country = new Country();
+        country.setName(name);
+        return country;
+    }
+}
@@ -0,0 +1,140 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.dto.CountryDTO;
+import com.jordanec.peopledirectory.model.Person;
+import com.jordanec.peopledirectory.model.PersonCounter;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class PersonCountersTest
+{
+    @InjectMocks
+    PersonCounters personCounters;
+    @Mock
+    MongoOperations mongoOperations;
+    @Mock
+    BulkOperations bulkOperations;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(personCounters, "COUNTERS_ENABLED", true);
+        Mockito.doReturn(bulkOperations).when(mongoOperations)
+                .bulkOps(BulkOperations.BulkMode.UNORDERED, PersonCounter.class);
+        Mockito.doReturn("persons").when(mongoOperations).getCollectionName(Person.class);
+    }
+
+    @Test
+    public void apply_OneIncPerChangedCounter()
+    {
+        // a person moved from Aruba to a country outside the catalog, and a new one
+        Person before = person(1, "Female", "aruba-id", null);
+        Person after = person(1, "Female", null, "Atlantis");
+        Person inserted = person(2, "Male", "aruba-id", null);
+        personCounters.apply(Collections.singletonList(before), Arrays.asList(after, inserted));
+
+        Map<String, Object> incs = upserts("$inc");
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("total:total", 1L);
+        expected.put("gender:Male", 1L);
+        expected.put("country:Atlantis", 1L);
+        // Female and aruba-id: -1 + 1 cancel out
+        assertEquals(expected, incs);
+        Mockito.verify(bulkOperations).execute();
+    }
+
+    @Test
+    public void apply_FailedCounterUpdateDoesNotFailTheWrite()
+    {
+        Mockito.doThrow(new IllegalStateException("no primary")).when(bulkOperations).execute();
+        personCounters.apply(Collections.emptyList(), Collections.singletonList(person(1, "Male", null, null)));
+    }
+
+    @Test
+    public void reconcile_OverwritesDriftedAndRemovesStale()
+    {
+        Document facets = new Document("total", Collections.singletonList(new Document("count", 3)))
+                .append("gender", Arrays.asList(new Document("_id", "Female").append("count", 2),
+                        new Document("_id", "Male").append("count", 1)))
+                .append("country", Collections.singletonList(new Document("_id", "aruba-id").append("count", 3)));
+        Mockito.doReturn(new AggregationResults<>(Collections.singletonList(facets), new Document()))
+                .when(mongoOperations).aggregate(Mockito.any(Aggregation.class), Mockito.eq("persons"),
+                        Mockito.eq(Document.class));
+        Mockito.doReturn(Arrays.asList(counter("total", "total", 3), counter("gender", "Female", 5),
+                counter("country", "aruba-id", 3), counter("country", "old-id", 1)))
+                .when(mongoOperations).findAll(PersonCounter.class);
+
+        assertEquals(3, personCounters.reconcile());
+        Map<String, Object> sets = upserts("$set");
+        assertEquals(2, sets.size());
+        assertEquals(2L, sets.get("gender:Female"));
+        assertEquals(1L, sets.get("gender:Male"));
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(bulkOperations).remove(removed.capture());
+        assertEquals("country:old-id", removed.getValue().getQueryObject().get("_id"));
+    }
+
+    // counter id -> count of the given update operator, one per upsert
+    private Map<String, Object> upserts(String operator)
+    {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(bulkOperations, Mockito.atLeastOnce()).upsert(queries.capture(), updates.capture());
+        Map<String, Object> counts = new HashMap<>();
+        List<Query> capturedQueries = queries.getAllValues();
+        for (int i = 0; i < capturedQueries.size(); i++)
+        {
+            Document update = updates.getAllValues().get(i).getUpdateObject();
+            counts.put((String) capturedQueries.get(i).getQueryObject().get("_id"),
+                    ((Document) update.get(operator)).get("count"));
+        }
+        return counts;
+    }
+
+    private static PersonCounter counter(String facet, String value, long count)
+    {
+        PersonCounter counter = new PersonCounter();
+        counter.setId(PersonCounter.id(facet, value));
+        counter.setFacet(facet);
+        counter.setValue(value);
+        counter.setCount(count);
+        return counter;
+    }
+
+    private static Person person(long dni, String gender, String countryId, String countryName)
+    {
+        Person person = new Person();
+        person.setDni(dni);
+        person.setGender(gender);
+        if (countryId != null || countryName != null)
+        {
+            CountryDTO country = new CountryDTO();
+            country.setId(countryId);
+            country.setName(countryName);
+            person.setCountry(country);
+        }
+        return person;
+    }
+}
@@ -0,0 +1,91 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.dto.PersonDashboardDTO;
+import com.jordanec.peopledirectory.repository.PersonRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PersonDashboardCacheTest
+{
+    @InjectMocks
+    PersonDashboardCache personDashboardCache;
+    @Mock
+    PersonRepository personRepository;
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(personDashboardCache, "REFRESH_SECONDS", 60L);
+        ReflectionTestUtils.setField(personDashboardCache, "MAX_STALE_SECONDS", 900L);
+        ReflectionTestUtils.setField(personDashboardCache, "clock", (LongSupplier) now::get);
+        ReflectionTestUtils.setField(personDashboardCache, "refreshExecutor", (Executor) refreshes::add);
+        Mockito.when(personRepository.dashboard(Mockito.any(LocalDate.class), Mockito.any(int[].class)))
+                .thenAnswer(invocation -> dashboard(now.get()));
+    }
+
+    @Test
+    public void get_FreshThenStaleWhileOneRefreshRuns()
+    {
+        PersonDashboardDTO first = personDashboardCache.get();
+        now.set(59_000);
+        assertSame(first, personDashboardCache.get());
+
+        // stale: served as is, one refresh scheduled however many viewers ask
+        now.set(61_000);
+        assertSame(first, personDashboardCache.get());
+        assertSame(first, personDashboardCache.get());
+        assertEquals(1, refreshes.size());
+        refreshes.get(0).run();
+        PersonDashboardDTO refreshed = personDashboardCache.get();
+        assertEquals(61_000, refreshed.getTotal());
+        Mockito.verify(personRepository, Mockito.times(2)).dashboard(Mockito.any(LocalDate.class),
+                Mockito.any(int[].class));
+        assertEquals(1, personDashboardCache.getStats().getMisses());
+        assertEquals(4, personDashboardCache.getStats().getHits());
+    }
+
+    @Test
+    public void get_FailedRefreshServesStaleUntilMaxStale()
+    {
+        personDashboardCache.get();
+        Mockito.when(personRepository.dashboard(Mockito.any(LocalDate.class), Mockito.any(int[].class)))
+                .thenThrow(new IllegalStateException("no primary"))
+                .thenAnswer(invocation -> dashboard(now.get()));
+        now.set(120_000);
+        assertEquals(0, personDashboardCache.get().getTotal());
+        refreshes.get(0).run();
+        assertEquals(0, personDashboardCache.get().getTotal());
+
+        // too old to be served, computed by the caller
+        now.set(901_000);
+        assertEquals(901_000, personDashboardCache.get().getTotal());
+        assertEquals(2, refreshes.size());
+    }
+
+    // the total tells which computation produced it
+    private static PersonDashboardDTO dashboard(long total)
+    {
+        PersonDashboardDTO dashboard = new PersonDashboardDTO();
+        dashboard.setTotal(total);
+        return dashboard;
+    }
+}
@@ -0,0 +1,103 @@
+package com.jordanec.peopledirectory.service;
+
+import com.jordanec.peopledirectory.dto.CountryDTO;
+import com.jordanec.peopledirectory.dto.KeysetPageRequestDTO;
+import com.jordanec.peopledirectory.dto.KeysetSliceDTO;
+import com.jordanec.peopledirectory.model.Person;
+import com.jordanec.peopledirectory.repository.PersonRepository;
+import com.jordanec.peopledirectory.search.PersonFacets;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+public class PersonServiceImplTest
+{
+    @InjectMocks
+    PersonServiceImpl personService;
+    @Mock
+    PersonRepository personRepository;
+    @Mock
+    CountryRegistry countryRegistry;
+    @Mock
+    PersonCounters personCounters;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        Mockito.doReturn(Optional.empty()).when(countryRegistry).findByName(Mockito.anyString());
+    }
+
+    @Test
+    public void save_CountersDisabledOneUpsert()
+    {
+        Person person = new Person();
+        person.setDni(1L);
+        Person stored = new Person();
+        stored.setId("1");
+        stored.setDni(1L);
+        Mockito.doReturn(stored).when(personRepository).upsertByDni(person);
+
+        assertEquals("1", personService.save(person).getId());
+        Mockito.verify(personRepository, Mockito.never()).upsertByDniReturningPrevious(Mockito.any());
+        Mockito.verify(personRepository, Mockito.never()).findByDni(Mockito.any());
+    }
+
+    @Test
+    public void save_CountersEnabledPreviousCounted()
+    {
+        Mockito.doReturn(true).when(personCounters).isEnabled();
+        Person person = new Person();
+        person.setDni(1L);
+        Person previous = new Person();
+        previous.setDni(1L);
+        Mockito.doReturn(previous).when(personRepository).upsertByDniReturningPrevious(person);
+
+        personService.save(person);
+        Mockito.verify(personCounters).apply(Collections.singletonList(previous),
+                Collections.singletonList(person));
+    }
+
+    @Test
+    public void getCountByCountry_NotInCatalogIgnoresCase()
+    {
+        Mockito.doReturn(true).when(personCounters).isEnabled();
+        Mockito.doReturn(3L).when(personRepository).getCountByCountry("atlantis");
+
+        assertEquals(3, personService.getCountByCountry("atlantis"));
+        Mockito.verify(personCounters, Mockito.never()).get(Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void findDistinctPeopleByCountryIgnoreCase_NotInCatalogPaged()
+    {
+        KeysetPageRequestDTO pageRequest = new KeysetPageRequestDTO();
+        KeysetSliceDTO<Person> slice = KeysetSliceDTO.of(Collections.singletonList(new Person()), null);
+        Mockito.doReturn(slice).when(personRepository).findByCountryNameIgnoreCaseSlice("atlantis", pageRequest);
+
+        // the same persons as the unpaged variant, which queries country.name ignoring case
+        assertEquals(slice, personService.findDistinctPeopleByCountryIgnoreCase("atlantis", pageRequest));
+        Mockito.verify(personRepository, Mockito.never()).findByCountryIdSlice(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void getCountByCountry_InCatalogFromCounters()
+    {
+        CountryDTO country = new CountryDTO();
+        country.setId("c1");
+        Mockito.doReturn(Optional.of(country)).when(countryRegistry).findByName("aruba");
+        Mockito.doReturn(true).when(personCounters).isEnabled();
+        Mockito.doReturn(7L).when(personCounters).get(PersonFacets.COUNTRY, "c1");
+
+        assertEquals(7, personService.getCountByCountry("aruba"));
+        Mockito.verify(personRepository, Mockito.never()).getCountByCountry(Mockito.anyString());
+    }
+}